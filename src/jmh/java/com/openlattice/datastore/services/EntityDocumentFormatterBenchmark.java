@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.services;
+
+import com.dataloom.mappers.ObjectMappers;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link EntityDocumentFormatter} implementations selectable through the document format of the search
+ * tuning configuration. Run with {@code ./gradlew jmh}; the gc profiler reports allocation per document.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 5 )
+@Measurement( iterations = 5, time = 5 )
+@Fork( 1 )
+public class EntityDocumentFormatterBenchmark {
+    private static final ObjectMapper mapper = ObjectMappers.newJsonMapper();
+
+    static {
+        mapper.configure( SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false );
+    }
+
+    @Param( { "10", "50" } )
+    public int propertyCount;
+
+    @Param( { "3" } )
+    public int linkedEntityCount;
+
+    private EntityDocumentFormatter                      streaming;
+    private EntityDocumentFormatter                      mapped;
+    private UUID                                         entitySetId;
+    private UUID                                         entityKeyId;
+    private UUID                                         linkingId;
+    private Map<UUID, Set<Object>>                       entity;
+    private Map<UUID, Map<UUID, Map<UUID, Set<Object>>>> linkedEntity;
+
+    @Setup
+    public void setup() {
+        streaming = new EntityDocumentSerializer( mapper );
+        mapped = new MappedEntityDocumentFormatter( mapper );
+        entitySetId = UUID.randomUUID();
+        entityKeyId = UUID.randomUUID();
+        linkingId = UUID.randomUUID();
+
+        final var propertyTypeIds = new UUID[ propertyCount ];
+        for ( int i = 0; i < propertyCount; ++i ) {
+            propertyTypeIds[ i ] = UUID.randomUUID();
+        }
+
+        entity = entity( propertyTypeIds );
+        linkedEntity = new HashMap<>();
+        for ( int i = 0; i < linkedEntityCount; ++i ) {
+            linkedEntity.put( UUID.randomUUID(), Map.of( UUID.randomUUID(), entity( propertyTypeIds ) ) );
+        }
+    }
+
+    @Benchmark
+    public byte[] mappedEntity() {
+        return mapped.formatEntity( entitySetId, entityKeyId, entity );
+    }
+
+    @Benchmark
+    public byte[] streamingEntity() {
+        return streaming.formatEntity( entitySetId, entityKeyId, entity );
+    }
+
+    @Benchmark
+    public byte[] mappedLinkedEntity() {
+        return mapped.formatLinkedEntity( linkingId, linkedEntity );
+    }
+
+    @Benchmark
+    public byte[] streamingLinkedEntity() {
+        return streaming.formatLinkedEntity( linkingId, linkedEntity );
+    }
+
+    private static Map<UUID, Set<Object>> entity( UUID[] propertyTypeIds ) {
+        final Map<UUID, Set<Object>> values = new HashMap<>( propertyTypeIds.length );
+        for ( int i = 0; i < propertyTypeIds.length; ++i ) {
+            final Set<Object> propertyValues = new LinkedHashSet<>();
+            switch ( i % 5 ) {
+                case 0:
+                    propertyValues.add( "value-" + i );
+                    propertyValues.add( "other value-" + i );
+                    break;
+                case 1:
+                    propertyValues.add( (long) i );
+                    break;
+                case 2:
+                    propertyValues.add( OffsetDateTime.now() );
+                    break;
+                case 3:
+                    propertyValues.add( LocalDate.now() );
+                    break;
+                default:
+                    propertyValues.add( UUID.randomUUID() );
+            }
+            values.put( propertyTypeIds[ i ], propertyValues );
+        }
+        return values;
+    }
+}
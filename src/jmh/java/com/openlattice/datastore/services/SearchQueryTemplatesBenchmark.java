@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.services;
+
+import com.openlattice.search.requests.SearchConstraints;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares building entity set search queries from cached {@link SearchQueryTemplates} against compiling them for
+ * every request, which is what happens on a cache miss. Run with {@code ./gradlew jmh}.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 5 )
+@Measurement( iterations = 5, time = 5 )
+@Fork( 1 )
+public class SearchQueryTemplatesBenchmark {
+    @Param( { "10", "100" } )
+    public int propertyCount;
+
+    private SearchQueryTemplates cached;
+    private SearchQueryTemplates uncached;
+    private UUID                 entitySetId;
+    private Set<UUID>            authorizedPropertyTypes;
+    private SearchConstraints    constraints;
+
+    @Setup
+    public void setup() {
+        cached = new SearchQueryTemplates( 1_000 );
+        uncached = new SearchQueryTemplates( 1_000 );
+        entitySetId = UUID.randomUUID();
+
+        authorizedPropertyTypes = new HashSet<>( propertyCount );
+        for ( int i = 0; i < propertyCount; ++i ) {
+            authorizedPropertyTypes.add( UUID.randomUUID() );
+        }
+
+        constraints = SearchConstraints
+                .simpleSearchConstraints( new UUID[] { entitySetId }, 0, 100, "john smith", true );
+    }
+
+    @Benchmark
+    public QueryBuilder cachedTemplate() {
+        return cached.getEntitySetSearchQuery( entitySetId, constraints, authorizedPropertyTypes, Set.of(), false );
+    }
+
+    @Benchmark
+    public QueryBuilder compiledPerRequest() {
+        uncached.invalidateAll();
+        return uncached.getEntitySetSearchQuery( entitySetId, constraints, authorizedPropertyTypes, Set.of(), false );
+    }
+}
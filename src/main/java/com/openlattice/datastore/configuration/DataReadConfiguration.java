@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.configuration;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.kryptnostic.rhizome.configuration.Configuration;
+import com.kryptnostic.rhizome.configuration.ConfigurationKey;
+import com.kryptnostic.rhizome.configuration.SimpleConfigurationKey;
+import com.kryptnostic.rhizome.configuration.annotation.ReloadableConfiguration;
+
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Tuning knobs for reading entity set data out of postgres. Everything here is optional and falls back to a default
+ * that is safe for a small deployment.
+ */
+@ReloadableConfiguration( uri = "data.yaml" )
+public class DataReadConfiguration implements Configuration {
+    private static final long             serialVersionUID = 3265419185208846721L;
+    private static final ConfigurationKey key              = new SimpleConfigurationKey( "data.yaml" );
+
+    public static final String BATCH_READ_MAX_ENTITIES    = "batchReadMaxEntities";
+    public static final String DOWNLOAD_FLUSH_ROWS        = "downloadFlushRows";
+    public static final String MAX_PAGE_SIZE              = "maxPageSize";
+    public static final String PARTITION_READ_THREADS     = "partitionReadThreads";
+    public static final String PARTITION_READ_PARALLELISM = "partitionReadParallelism";
+    public static final String PARTITION_READ_PAGE_SIZE   = "partitionReadPageSize";
+
+    private static final int DEFAULT_BATCH_READ_MAX_ENTITIES    = 10_000;
+    private static final int DEFAULT_DOWNLOAD_FLUSH_ROWS        = 1_000;
+    private static final int DEFAULT_MAX_PAGE_SIZE              = 10_000;
+    private static final int DEFAULT_PARTITION_READ_THREADS     = 8;
+    private static final int DEFAULT_PARTITION_READ_PARALLELISM = 4;
+    private static final int DEFAULT_PARTITION_READ_PAGE_SIZE   = 1_000;
+
+    private final int batchReadMaxEntities;
+    private final int downloadFlushRows;
+    private final int maxPageSize;
+    private final int partitionReadThreads;
+    private final int partitionReadParallelism;
+    private final int partitionReadPageSize;
+
+    @JsonCreator
+    public DataReadConfiguration(
+            @JsonProperty( DOWNLOAD_FLUSH_ROWS ) Optional<Integer> downloadFlushRows,
+            @JsonProperty( MAX_PAGE_SIZE ) Optional<Integer> maxPageSize,
+            @JsonProperty( PARTITION_READ_THREADS ) Optional<Integer> partitionReadThreads,
+            @JsonProperty( PARTITION_READ_PARALLELISM ) Optional<Integer> partitionReadParallelism,
+            @JsonProperty( PARTITION_READ_PAGE_SIZE ) Optional<Integer> partitionReadPageSize,
+            @JsonProperty( BATCH_READ_MAX_ENTITIES ) Optional<Integer> batchReadMaxEntities ) {
+        this.downloadFlushRows = downloadFlushRows.orElse( DEFAULT_DOWNLOAD_FLUSH_ROWS );
+        this.maxPageSize = maxPageSize.orElse( DEFAULT_MAX_PAGE_SIZE );
+        this.partitionReadThreads = partitionReadThreads.orElse( DEFAULT_PARTITION_READ_THREADS );
+        this.partitionReadParallelism = partitionReadParallelism.orElse( DEFAULT_PARTITION_READ_PARALLELISM );
+        this.partitionReadPageSize = partitionReadPageSize.orElse( DEFAULT_PARTITION_READ_PAGE_SIZE );
+        this.batchReadMaxEntities = batchReadMaxEntities.orElse( DEFAULT_BATCH_READ_MAX_ENTITIES );
+
+        checkArgument( this.downloadFlushRows > 0, "downloadFlushRows must be positive." );
+        checkArgument( this.maxPageSize > 0, "maxPageSize must be positive." );
+        checkArgument( this.partitionReadThreads > 0, "partitionReadThreads must be positive." );
+        checkArgument( this.partitionReadParallelism > 0, "partitionReadParallelism must be positive." );
+        checkArgument( this.partitionReadPageSize > 0, "partitionReadPageSize must be positive." );
+        checkArgument( this.batchReadMaxEntities > 0, "batchReadMaxEntities must be positive." );
+    }
+
+    public static DataReadConfiguration defaults() {
+        return new DataReadConfiguration(
+                Optional.empty(),
+                Optional.empty(),
+                Optional.empty(),
+                Optional.empty(),
+                Optional.empty(),
+                Optional.empty() );
+    }
+
+    @JsonProperty( DOWNLOAD_FLUSH_ROWS )
+    public int getDownloadFlushRows() {
+        return downloadFlushRows;
+    }
+
+    @JsonProperty( MAX_PAGE_SIZE )
+    public int getMaxPageSize() {
+        return maxPageSize;
+    }
+
+    @JsonProperty( PARTITION_READ_THREADS )
+    public int getPartitionReadThreads() {
+        return partitionReadThreads;
+    }
+
+    @JsonProperty( PARTITION_READ_PARALLELISM )
+    public int getPartitionReadParallelism() {
+        return partitionReadParallelism;
+    }
+
+    @JsonProperty( PARTITION_READ_PAGE_SIZE )
+    public int getPartitionReadPageSize() {
+        return partitionReadPageSize;
+    }
+
+    @JsonProperty( BATCH_READ_MAX_ENTITIES )
+    public int getBatchReadMaxEntities() {
+        return batchReadMaxEntities;
+    }
+
+    @Override
+    @JsonIgnore
+    public ConfigurationKey getKey() {
+        return key;
+    }
+
+    @JsonIgnore
+    public static ConfigurationKey key() {
+        return key;
+    }
+}
@@ -0,0 +1,429 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.configuration;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.kryptnostic.rhizome.configuration.Configuration;
+import com.kryptnostic.rhizome.configuration.ConfigurationKey;
+import com.kryptnostic.rhizome.configuration.SimpleConfigurationKey;
+import com.kryptnostic.rhizome.configuration.annotation.ReloadableConfiguration;
+
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Tuning knobs for the way datastore talks to elasticsearch. Everything here is optional and falls back to a default
+ * that is safe for a small cluster.
+ */
+@ReloadableConfiguration( uri = "search.yaml" )
+public class SearchTuningConfiguration implements Configuration {
+    private static final long             serialVersionUID = -4718210571539862214L;
+    private static final ConfigurationKey key              = new SimpleConfigurationKey( "search.yaml" );
+
+    public static final String BULK_MAX_DOCUMENTS                  = "bulkMaxDocuments";
+    public static final String BULK_MAX_BYTES                      = "bulkMaxBytes";
+    public static final String BULK_MAX_CONCURRENT_REQUESTS        = "bulkMaxConcurrentRequests";
+    public static final String BULK_MAX_RETRIES                    = "bulkMaxRetries";
+    public static final String BULK_RETRY_INITIAL_DELAY            = "bulkRetryInitialDelayMillis";
+    public static final String BULK_RETRY_MAX_DELAY                = "bulkRetryMaxDelayMillis";
+    public static final String HEALTH_CHECK_INTERVAL               = "healthCheckIntervalMillis";
+    public static final String RECONNECT_INITIAL_DELAY             = "reconnectInitialDelayMillis";
+    public static final String RECONNECT_MAX_DELAY                 = "reconnectMaxDelayMillis";
+    public static final String RECONNECT_CLOSE_GRACE               = "reconnectCloseGraceMillis";
+    public static final String MAX_CONCURRENT_SEARCHES             = "maxConcurrentSearches";
+    public static final String ADAPTIVE_CONCURRENT_SEARCHES        = "adaptiveConcurrentSearches";
+    public static final String SEARCH_TARGET_LATENCY               = "searchTargetLatencyMillis";
+    public static final String EXPORT_SLICES                       = "exportSlices";
+    public static final String EXPORT_BATCH_SIZE                   = "exportBatchSize";
+    public static final String EXPORT_SCROLL_KEEP_ALIVE            = "exportScrollKeepAliveMillis";
+    public static final String ROUTE_BY_ENTITY_SET                 = "routeByEntitySet";
+    public static final String TASK_RETENTION                      = "taskRetentionMillis";
+    public static final String REINDEX_WORKERS                     = "reindexWorkers";
+    public static final String REINDEX_BATCH_SIZE                  = "reindexBatchSize";
+    public static final String QUERY_TEMPLATE_CACHE_SIZE           = "queryTemplateCacheSize";
+    public static final String SEARCH_RESULT_CACHE_ENABLED         = "searchResultCacheEnabled";
+    public static final String SEARCH_RESULT_CACHE_TTL             = "searchResultCacheTtlMillis";
+    public static final String SEARCH_RESULT_CACHE_SIZE            = "searchResultCacheSize";
+    public static final String HYDRATE_SEARCH_FROM_SOURCE          = "hydrateSearchFromSource";
+    public static final String BULK_TARGET_LATENCY                 = "bulkTargetLatencyMillis";
+    public static final String DOCUMENT_FORMAT                     = "documentFormat";
+    public static final String BULK_SIZING                         = "bulkSizing";
+
+    private static final int     DEFAULT_BULK_MAX_DOCUMENTS                  = 1000;
+    private static final long    DEFAULT_BULK_MAX_BYTES                      = 5L * 1024 * 1024;
+    private static final int     DEFAULT_BULK_MAX_CONCURRENT_REQUESTS        = 4;
+    private static final int     DEFAULT_BULK_MAX_RETRIES                    = 5;
+    private static final long    DEFAULT_BULK_RETRY_INITIAL_DELAY            = 100L;
+    private static final long    DEFAULT_BULK_RETRY_MAX_DELAY                = 10_000L;
+    private static final long    DEFAULT_HEALTH_CHECK_INTERVAL               = 10_000L;
+    private static final long    DEFAULT_RECONNECT_INITIAL_DELAY             = 1_000L;
+    private static final long    DEFAULT_RECONNECT_MAX_DELAY                 = 60_000L;
+    private static final long    DEFAULT_RECONNECT_CLOSE_GRACE               = 30_000L;
+    private static final int     DEFAULT_MAX_CONCURRENT_SEARCHES             = 3;
+    private static final boolean DEFAULT_ADAPTIVE_CONCURRENT_SEARCHES        = false;
+    private static final long    DEFAULT_SEARCH_TARGET_LATENCY               = 250L;
+    private static final int     DEFAULT_EXPORT_SLICES                       = 4;
+    private static final int     DEFAULT_EXPORT_BATCH_SIZE                   = 1000;
+    private static final long    DEFAULT_EXPORT_SCROLL_KEEP_ALIVE            = 60_000L;
+    private static final boolean DEFAULT_ROUTE_BY_ENTITY_SET                 = false;
+    private static final long    DEFAULT_TASK_RETENTION                      = 24 * 60 * 60 * 1000L;
+    private static final int     DEFAULT_REINDEX_WORKERS                     = 4;
+    private static final int     DEFAULT_REINDEX_BATCH_SIZE                  = 1000;
+    private static final long    DEFAULT_QUERY_TEMPLATE_CACHE_SIZE           = 10_000L;
+    private static final boolean DEFAULT_SEARCH_RESULT_CACHE_ENABLED         = false;
+    private static final long    DEFAULT_SEARCH_RESULT_CACHE_TTL             = 5_000L;
+    private static final long    DEFAULT_SEARCH_RESULT_CACHE_SIZE            = 10_000L;
+    private static final boolean DEFAULT_HYDRATE_SEARCH_FROM_SOURCE          = false;
+    private static final long    DEFAULT_BULK_TARGET_LATENCY                 = 1_000L;
+
+    private static final DocumentFormat DEFAULT_DOCUMENT_FORMAT = DocumentFormat.STREAMING;
+    private static final BulkSizing     DEFAULT_BULK_SIZING     = BulkSizing.FIXED;
+
+    private final int     bulkMaxDocuments;
+    private final long    bulkMaxBytes;
+    private final int     bulkMaxConcurrentRequests;
+    private final int     bulkMaxRetries;
+    private final long    bulkRetryInitialDelayMillis;
+    private final long    bulkRetryMaxDelayMillis;
+    private final long    healthCheckIntervalMillis;
+    private final long    reconnectInitialDelayMillis;
+    private final long    reconnectMaxDelayMillis;
+    private final long    reconnectCloseGraceMillis;
+    private final int     maxConcurrentSearches;
+    private final boolean adaptiveConcurrentSearches;
+    private final long    searchTargetLatencyMillis;
+    private final int     exportSlices;
+    private final int     exportBatchSize;
+    private final long    exportScrollKeepAliveMillis;
+    private final boolean routeByEntitySet;
+    private final long    taskRetentionMillis;
+    private final int     reindexWorkers;
+    private final int     reindexBatchSize;
+    private final long    queryTemplateCacheSize;
+    private final boolean searchResultCacheEnabled;
+    private final long    searchResultCacheTtlMillis;
+    private final long    searchResultCacheSize;
+    private final boolean hydrateSearchFromSource;
+    private final long    bulkTargetLatencyMillis;
+
+    private final DocumentFormat documentFormat;
+    private final BulkSizing     bulkSizing;
+
+    @JsonCreator
+    public SearchTuningConfiguration(
+            @JsonProperty( BULK_MAX_DOCUMENTS ) Optional<Integer> bulkMaxDocuments,
+            @JsonProperty( BULK_MAX_BYTES ) Optional<Long> bulkMaxBytes,
+            @JsonProperty( BULK_MAX_CONCURRENT_REQUESTS ) Optional<Integer> bulkMaxConcurrentRequests,
+            @JsonProperty( BULK_MAX_RETRIES ) Optional<Integer> bulkMaxRetries,
+            @JsonProperty( BULK_RETRY_INITIAL_DELAY ) Optional<Long> bulkRetryInitialDelayMillis,
+            @JsonProperty( BULK_RETRY_MAX_DELAY ) Optional<Long> bulkRetryMaxDelayMillis,
+            @JsonProperty( HEALTH_CHECK_INTERVAL ) Optional<Long> healthCheckIntervalMillis,
+            @JsonProperty( RECONNECT_INITIAL_DELAY ) Optional<Long> reconnectInitialDelayMillis,
+            @JsonProperty( RECONNECT_MAX_DELAY ) Optional<Long> reconnectMaxDelayMillis,
+            @JsonProperty( RECONNECT_CLOSE_GRACE ) Optional<Long> reconnectCloseGraceMillis,
+            @JsonProperty( MAX_CONCURRENT_SEARCHES ) Optional<Integer> maxConcurrentSearches,
+            @JsonProperty( ADAPTIVE_CONCURRENT_SEARCHES ) Optional<Boolean> adaptiveConcurrentSearches,
+            @JsonProperty( SEARCH_TARGET_LATENCY ) Optional<Long> searchTargetLatencyMillis,
+            @JsonProperty( EXPORT_SLICES ) Optional<Integer> exportSlices,
+            @JsonProperty( EXPORT_BATCH_SIZE ) Optional<Integer> exportBatchSize,
+            @JsonProperty( EXPORT_SCROLL_KEEP_ALIVE ) Optional<Long> exportScrollKeepAliveMillis,
+            @JsonProperty( ROUTE_BY_ENTITY_SET ) Optional<Boolean> routeByEntitySet,
+            @JsonProperty( TASK_RETENTION ) Optional<Long> taskRetentionMillis,
+            @JsonProperty( REINDEX_WORKERS ) Optional<Integer> reindexWorkers,
+            @JsonProperty( REINDEX_BATCH_SIZE ) Optional<Integer> reindexBatchSize,
+            @JsonProperty( QUERY_TEMPLATE_CACHE_SIZE ) Optional<Long> queryTemplateCacheSize,
+            @JsonProperty( SEARCH_RESULT_CACHE_ENABLED ) Optional<Boolean> searchResultCacheEnabled,
+            @JsonProperty( SEARCH_RESULT_CACHE_TTL ) Optional<Long> searchResultCacheTtlMillis,
+            @JsonProperty( SEARCH_RESULT_CACHE_SIZE ) Optional<Long> searchResultCacheSize,
+            @JsonProperty( HYDRATE_SEARCH_FROM_SOURCE ) Optional<Boolean> hydrateSearchFromSource,
+            @JsonProperty( BULK_TARGET_LATENCY ) Optional<Long> bulkTargetLatencyMillis,
+            @JsonProperty( DOCUMENT_FORMAT ) Optional<DocumentFormat> documentFormat,
+            @JsonProperty( BULK_SIZING ) Optional<BulkSizing> bulkSizing ) {
+        this.bulkMaxDocuments = bulkMaxDocuments.orElse( DEFAULT_BULK_MAX_DOCUMENTS );
+        this.bulkMaxBytes = bulkMaxBytes.orElse( DEFAULT_BULK_MAX_BYTES );
+        this.bulkMaxConcurrentRequests = bulkMaxConcurrentRequests.orElse( DEFAULT_BULK_MAX_CONCURRENT_REQUESTS );
+        this.bulkMaxRetries = bulkMaxRetries.orElse( DEFAULT_BULK_MAX_RETRIES );
+        this.bulkRetryInitialDelayMillis = bulkRetryInitialDelayMillis.orElse( DEFAULT_BULK_RETRY_INITIAL_DELAY );
+        this.bulkRetryMaxDelayMillis = bulkRetryMaxDelayMillis.orElse( DEFAULT_BULK_RETRY_MAX_DELAY );
+        this.healthCheckIntervalMillis = healthCheckIntervalMillis.orElse( DEFAULT_HEALTH_CHECK_INTERVAL );
+        this.reconnectInitialDelayMillis = reconnectInitialDelayMillis.orElse( DEFAULT_RECONNECT_INITIAL_DELAY );
+        this.reconnectMaxDelayMillis = reconnectMaxDelayMillis.orElse( DEFAULT_RECONNECT_MAX_DELAY );
+        this.reconnectCloseGraceMillis = reconnectCloseGraceMillis.orElse( DEFAULT_RECONNECT_CLOSE_GRACE );
+        this.maxConcurrentSearches = maxConcurrentSearches.orElse( DEFAULT_MAX_CONCURRENT_SEARCHES );
+        this.adaptiveConcurrentSearches = adaptiveConcurrentSearches.orElse( DEFAULT_ADAPTIVE_CONCURRENT_SEARCHES );
+        this.searchTargetLatencyMillis = searchTargetLatencyMillis.orElse( DEFAULT_SEARCH_TARGET_LATENCY );
+        this.exportSlices = exportSlices.orElse( DEFAULT_EXPORT_SLICES );
+        this.exportBatchSize = exportBatchSize.orElse( DEFAULT_EXPORT_BATCH_SIZE );
+        this.exportScrollKeepAliveMillis = exportScrollKeepAliveMillis.orElse( DEFAULT_EXPORT_SCROLL_KEEP_ALIVE );
+        this.routeByEntitySet = routeByEntitySet.orElse( DEFAULT_ROUTE_BY_ENTITY_SET );
+        this.taskRetentionMillis = taskRetentionMillis.orElse( DEFAULT_TASK_RETENTION );
+        this.reindexWorkers = reindexWorkers.orElse( DEFAULT_REINDEX_WORKERS );
+        this.reindexBatchSize = reindexBatchSize.orElse( DEFAULT_REINDEX_BATCH_SIZE );
+        this.queryTemplateCacheSize = queryTemplateCacheSize.orElse( DEFAULT_QUERY_TEMPLATE_CACHE_SIZE );
+        this.searchResultCacheEnabled = searchResultCacheEnabled.orElse( DEFAULT_SEARCH_RESULT_CACHE_ENABLED );
+        this.searchResultCacheTtlMillis = searchResultCacheTtlMillis.orElse( DEFAULT_SEARCH_RESULT_CACHE_TTL );
+        this.searchResultCacheSize = searchResultCacheSize.orElse( DEFAULT_SEARCH_RESULT_CACHE_SIZE );
+        this.hydrateSearchFromSource = hydrateSearchFromSource.orElse( DEFAULT_HYDRATE_SEARCH_FROM_SOURCE );
+        this.bulkTargetLatencyMillis = bulkTargetLatencyMillis.orElse( DEFAULT_BULK_TARGET_LATENCY );
+        this.documentFormat = documentFormat.orElse( DEFAULT_DOCUMENT_FORMAT );
+        this.bulkSizing = bulkSizing.orElse( DEFAULT_BULK_SIZING );
+
+        checkArgument( this.bulkMaxDocuments > 0, "bulkMaxDocuments must be positive." );
+        checkArgument( this.bulkMaxBytes > 0, "bulkMaxBytes must be positive." );
+        checkArgument( this.bulkMaxConcurrentRequests > 0, "bulkMaxConcurrentRequests must be positive." );
+        checkArgument( this.bulkMaxRetries >= 0, "bulkMaxRetries cannot be negative." );
+        checkArgument( this.bulkRetryInitialDelayMillis > 0, "bulkRetryInitialDelayMillis must be positive." );
+        checkArgument( this.bulkRetryMaxDelayMillis >= this.bulkRetryInitialDelayMillis,
+                "bulkRetryMaxDelayMillis cannot be smaller than bulkRetryInitialDelayMillis." );
+        checkArgument( this.healthCheckIntervalMillis > 0, "healthCheckIntervalMillis must be positive." );
+        checkArgument( this.reconnectInitialDelayMillis > 0, "reconnectInitialDelayMillis must be positive." );
+        checkArgument( this.reconnectMaxDelayMillis >= this.reconnectInitialDelayMillis,
+                "reconnectMaxDelayMillis cannot be smaller than reconnectInitialDelayMillis." );
+        checkArgument( this.reconnectCloseGraceMillis >= 0, "reconnectCloseGraceMillis cannot be negative." );
+        checkArgument( this.maxConcurrentSearches >= 0, "maxConcurrentSearches cannot be negative." );
+        checkArgument( this.searchTargetLatencyMillis > 0, "searchTargetLatencyMillis must be positive." );
+        checkArgument( this.exportSlices > 0, "exportSlices must be positive." );
+        checkArgument( this.exportBatchSize > 0, "exportBatchSize must be positive." );
+        checkArgument( this.exportScrollKeepAliveMillis > 0, "exportScrollKeepAliveMillis must be positive." );
+        checkArgument( this.taskRetentionMillis > 0, "taskRetentionMillis must be positive." );
+        checkArgument( this.reindexWorkers > 0, "reindexWorkers must be positive." );
+        checkArgument( this.reindexBatchSize > 0, "reindexBatchSize must be positive." );
+        checkArgument( this.queryTemplateCacheSize > 0, "queryTemplateCacheSize must be positive." );
+        checkArgument( this.searchResultCacheTtlMillis > 0, "searchResultCacheTtlMillis must be positive." );
+        checkArgument( this.searchResultCacheSize > 0, "searchResultCacheSize must be positive." );
+        checkArgument( this.bulkTargetLatencyMillis > 0, "bulkTargetLatencyMillis must be positive." );
+    }
+
+    public static SearchTuningConfiguration defaults() {
+        return new SearchTuningConfiguration(
+                Optional.empty(),
+                Optional.empty(),
+                Optional.empty(),
+                Optional.empty(),
+                Optional.empty(),
+                Optional.empty(),
+                Optional.empty(),
+                Optional.empty(),
+                Optional.empty(),
+                Optional.empty(),
+                Optional.empty(),
+                Optional.empty(),
+                Optional.empty(),
+                Optional.empty(),
+                Optional.empty(),
+                Optional.empty(),
+                Optional.empty(),
+                Optional.empty(),
+                Optional.empty(),
+                Optional.empty(),
+                Optional.empty(),
+                Optional.empty(),
+                Optional.empty(),
+                Optional.empty(),
+                Optional.empty(),
+                Optional.empty(),
+                Optional.empty(),
+                Optional.empty() );
+    }
+
+    @JsonProperty( BULK_MAX_DOCUMENTS )
+    public int getBulkMaxDocuments() {
+        return bulkMaxDocuments;
+    }
+
+    @JsonProperty( BULK_MAX_BYTES )
+    public long getBulkMaxBytes() {
+        return bulkMaxBytes;
+    }
+
+    @JsonProperty( BULK_MAX_CONCURRENT_REQUESTS )
+    public int getBulkMaxConcurrentRequests() {
+        return bulkMaxConcurrentRequests;
+    }
+
+    @JsonProperty( BULK_MAX_RETRIES )
+    public int getBulkMaxRetries() {
+        return bulkMaxRetries;
+    }
+
+    @JsonProperty( BULK_RETRY_INITIAL_DELAY )
+    public long getBulkRetryInitialDelayMillis() {
+        return bulkRetryInitialDelayMillis;
+    }
+
+    @JsonProperty( BULK_RETRY_MAX_DELAY )
+    public long getBulkRetryMaxDelayMillis() {
+        return bulkRetryMaxDelayMillis;
+    }
+
+    @JsonProperty( HEALTH_CHECK_INTERVAL )
+    public long getHealthCheckIntervalMillis() {
+        return healthCheckIntervalMillis;
+    }
+
+    @JsonProperty( RECONNECT_INITIAL_DELAY )
+    public long getReconnectInitialDelayMillis() {
+        return reconnectInitialDelayMillis;
+    }
+
+    @JsonProperty( RECONNECT_MAX_DELAY )
+    public long getReconnectMaxDelayMillis() {
+        return reconnectMaxDelayMillis;
+    }
+
+    @JsonProperty( RECONNECT_CLOSE_GRACE )
+    public long getReconnectCloseGraceMillis() {
+        return reconnectCloseGraceMillis;
+    }
+
+    @JsonProperty( MAX_CONCURRENT_SEARCHES )
+    public int getMaxConcurrentSearches() {
+        return maxConcurrentSearches;
+    }
+
+    @JsonProperty( ADAPTIVE_CONCURRENT_SEARCHES )
+    public boolean isAdaptiveConcurrentSearches() {
+        return adaptiveConcurrentSearches;
+    }
+
+    @JsonProperty( SEARCH_TARGET_LATENCY )
+    public long getSearchTargetLatencyMillis() {
+        return searchTargetLatencyMillis;
+    }
+
+    @JsonProperty( EXPORT_SLICES )
+    public int getExportSlices() {
+        return exportSlices;
+    }
+
+    @JsonProperty( EXPORT_BATCH_SIZE )
+    public int getExportBatchSize() {
+        return exportBatchSize;
+    }
+
+    @JsonProperty( EXPORT_SCROLL_KEEP_ALIVE )
+    public long getExportScrollKeepAliveMillis() {
+        return exportScrollKeepAliveMillis;
+    }
+
+    @JsonProperty( ROUTE_BY_ENTITY_SET )
+    public boolean isRouteByEntitySet() {
+        return routeByEntitySet;
+    }
+
+    @JsonProperty( TASK_RETENTION )
+    public long getTaskRetentionMillis() {
+        return taskRetentionMillis;
+    }
+
+    @JsonProperty( REINDEX_WORKERS )
+    public int getReindexWorkers() {
+        return reindexWorkers;
+    }
+
+    @JsonProperty( REINDEX_BATCH_SIZE )
+    public int getReindexBatchSize() {
+        return reindexBatchSize;
+    }
+
+    @JsonProperty( QUERY_TEMPLATE_CACHE_SIZE )
+    public long getQueryTemplateCacheSize() {
+        return queryTemplateCacheSize;
+    }
+
+    @JsonProperty( SEARCH_RESULT_CACHE_ENABLED )
+    public boolean isSearchResultCacheEnabled() {
+        return searchResultCacheEnabled;
+    }
+
+    @JsonProperty( SEARCH_RESULT_CACHE_TTL )
+    public long getSearchResultCacheTtlMillis() {
+        return searchResultCacheTtlMillis;
+    }
+
+    @JsonProperty( SEARCH_RESULT_CACHE_SIZE )
+    public long getSearchResultCacheSize() {
+        return searchResultCacheSize;
+    }
+
+    @JsonProperty( HYDRATE_SEARCH_FROM_SOURCE )
+    public boolean isHydrateSearchFromSource() {
+        return hydrateSearchFromSource;
+    }
+
+    @JsonProperty( BULK_TARGET_LATENCY )
+    public long getBulkTargetLatencyMillis() {
+        return bulkTargetLatencyMillis;
+    }
+
+    @JsonProperty( DOCUMENT_FORMAT )
+    public DocumentFormat getDocumentFormat() {
+        return documentFormat;
+    }
+
+    @JsonProperty( BULK_SIZING )
+    public BulkSizing getBulkSizing() {
+        return bulkSizing;
+    }
+
+    @Override
+    @JsonIgnore
+    public ConfigurationKey getKey() {
+        return key;
+    }
+
+    @JsonIgnore
+    public static ConfigurationKey key() {
+        return key;
+    }
+
+    /**
+     * How entity documents are serialized for the data indices.
+     */
+    public enum DocumentFormat {
+        /**
+         * Writes documents straight from the property values with a streaming generator.
+         */
+        STREAMING,
+        /**
+         * Builds documents as maps and hands them to the object mapper.
+         */
+        MAPPED
+    }
+
+    /**
+     * How many documents go into a single bulk request.
+     */
+    public enum BulkSizing {
+        /**
+         * Chunks are capped by bulkMaxDocuments and bulkMaxBytes.
+         */
+        FIXED,
+        /**
+         * The document cap grows while bulk requests finish within bulkTargetLatencyMillis and shrinks when they take
+         * longer or are rejected. It never exceeds bulkMaxDocuments and chunks are still capped by bulkMaxBytes.
+         */
+        ADAPTIVE
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.data;
+
+import com.dataloom.mappers.ObjectMappers;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Position of a paged read of an entity set between two pages. It is handed to clients as an opaque, url safe token.
+ * <p>
+ * For every partition of the entity set that may still have entities it holds the last entity key id returned from
+ * it. Partitions are read in ascending order and dropped once exhausted.
+ */
+public class EntitySetDataCursor {
+    private static final ObjectMapper mapper = ObjectMappers.getJsonMapper();
+
+    private static final String POSITIONS = "p";
+
+    private final TreeMap<Integer, UUID> positions;
+
+    @JsonCreator
+    public EntitySetDataCursor( @JsonProperty( POSITIONS ) Map<Integer, UUID> positions ) {
+        this.positions = new TreeMap<>( positions );
+    }
+
+    /**
+     * @return The last entity key id returned for each partition that may have more entities, by partition.
+     */
+    @JsonProperty( POSITIONS )
+    public TreeMap<Integer, UUID> getPositions() {
+        return positions;
+    }
+
+    public String encode() {
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString( mapper.writeValueAsBytes( this ) );
+        } catch ( IOException e ) {
+            throw new IllegalStateException( "Unable to encode entity set data cursor.", e );
+        }
+    }
+
+    public static EntitySetDataCursor decode( String token ) {
+        try {
+            return mapper.readValue( Base64.getUrlDecoder().decode( token ), EntitySetDataCursor.class );
+        } catch ( IOException | IllegalArgumentException | NullPointerException e ) {
+            throw new IllegalArgumentException( "Invalid entity set data cursor: " + token, e );
+        }
+    }
+}
@@ -40,7 +40,10 @@ import com.openlattice.data.*;
 import com.openlattice.data.graph.DataGraphServiceHelper;
 import com.openlattice.data.requests.EntitySetSelection;
 import com.openlattice.data.requests.FileType;
+import com.openlattice.datastore.configuration.DataReadConfiguration;
+import com.openlattice.datastore.data.EntitySetDataPage;
 import com.openlattice.datastore.services.EdmService;
+import com.openlattice.datastore.services.EntitySetDataService;
 import com.openlattice.datastore.services.EntitySetManager;
 import com.openlattice.edm.EntitySet;
 import com.openlattice.edm.set.EntitySetFlag;
@@ -62,6 +65,7 @@ import org.springframework.web.bind.annotation.*;
 
 import javax.inject.Inject;
 import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.time.Instant;
 import java.time.OffsetDateTime;
@@ -77,6 +81,7 @@ import static com.google.common.collect.Maps.transformValues;
 import static com.openlattice.authorization.EdmAuthorizationHelper.READ_PERMISSION;
 import static com.openlattice.authorization.EdmAuthorizationHelper.WRITE_PERMISSION;
 import static com.openlattice.authorization.EdmAuthorizationHelper.aclKeysForAccessCheck;
+import static com.openlattice.edm.EdmConstants.ID_FQN;
 
 @SuppressFBWarnings(
         value = "NP_NULL_ON_SOME_PATH_FROM_RETURN_VALUE",
@@ -85,6 +90,12 @@ import static com.openlattice.authorization.EdmAuthorizationHelper.aclKeysForAcc
 @RequestMapping( DataApi.CONTROLLER )
 public class DataController implements DataApi, AuthorizingComponent, AuditingComponent {
 
+    public static final String ARROW     = "arrow";
+    public static final String CURSOR    = "cursor";
+    public static final String ENTITIES  = "entities";
+    public static final String PAGE      = "page";
+    public static final String PAGE_SIZE = "pageSize";
+
     @Inject
     private EntitySetManager entitySetService;
 
@@ -115,12 +126,22 @@ public class DataController implements DataApi, AuthorizingComponent, AuditingCo
     @Inject
     private DataDeletionManager deletionManager;
 
+    @Inject
+    private EntitySetDataService entitySetDataService;
+
+    @Inject
+    private DataReadConfiguration dataReadConfiguration;
+
+    /**
+     * Downloads an entity set. Rows are written to the response as they are read, see
+     * {@link EntitySetDataService#writeEntitySetData}.
+     */
     @RequestMapping(
             path = { "/" + ENTITY_SET + "/" + SET_ID_PATH },
             method = RequestMethod.GET,
             produces = { MediaType.APPLICATION_JSON_VALUE, CustomMediaType.TEXT_CSV_VALUE } )
     @Timed
-    public EntitySetData<FullQualifiedName> loadEntitySetData(
+    public void loadEntitySetData(
             @PathVariable( ENTITY_SET_ID ) UUID entitySetId,
             @RequestParam(
                     value = FILE_TYPE,
@@ -128,11 +149,9 @@ public class DataController implements DataApi, AuthorizingComponent, AuditingCo
             @RequestParam(
                     value = TOKEN,
                     required = false ) String token,
-            HttpServletResponse response ) {
-        setContentDisposition( response, entitySetId.toString(), fileType );
-        setDownloadContentType( response, fileType );
-
-        return loadEntitySetData( entitySetId, fileType, token );
+            HttpServletResponse response ) throws IOException {
+        authenticate( token );
+        downloadEntitySetData( entitySetId, null, fileType, response );
     }
 
     @Override
@@ -140,12 +159,16 @@ public class DataController implements DataApi, AuthorizingComponent, AuditingCo
             UUID entitySetId,
             FileType fileType,
             String token ) {
+        authenticate( token );
+        return loadEntitySetData( entitySetId, new EntitySetSelection( Optional.empty() ) );
+    }
+
+    private void authenticate( String token ) {
         if ( StringUtils.isNotBlank( token ) ) {
             Authentication authentication = authProvider
                     .authenticate( PreAuthenticatedAuthenticationJsonWebToken.usingToken( token ) );
             SecurityContextHolder.getContext().setAuthentication( authentication );
         }
-        return loadEntitySetData( entitySetId, new EntitySetSelection( Optional.empty() ) );
     }
 
     @RequestMapping(
@@ -154,14 +177,97 @@ public class DataController implements DataApi, AuthorizingComponent, AuditingCo
             consumes = { MediaType.APPLICATION_JSON_VALUE },
             produces = { MediaType.APPLICATION_JSON_VALUE, CustomMediaType.TEXT_CSV_VALUE } )
     @Timed
-    public EntitySetData<FullQualifiedName> loadEntitySetData(
+    public void loadEntitySetData(
             @PathVariable( ENTITY_SET_ID ) UUID entitySetId,
             @RequestBody( required = false ) EntitySetSelection selection,
             @RequestParam( value = FILE_TYPE, required = false ) FileType fileType,
-            HttpServletResponse response ) {
-        setContentDisposition( response, entitySetId.toString(), fileType );
-        setDownloadContentType( response, fileType );
-        return loadSelectedEntitySetData( entitySetId, selection, fileType );
+            HttpServletResponse response ) throws IOException {
+        downloadEntitySetData( entitySetId, selection, fileType, response );
+    }
+
+    /**
+     * Downloads an entity set as an Apache Arrow IPC stream, with a typed column per selected property type. Clients
+     * can load it without parsing text or inferring types.
+     */
+    @RequestMapping(
+            path = { "/" + ENTITY_SET + "/" + SET_ID_PATH + "/" + ARROW },
+            method = RequestMethod.POST,
+            produces = { EntitySetDataService.APPLICATION_ARROW_STREAM_VALUE } )
+    @Timed
+    public void loadEntitySetDataAsArrow(
+            @PathVariable( ENTITY_SET_ID ) UUID entitySetId,
+            @RequestBody( required = false ) EntitySetSelection selection,
+            HttpServletResponse response ) throws IOException {
+        final var entitySet = getReadableEntitySet( entitySetId );
+
+        if ( isPartitionedRead( entitySet, selection ) ) {
+            final var selectedProperties = getSelectedProperties( entitySetId, selection );
+            final var authorizedPropertyTypesOfEntitySets = getAuthorizedPropertyTypesForEntitySetRead(
+                    entitySet, Set.of( entitySetId ), selectedProperties
+            );
+            final var orderedPropertyTypes = getOrderedPropertyTypes(
+                    selectedProperties, authorizedPropertyTypesOfEntitySets
+            );
+
+            setArrowHeaders( response, entitySetId );
+            entitySetDataService.writeArrow( entitySetId,
+                    orderedPropertyTypes,
+                    authorizedPropertyTypesOfEntitySets,
+                    response.getOutputStream() );
+        } else {
+            final var dataWithPropertyTypes = loadEntitySetDataWithPropertyTypes( entitySet, selection );
+
+            setArrowHeaders( response, entitySetId );
+            entitySetDataService.writeArrow( dataWithPropertyTypes.getLeft(),
+                    dataWithPropertyTypes.getRight(),
+                    response.getOutputStream() );
+        }
+    }
+
+    private static void setArrowHeaders( HttpServletResponse response, UUID entitySetId ) {
+        response.setHeader( "Content-Disposition", "attachment; filename=" + entitySetId + "." + ARROW );
+        response.setContentType( EntitySetDataService.APPLICATION_ARROW_STREAM_VALUE );
+    }
+
+    /**
+     * Writes an entity set download to the response. Whole normal entity sets are read several partitions at a time,
+     * see {@link EntitySetDataService#writeEntitySetData(UUID, List, Map, FileType, java.io.OutputStream)}, while
+     * linking entity sets and selections of entity key ids are read with a single query.
+     */
+    private void downloadEntitySetData(
+            UUID entitySetId,
+            EntitySetSelection selection,
+            FileType fileType,
+            HttpServletResponse response ) throws IOException {
+        final var entitySet = getReadableEntitySet( entitySetId );
+
+        if ( isPartitionedRead( entitySet, selection ) ) {
+            final var selectedProperties = getSelectedProperties( entitySetId, selection );
+            final var authorizedPropertyTypesOfEntitySets = getAuthorizedPropertyTypesForEntitySetRead(
+                    entitySet, Set.of( entitySetId ), selectedProperties
+            );
+            final var orderedPropertyTypes = getOrderedPropertyTypes(
+                    selectedProperties, authorizedPropertyTypesOfEntitySets
+            );
+
+            setContentDisposition( response, entitySetId.toString(), fileType );
+            setDownloadContentType( response, fileType );
+            entitySetDataService.writeEntitySetData( entitySetId,
+                    orderedPropertyTypes,
+                    authorizedPropertyTypesOfEntitySets,
+                    fileType,
+                    response.getOutputStream() );
+        } else {
+            final var data = loadEntitySetDataWithPropertyTypes( entitySet, selection ).getLeft();
+
+            setContentDisposition( response, entitySetId.toString(), fileType );
+            setDownloadContentType( response, fileType );
+            entitySetDataService.writeEntitySetData( data, fileType, response.getOutputStream() );
+        }
+    }
+
+    private static boolean isPartitionedRead( EntitySet entitySet, EntitySetSelection selection ) {
+        return !entitySet.isLinking() && ( selection == null || selection.getEntityKeyIds().isEmpty() );
     }
 
     @Override
@@ -175,14 +281,16 @@ public class DataController implements DataApi, AuthorizingComponent, AuditingCo
     private EntitySetData<FullQualifiedName> loadEntitySetData(
             UUID entitySetId,
             EntitySetSelection selection ) {
-        if ( !authz.checkIfHasPermissions(
-                new AclKey( entitySetId ), Principals.getCurrentPrincipals(), READ_PERMISSION ) ) {
-            throw new ForbiddenException( "Insufficient permissions to read the entity set " + entitySetId
-                    + " or it doesn't exists." );
-        }
-        final var entitySet = entitySetService.getEntitySet( entitySetId );
-        checkState( entitySet != null, "Could not find entity set with id: %s", entitySetId );
+        return loadEntitySetDataWithPropertyTypes( getReadableEntitySet( entitySetId ), selection ).getLeft();
+    }
 
+    /**
+     * @return The selected entity set data along with the authorized property types of its columns, in column order.
+     */
+    private Pair<EntitySetData<FullQualifiedName>, List<PropertyType>> loadEntitySetDataWithPropertyTypes(
+            EntitySet entitySet,
+            EntitySetSelection selection ) {
+        final var entitySetId = entitySet.getId();
         Optional<Set<UUID>> entityKeyIds = ( selection == null ) ? Optional.empty() : selection.getEntityKeyIds();
         final var selectedProperties = getSelectedProperties( entitySetId, selection );
 
@@ -196,19 +304,76 @@ public class DataController implements DataApi, AuthorizingComponent, AuditingCo
                 entitySet, normalEntitySetIds, selectedProperties
         );
 
+        final var orderedPropertyTypes = getOrderedPropertyTypes(
+                selectedProperties, authorizedPropertyTypesOfEntitySets
+        );
+
+        return Pair.of( dgm.getEntitySetData(
+                entityKeyIdsOfEntitySets,
+                getPropertyNames( orderedPropertyTypes ),
+                authorizedPropertyTypesOfEntitySets,
+                entitySet.isLinking() ), orderedPropertyTypes );
+    }
+
+    /**
+     * Reads one page of a normal entity set. The cursor returned with a page picks up right after it, so clients can
+     * walk entity sets of any size one bounded page at a time, see
+     * {@link EntitySetDataService#getEntitySetDataPage}.
+     */
+    @Timed
+    @PostMapping(
+            path = "/" + ENTITY_SET + "/" + SET_ID_PATH + "/" + PAGE,
+            produces = MediaType.APPLICATION_JSON_VALUE )
+    public EntitySetDataPage loadEntitySetDataPage(
+            @PathVariable( ENTITY_SET_ID ) UUID entitySetId,
+            @RequestBody( required = false ) EntitySetSelection selection,
+            @RequestParam( value = PAGE_SIZE, required = false, defaultValue = "1000" ) int pageSize,
+            @RequestParam( value = CURSOR, required = false ) String cursor ) {
+        final var entitySet = getReadableEntitySet( entitySetId );
+        checkArgument( !entitySet.isLinking(), "Linking entity set %s can't be read page by page.", entitySetId );
+        checkArgument( isPartitionedRead( entitySet, selection ),
+                "Entity key ids can't be selected when reading page by page." );
+
+        final var selectedProperties = getSelectedProperties( entitySetId, selection );
+        final var authorizedPropertyTypesOfEntitySets = getAuthorizedPropertyTypesForEntitySetRead(
+                entitySet, Set.of( entitySetId ), selectedProperties
+        );
+        final var orderedPropertyTypes = getOrderedPropertyTypes(
+                selectedProperties, authorizedPropertyTypesOfEntitySets
+        );
+
+        return entitySetDataService.getEntitySetDataPage( entitySetId,
+                getPropertyNames( orderedPropertyTypes ),
+                authorizedPropertyTypesOfEntitySets,
+                Optional.ofNullable( cursor ),
+                pageSize );
+    }
+
+    private EntitySet getReadableEntitySet( UUID entitySetId ) {
+        if ( !authz.checkIfHasPermissions(
+                new AclKey( entitySetId ), Principals.getCurrentPrincipals(), READ_PERMISSION ) ) {
+            throw new ForbiddenException( "Insufficient permissions to read the entity set " + entitySetId
+                    + " or it doesn't exists." );
+        }
+        final var entitySet = entitySetService.getEntitySet( entitySetId );
+        checkState( entitySet != null, "Could not find entity set with id: %s", entitySetId );
+        return entitySet;
+    }
+
+    private static List<PropertyType> getOrderedPropertyTypes(
+            Set<UUID> selectedProperties,
+            Map<UUID, Map<UUID, PropertyType>> authorizedPropertyTypesOfEntitySets ) {
         final var authorizedPropertyTypes = authorizedPropertyTypesOfEntitySets.values().iterator().next();
-        final LinkedHashSet<String> orderedPropertyNames = new LinkedHashSet<>( authorizedPropertyTypes.size() );
-        selectedProperties.stream()
+        return selectedProperties.stream()
                 .filter( authorizedPropertyTypes::containsKey )
                 .map( authorizedPropertyTypes::get )
-                .map( pt -> pt.getType().getFullQualifiedNameAsString() )
-                .forEach( orderedPropertyNames::add );
+                .collect( Collectors.toList() );
+    }
 
-        return dgm.getEntitySetData(
-                entityKeyIdsOfEntitySets,
-                orderedPropertyNames,
-                authorizedPropertyTypesOfEntitySets,
-                entitySet.isLinking() );
+    private static LinkedHashSet<String> getPropertyNames( List<PropertyType> orderedPropertyTypes ) {
+        return orderedPropertyTypes.stream()
+                .map( pt -> pt.getType().getFullQualifiedNameAsString() )
+                .collect( Collectors.toCollection( LinkedHashSet::new ) );
     }
 
     private Set<UUID> getSelectedProperties( UUID entitySetId, EntitySetSelection selection ) {
@@ -851,6 +1016,80 @@ public class DataController implements DataApi, AuthorizingComponent, AuditingCo
         }
     }
 
+    /**
+     * Loads entities of several entity sets at once, checking read access and authorized property types once per entity
+     * set and reading the entities of each entity set with a single query. A request may ask for at most
+     * {@link DataReadConfiguration#getBatchReadMaxEntities()} entities in total.
+     *
+     * @param entityKeyIds The entity key ids to load, keyed by entity set id. Linking ids for linking entity sets.
+     * @return The entities found, keyed by entity set id and entity key id. Entities that don't exist are left out.
+     */
+    @Timed
+    @PostMapping(
+            path = "/" + ENTITIES,
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE )
+    public Map<UUID, Map<UUID, Map<FullQualifiedName, Set<Object>>>> getEntities(
+            @RequestBody Map<UUID, Set<UUID>> entityKeyIds ) {
+        final long requested = entityKeyIds.values().stream().mapToLong( Set::size ).sum();
+        checkArgument( requested <= dataReadConfiguration.getBatchReadMaxEntities(),
+                "Cannot load more than %s entities at once, but %s were requested.",
+                dataReadConfiguration.getBatchReadMaxEntities(),
+                requested );
+
+        entityKeyIds.keySet().forEach( entitySetId -> ensureReadAccess( new AclKey( entitySetId ) ) );
+        final var entitySets = entitySetService.getEntitySetsAsMap( entityKeyIds.keySet() );
+
+        final Map<UUID, Map<UUID, Map<FullQualifiedName, Set<Object>>>> entities = Maps
+                .newHashMapWithExpectedSize( entityKeyIds.size() );
+        entityKeyIds.forEach( ( entitySetId, ids ) -> {
+            final var entitySet = entitySets.get( entitySetId );
+            checkState( entitySet != null, "Could not find entity set with id: %s", entitySetId );
+
+            entities.put( entitySetId, ids.isEmpty() ? Map.of() : getEntities( entitySet, ids ) );
+        } );
+
+        return entities;
+    }
+
+    private Map<UUID, Map<FullQualifiedName, Set<Object>>> getEntities( EntitySet entitySet, Set<UUID> entityKeyIds ) {
+        final Map<UUID, Map<UUID, PropertyType>> authorizedPropertyTypes;
+        final Set<UUID> normalEntitySetIds;
+
+        if ( entitySet.isLinking() ) {
+            checkState( !entitySet.getLinkedEntitySets().isEmpty(),
+                    "Linked entity sets are empty for linking entity set %s", entitySet.getId() );
+            entitySet.getLinkedEntitySets().forEach( esId -> ensureReadAccess( new AclKey( esId ) ) );
+
+            normalEntitySetIds = entitySet.getLinkedEntitySets();
+            authorizedPropertyTypes = authzHelper
+                    .getAuthorizedPropertiesByNormalEntitySets( entitySet, EnumSet.of( Permission.READ ) );
+        } else {
+            normalEntitySetIds = Set.of( entitySet.getId() );
+            authorizedPropertyTypes = Map.of( entitySet.getId(),
+                    authzHelper.getAuthorizedPropertyTypes( entitySet.getId(), READ_PERMISSION ) );
+        }
+
+        final var propertyNames = authorizedPropertyTypes.values().iterator().next().values().stream()
+                .map( pt -> pt.getType().getFullQualifiedNameAsString() )
+                .collect( Collectors.toCollection( LinkedHashSet::new ) );
+        final Map<UUID, Optional<Set<UUID>>> entityKeyIdsOfEntitySets = normalEntitySetIds.stream()
+                .collect( Collectors.toMap( esId -> esId, esId -> Optional.of( entityKeyIds ) ) );
+
+        final Map<UUID, Map<FullQualifiedName, Set<Object>>> entities = Maps
+                .newHashMapWithExpectedSize( entityKeyIds.size() );
+        dgm.getEntitySetData( entityKeyIdsOfEntitySets, propertyNames, authorizedPropertyTypes, entitySet.isLinking() )
+                .getEntities()
+                .forEach( entity -> entities.put( getEntityKeyId( entity ), entity ) );
+
+        return entities;
+    }
+
+    private static UUID getEntityKeyId( Map<FullQualifiedName, Set<Object>> entity ) {
+        final var id = entity.get( ID_FQN ).iterator().next();
+        return ( id instanceof UUID ) ? (UUID) id : UUID.fromString( id.toString() );
+    }
+
     @Timed
     @Override
     @GetMapping(
@@ -32,6 +32,7 @@ import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.maps.GeoApiContext;
 import com.hazelcast.core.HazelcastInstance;
 import com.kryptnostic.rhizome.configuration.ConfigurationConstants;
+import com.kryptnostic.rhizome.configuration.service.ConfigurationService;
 import com.openlattice.apps.services.AppService;
 import com.openlattice.assembler.Assembler;
 import com.openlattice.assembler.AssemblerConfiguration;
@@ -48,7 +49,6 @@ import com.openlattice.authorization.mapstores.ResolvedPrincipalTreesMapLoader;
 import com.openlattice.authorization.mapstores.SecurablePrincipalsMapLoader;
 import com.openlattice.codex.CodexService;
 import com.openlattice.collections.CollectionsManager;
-import com.openlattice.conductor.rpc.ConductorElasticsearchApi;
 import com.openlattice.data.DataDeletionManager;
 import com.openlattice.data.DataGraphManager;
 import com.openlattice.data.DataGraphService;
@@ -60,11 +60,15 @@ import com.openlattice.data.storage.*;
 import com.openlattice.data.storage.aws.AwsDataSinkService;
 import com.openlattice.data.storage.partitions.PartitionManager;
 import com.openlattice.datastore.configuration.DatastoreConfiguration;
+import com.openlattice.datastore.configuration.DataReadConfiguration;
 import com.openlattice.datastore.configuration.ReadonlyDatasourceSupplier;
+import com.openlattice.datastore.configuration.SearchTuningConfiguration;
+import com.openlattice.datastore.search.jobs.EntitySetDataReindexJobDependencies;
 import com.openlattice.datastore.services.*;
 import com.openlattice.directory.Auth0UserDirectoryService;
 import com.openlattice.directory.LocalUserDirectoryService;
 import com.openlattice.directory.UserDirectoryService;
+import com.openlattice.edm.EntitySet;
 import com.openlattice.edm.PostgresEdmManager;
 import com.openlattice.edm.properties.PostgresTypeManager;
 import com.openlattice.edm.schemas.SchemaQueryService;
@@ -113,6 +117,8 @@ import org.springframework.context.annotation.Profile;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
 import static com.openlattice.datastore.util.Util.returnAndLog;
 
@@ -450,8 +456,92 @@ public class DatastoreServicesPod {
     }
 
     @Bean
-    public ConductorElasticsearchApi conductorElasticsearchApi() {
-        return new DatastoreElasticsearchImpl( datastoreConfiguration.getSearchConfiguration() );
+    public DataReadConfiguration dataReadConfiguration() {
+        return Optional
+                .ofNullable( ConfigurationService.StaticLoader.loadConfiguration( DataReadConfiguration.class ) )
+                .orElseGet( DataReadConfiguration::defaults );
+    }
+
+    @Bean
+    public EntitySetDataService entitySetDataService() {
+        // Whole entity set reads are paged from the read replica, so their rows are read from it too.
+        final var replicaDataQueryService = new PostgresEntityDataQueryService(
+                rds().getReadOnlyReplica(),
+                rds().getReadOnlyReplica(),
+                byteBlobDataManager,
+                partitionManager() );
+        final var replicaDatastore = new PostgresEntityDatastore(
+                replicaDataQueryService,
+                dataModelService(),
+                entitySetManager(),
+                metricRegistry,
+                eventBus,
+                postgresLinkingFeedbackQueryService(),
+                lqs() );
+        return new EntitySetDataService( dataGraphService(),
+                replicaDatastore,
+                partitionManager(),
+                entityKeyIdPager(),
+                defaultObjectMapper(),
+                dataReadConfiguration() );
+    }
+
+    @Bean
+    public EntityKeyIdPager entityKeyIdPager() {
+        return new EntityKeyIdPager( rds().getReadOnlyReplica() );
+    }
+
+    @Bean
+    public SearchTuningConfiguration searchTuningConfiguration() {
+        return Optional
+                .ofNullable( ConfigurationService.StaticLoader.loadConfiguration( SearchTuningConfiguration.class ) )
+                .orElseGet( SearchTuningConfiguration::defaults );
+    }
+
+    @Bean
+    public DatastoreElasticsearchImpl conductorElasticsearchApi() {
+        DatastoreElasticsearchImpl elasticsearchApi = new DatastoreElasticsearchImpl(
+                datastoreConfiguration.getSearchConfiguration(),
+                searchTuningConfiguration() );
+        elasticsearchApi.getConnectionMonitor().register( metricRegistry, healthCheckRegistry );
+        elasticsearchApi.register( eventBus );
+        elasticsearchApi.register( hazelcastInstance );
+        return elasticsearchApi;
+    }
+
+    @Bean
+    public DatastoreSearchService datastoreSearchService() {
+        return new DatastoreSearchService( conductorElasticsearchApi(),
+                entitySetManager(),
+                dataGraphService(),
+                dataQueryService(),
+                partitionManager(),
+                jobService(),
+                searchTuningConfiguration() );
+    }
+
+    @Bean
+    public SearchResultCache searchResultCache() {
+        final var tuning = searchTuningConfiguration();
+        final var cache = new SearchResultCache( tuning.isSearchResultCacheEnabled(),
+                tuning.getSearchResultCacheTtlMillis(),
+                tuning.getSearchResultCacheSize(),
+                entitySetIds -> entitySetManager().getEntitySetsAsMap( entitySetIds ).values().stream()
+                        .map( EntitySet::getEntityTypeId )
+                        .collect( Collectors.toSet() ) );
+        conductorElasticsearchApi().addWriteListener( cache::invalidateEntityType );
+        cache.register( hazelcastInstance );
+        return cache;
+    }
+
+    @Bean
+    public EntitySetDataReindexJobDependencies entitySetDataReindexJobDependencies() {
+        final var dependencies = new EntitySetDataReindexJobDependencies( entityKeyIdPager(),
+                dataQueryService(),
+                dataModelService(),
+                conductorElasticsearchApi() );
+        dependencies.register( hazelcastInstance );
+        return dependencies;
     }
 
     @Bean
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.search;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.openlattice.search.requests.SearchConstraints;
+
+import java.util.Map;
+
+/**
+ * Request to aggregate the entities matching a search. The aggregations are run over the matches of all the entity
+ * sets of the constraints together and are returned under the names they are given here. The start, max hits and sort
+ * of the constraints are ignored.
+ */
+public class AggregationRequest {
+    private static final String CONSTRAINTS  = "constraints";
+    private static final String AGGREGATIONS = "aggregations";
+
+    private final SearchConstraints                  constraints;
+    private final Map<String, EntityDataAggregation> aggregations;
+
+    @JsonCreator
+    public AggregationRequest(
+            @JsonProperty( CONSTRAINTS ) SearchConstraints constraints,
+            @JsonProperty( AGGREGATIONS ) Map<String, EntityDataAggregation> aggregations ) {
+        this.constraints = constraints;
+        this.aggregations = aggregations == null ? Map.of() : aggregations;
+    }
+
+    @JsonProperty( CONSTRAINTS )
+    public SearchConstraints getConstraints() {
+        return constraints;
+    }
+
+    @JsonProperty( AGGREGATIONS )
+    public Map<String, EntityDataAggregation> getAggregations() {
+        return aggregations;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.search;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The result of an {@link AggregationRequest}: the number of matching entities, the buckets of every bucket
+ * aggregation and the values of every stats aggregation, each under the name it was requested with.
+ */
+public class AggregationResult {
+    private static final String NUM_HITS = "numHits";
+    private static final String BUCKETS  = "buckets";
+    private static final String STATS    = "stats";
+
+    private final long                      numHits;
+    private final Map<String, List<Bucket>> buckets;
+    private final Map<String, Stats>        stats;
+
+    public AggregationResult( long numHits, Map<String, List<Bucket>> buckets, Map<String, Stats> stats ) {
+        this.numHits = numHits;
+        this.buckets = buckets;
+        this.stats = stats;
+    }
+
+    @JsonProperty( NUM_HITS )
+    public long getNumHits() {
+        return numHits;
+    }
+
+    @JsonProperty( BUCKETS )
+    public Map<String, List<Bucket>> getBuckets() {
+        return buckets;
+    }
+
+    @JsonProperty( STATS )
+    public Map<String, Stats> getStats() {
+        return stats;
+    }
+
+    public static class Bucket {
+        private final String key;
+        private final long   count;
+
+        public Bucket( String key, long count ) {
+            this.key = key;
+            this.count = count;
+        }
+
+        @JsonProperty( "key" )
+        public String getKey() {
+            return key;
+        }
+
+        @JsonProperty( "count" )
+        public long getCount() {
+            return count;
+        }
+    }
+
+    /**
+     * Min, max, average and sum are null when no entity has a value.
+     */
+    public static class Stats {
+        private final long   count;
+        private final Double min;
+        private final Double max;
+        private final Double avg;
+        private final Double sum;
+
+        public Stats( long count, Double min, Double max, Double avg, Double sum ) {
+            this.count = count;
+            this.min = min;
+            this.max = max;
+            this.avg = avg;
+            this.sum = sum;
+        }
+
+        @JsonProperty( "count" )
+        public long getCount() {
+            return count;
+        }
+
+        @JsonProperty( "min" )
+        public Double getMin() {
+            return min;
+        }
+
+        @JsonProperty( "max" )
+        public Double getMax() {
+            return max;
+        }
+
+        @JsonProperty( "avg" )
+        public Double getAvg() {
+            return avg;
+        }
+
+        @JsonProperty( "sum" )
+        public Double getSum() {
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.search;
+
+/**
+ * The kinds of aggregations that can be run over entity data.
+ */
+public enum AggregationType {
+    /**
+     * The most frequent values of a property and their counts.
+     */
+    TERMS,
+    /**
+     * Counts of the values of a numeric property in fixed size buckets.
+     */
+    HISTOGRAM,
+    /**
+     * Counts of the values of a date property in calendar buckets.
+     */
+    DATE_HISTOGRAM,
+    /**
+     * Count, min, max, average and sum of the values of a numeric or date property.
+     */
+    STATS,
+    /**
+     * Counts of the values of a geography point property in geohash cells.
+     */
+    GEOHASH_GRID
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.search;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * A page of entity data returned by a cursor search. The cursor is absent once every entity set has been exhausted.
+ */
+public class CursorDataSearchResult {
+    private static final String NUM_HITS = "numHits";
+    private static final String HITS     = "hits";
+    private static final String CURSOR   = "cursor";
+
+    private final long                                      numHits;
+    private final List<Map<FullQualifiedName, Set<Object>>> hits;
+    private final Optional<String>                          cursor;
+
+    @JsonCreator
+    public CursorDataSearchResult(
+            @JsonProperty( NUM_HITS ) long numHits,
+            @JsonProperty( HITS ) List<Map<FullQualifiedName, Set<Object>>> hits,
+            @JsonProperty( CURSOR ) Optional<String> cursor ) {
+        this.numHits = numHits;
+        this.hits = hits;
+        this.cursor = cursor;
+    }
+
+    @JsonProperty( NUM_HITS )
+    public long getNumHits() {
+        return numHits;
+    }
+
+    @JsonProperty( HITS )
+    public List<Map<FullQualifiedName, Set<Object>>> getHits() {
+        return hits;
+    }
+
+    @JsonProperty( CURSOR )
+    public Optional<String> getCursor() {
+        return cursor;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.search;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.openlattice.search.requests.SearchConstraints;
+
+import java.util.Optional;
+
+/**
+ * Request for a page of a cursor search. The first page is requested without a cursor; every following page passes the
+ * cursor returned with the previous page along with the same constraints.
+ */
+public class CursorSearchRequest {
+    private static final String CONSTRAINTS = "constraints";
+    private static final String CURSOR      = "cursor";
+
+    private final SearchConstraints constraints;
+    private final Optional<String>  cursor;
+
+    @JsonCreator
+    public CursorSearchRequest(
+            @JsonProperty( CONSTRAINTS ) SearchConstraints constraints,
+            @JsonProperty( CURSOR ) Optional<String> cursor ) {
+        this.constraints = constraints;
+        this.cursor = cursor == null ? Optional.empty() : cursor;
+    }
+
+    @JsonProperty( CONSTRAINTS )
+    public SearchConstraints getConstraints() {
+        return constraints;
+    }
+
+    @JsonProperty( CURSOR )
+    public Optional<String> getCursor() {
+        return cursor;
+    }
+}
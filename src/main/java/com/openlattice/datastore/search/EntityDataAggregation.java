@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.search;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * A single aggregation over the values of one property type. Which of the optional settings apply depends on the type
+ * of the aggregation: size for terms and geohash grids, interval for histograms, calendar interval (e.g. "day" or
+ * "month") for date histograms and precision for geohash grids.
+ */
+public class EntityDataAggregation {
+    private static final String TYPE              = "type";
+    private static final String PROPERTY_TYPE_ID  = "propertyTypeId";
+    private static final String SIZE              = "size";
+    private static final String INTERVAL          = "interval";
+    private static final String CALENDAR_INTERVAL = "calendarInterval";
+    private static final String PRECISION         = "precision";
+
+    private final AggregationType   type;
+    private final UUID              propertyTypeId;
+    private final Optional<Integer> size;
+    private final Optional<Double>  interval;
+    private final Optional<String>  calendarInterval;
+    private final Optional<Integer> precision;
+
+    @JsonCreator
+    public EntityDataAggregation(
+            @JsonProperty( TYPE ) AggregationType type,
+            @JsonProperty( PROPERTY_TYPE_ID ) UUID propertyTypeId,
+            @JsonProperty( SIZE ) Optional<Integer> size,
+            @JsonProperty( INTERVAL ) Optional<Double> interval,
+            @JsonProperty( CALENDAR_INTERVAL ) Optional<String> calendarInterval,
+            @JsonProperty( PRECISION ) Optional<Integer> precision ) {
+        this.type = type;
+        this.propertyTypeId = propertyTypeId;
+        this.size = size == null ? Optional.empty() : size;
+        this.interval = interval == null ? Optional.empty() : interval;
+        this.calendarInterval = calendarInterval == null ? Optional.empty() : calendarInterval;
+        this.precision = precision == null ? Optional.empty() : precision;
+    }
+
+    @JsonProperty( TYPE )
+    public AggregationType getType() {
+        return type;
+    }
+
+    @JsonProperty( PROPERTY_TYPE_ID )
+    public UUID getPropertyTypeId() {
+        return propertyTypeId;
+    }
+
+    @JsonProperty( SIZE )
+    public Optional<Integer> getSize() {
+        return size;
+    }
+
+    @JsonProperty( INTERVAL )
+    public Optional<Double> getInterval() {
+        return interval;
+    }
+
+    @JsonProperty( CALENDAR_INTERVAL )
+    public Optional<String> getCalendarInterval() {
+        return calendarInterval;
+    }
+
+    @JsonProperty( PRECISION )
+    public Optional<Integer> getPrecision() {
+        return precision;
+    }
+}
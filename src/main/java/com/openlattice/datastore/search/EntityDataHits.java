@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.search;
+
+import com.openlattice.data.EntityDataKey;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The hits of an entity data search along with the property values read from the source of each hit.
+ */
+public class EntityDataHits {
+    private final long                                       numHits;
+    private final List<EntityDataKey>                        entityDataKeys;
+    private final Map<EntityDataKey, Map<UUID, Set<Object>>> values;
+
+    public EntityDataHits(
+            long numHits,
+            List<EntityDataKey> entityDataKeys,
+            Map<EntityDataKey, Map<UUID, Set<Object>>> values ) {
+        this.numHits = numHits;
+        this.entityDataKeys = entityDataKeys;
+        this.values = values;
+    }
+
+    public long getNumHits() {
+        return numHits;
+    }
+
+    /**
+     * @return The keys of the hits in the order they were returned.
+     */
+    public List<EntityDataKey> getEntityDataKeys() {
+        return entityDataKeys;
+    }
+
+    /**
+     * @return The property values of every hit mapped by property type id.
+     */
+    public Map<EntityDataKey, Map<UUID, Set<Object>>> getValues() {
+        return values;
+    }
+}
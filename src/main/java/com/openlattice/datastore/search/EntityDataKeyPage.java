@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.search;
+
+import com.openlattice.data.EntityDataKey;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A page of entity data keys returned by a cursor search, along with the cursor of the next page if there is one.
+ */
+public class EntityDataKeyPage {
+    private final long                   numHits;
+    private final List<EntityDataKey>    entityDataKeys;
+    private final Optional<SearchCursor> next;
+
+    public EntityDataKeyPage( long numHits, List<EntityDataKey> entityDataKeys, Optional<SearchCursor> next ) {
+        this.numHits = numHits;
+        this.entityDataKeys = entityDataKeys;
+        this.next = next;
+    }
+
+    public long getNumHits() {
+        return numHits;
+    }
+
+    public List<EntityDataKey> getEntityDataKeys() {
+        return entityDataKeys;
+    }
+
+    public Optional<SearchCursor> getNext() {
+        return next;
+    }
+}
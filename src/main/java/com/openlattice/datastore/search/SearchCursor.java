@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.search;
+
+import com.dataloom.mappers.ObjectMappers;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Position of a search_after search between two pages. It is handed to clients as an opaque, url safe token.
+ * <p>
+ * For every entity set that still has hits it holds the sort values of the last hit returned, and it carries the total
+ * number of hits counted on the first page so that later pages don't have to count again.
+ */
+public class SearchCursor {
+    private static final ObjectMapper mapper = ObjectMappers.getJsonMapper();
+
+    private static final String NUM_HITS  = "n";
+    private static final String POSITIONS = "p";
+
+    private final long                numHits;
+    private final Map<UUID, Object[]> positions;
+
+    @JsonCreator
+    public SearchCursor(
+            @JsonProperty( NUM_HITS ) long numHits,
+            @JsonProperty( POSITIONS ) Map<UUID, Object[]> positions ) {
+        this.numHits = numHits;
+        this.positions = positions;
+    }
+
+    @JsonProperty( NUM_HITS )
+    public long getNumHits() {
+        return numHits;
+    }
+
+    /**
+     * @return The sort values of the last hit returned for each entity set that has more hits, in request order.
+     */
+    @JsonProperty( POSITIONS )
+    public Map<UUID, Object[]> getPositions() {
+        return positions;
+    }
+
+    public String encode() {
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString( mapper.writeValueAsBytes( this ) );
+        } catch ( IOException e ) {
+            throw new IllegalStateException( "Unable to encode search cursor.", e );
+        }
+    }
+
+    public static SearchCursor decode( String token ) {
+        try {
+            SearchCursor cursor = mapper.readValue( Base64.getUrlDecoder().decode( token ), SearchCursor.class );
+            return new SearchCursor( cursor.numHits, new LinkedHashMap<>( cursor.positions ) );
+        } catch ( IOException | IllegalArgumentException | NullPointerException e ) {
+            throw new IllegalArgumentException( "Invalid search cursor: " + token, e );
+        }
+    }
+}
@@ -30,10 +30,18 @@ import com.openlattice.auditing.AuditingManager;
 import com.openlattice.authorization.*;
 import com.openlattice.authorization.securable.SecurableObjectType;
 import com.openlattice.authorization.util.AuthorizationUtilsKt;
+import com.openlattice.controllers.exceptions.ForbiddenException;
+import com.openlattice.data.EntityDataKey;
 import com.openlattice.data.requests.NeighborEntityDetails;
 import com.openlattice.data.requests.NeighborEntityIds;
+import com.openlattice.datastore.search.AggregationRequest;
+import com.openlattice.datastore.search.AggregationResult;
+import com.openlattice.datastore.search.CursorDataSearchResult;
+import com.openlattice.datastore.search.CursorSearchRequest;
+import com.openlattice.datastore.services.DatastoreSearchService;
 import com.openlattice.datastore.services.EdmService;
 import com.openlattice.datastore.services.EntitySetManager;
+import com.openlattice.datastore.services.SearchResultCache;
 import com.openlattice.edm.EntitySet;
 import com.openlattice.graph.PagedNeighborRequest;
 import com.openlattice.organizations.HazelcastOrganizationService;
@@ -52,13 +60,18 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.inject.Inject;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.time.OffsetDateTime;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static com.openlattice.authorization.EdmAuthorizationHelper.READ_PERMISSION;
@@ -70,9 +83,31 @@ import static com.openlattice.authorization.EdmAuthorizationHelper.READ_PERMISSI
 @RequestMapping( SearchApi.CONTROLLER )
 public class SearchController implements SearchApi, AuthorizingComponent, AuditingComponent {
 
+    public static final String AGGREGATE        = "/aggregate";
+    public static final String AT_LEAST         = "atLeast";
+    public static final String COUNT            = "/count";
+    public static final String CURSOR           = "/cursor";
+    public static final String EXISTS           = "/exists";
+    public static final String EXPORT           = "/export";
+    public static final String HYDRATE          = "hydrate";
+    public static final String MAX_HITS         = "maxHits";
+    public static final String OBJECT_TYPE      = "objectType";
+    public static final String OBJECT_TYPE_PATH = "/{" + OBJECT_TYPE + "}";
+    public static final String PREFIX           = "prefix";
+    public static final String SUGGEST          = "/suggest";
+
+    private static final Set<SecurableObjectType> PER_OBJECT_AUTHORIZED_SUGGEST_TYPES = EnumSet.of(
+            SecurableObjectType.EntitySetCollection );
+
     @Inject
     private SearchService searchService;
 
+    @Inject
+    private DatastoreSearchService datastoreSearchService;
+
+    @Inject
+    private SearchResultCache searchResultCache;
+
     @Inject
     private EdmService edm;
 
@@ -167,7 +202,12 @@ public class SearchController implements SearchApi, AuthorizingComponent, Auditi
             final var authorizedPropertyTypesByEntitySet = authorizationsHelper.getAuthorizedPropertiesOnEntitySets(
                     authorizedEntitySetIds, READ_PERMISSION, currentPrincipals );
 
-            results = searchService.executeSearch( searchConstraints, authorizedPropertyTypesByEntitySet );
+            results = searchResultCache.get( searchConstraints,
+                    authorizedPropertyTypesByEntitySet,
+                    () -> datastoreSearchService.isHydratingFromSource()
+                            ? datastoreSearchService
+                            .executeSourceSearch( searchConstraints, authorizedPropertyTypesByEntitySet )
+                            : searchService.executeSearch( searchConstraints, authorizedPropertyTypesByEntitySet ) );
         }
 
         List<AuditableEvent> searchEvents = new ArrayList<>( entitySetIds.length );
@@ -189,6 +229,339 @@ public class SearchController implements SearchApi, AuthorizingComponent, Auditi
         return results;
     }
 
+    /**
+     * Counts the hits of a search. Cheaper than a search with no hits, since the hits are neither sorted nor loaded.
+     */
+    @RequestMapping(
+            path = { COUNT },
+            method = RequestMethod.PATCH,
+            consumes = { MediaType.APPLICATION_JSON_VALUE },
+            produces = { MediaType.APPLICATION_JSON_VALUE } )
+    @Timed
+    public long countEntitySetData( @RequestBody SearchConstraints searchConstraints ) {
+        return executeCount( searchConstraints, 0, "SearchController.countEntitySetData" );
+    }
+
+    /**
+     * Checks whether a search has at least the given number of hits, one by default. Counting stops as soon as the
+     * answer is known, which makes this the cheapest way to ask whether anything matches.
+     */
+    @RequestMapping(
+            path = { EXISTS },
+            method = RequestMethod.PATCH,
+            consumes = { MediaType.APPLICATION_JSON_VALUE },
+            produces = { MediaType.APPLICATION_JSON_VALUE } )
+    @Timed
+    public boolean entitySetDataExists(
+            @RequestBody SearchConstraints searchConstraints,
+            @RequestParam( value = AT_LEAST, required = false, defaultValue = "1" ) int atLeast ) {
+        checkArgument( atLeast > 0, "The number of hits to check for must be positive." );
+        return executeCount( searchConstraints, atLeast, "SearchController.entitySetDataExists" ) >= atLeast;
+    }
+
+    private long executeCount( SearchConstraints searchConstraints, int atLeast, String caller ) {
+        validateSearch( searchConstraints );
+
+        final UUID[] entitySetIds = searchConstraints.getEntitySetIds();
+
+        Set<Principal> currentPrincipals = Principals.getCurrentPrincipals();
+
+        // check read on entity sets
+        final var authorizedEntitySetIds = entitySetManager
+                .filterToAuthorizedNormalEntitySets( Set.of( entitySetIds ), READ_PERMISSION, currentPrincipals );
+
+        long count = 0;
+
+        // if user has read access on all normal entity sets
+        if ( authorizedEntitySetIds.size() == entitySetIds.length ) {
+            final var authorizedPropertyTypesByEntitySet = authorizationsHelper.getAuthorizedPropertiesOnEntitySets(
+                    authorizedEntitySetIds, READ_PERMISSION, currentPrincipals );
+
+            count = datastoreSearchService.executeCount( searchConstraints,
+                    authorizedPropertyTypesByEntitySet,
+                    atLeast );
+        }
+
+        List<AuditableEvent> searchEvents = new ArrayList<>( entitySetIds.length );
+        for ( UUID entitySetId : entitySetIds ) {
+            searchEvents.add( new AuditableEvent(
+                    spm.getCurrentUserId(),
+                    new AclKey( entitySetId ),
+                    AuditEventType.SEARCH_ENTITY_SET_DATA,
+                    "Entity set data counted through " + caller,
+                    Optional.empty(),
+                    ImmutableMap.of( "query", searchConstraints, "count", count ),
+                    OffsetDateTime.now(),
+                    Optional.empty()
+            ) );
+        }
+
+        recordEvents( searchEvents );
+
+        return count;
+    }
+
+    /**
+     * Pages through the hits of a search with a cursor instead of a start offset. Every page costs the same no matter
+     * how deep it is, so this is the way to walk all hits of a large search.
+     */
+    @RequestMapping(
+            path = { CURSOR },
+            method = RequestMethod.PATCH,
+            produces = { MediaType.APPLICATION_JSON_VALUE } )
+    @Timed
+    public CursorDataSearchResult searchEntitySetDataWithCursor( @RequestBody CursorSearchRequest request ) {
+        final SearchConstraints searchConstraints = checkNotNull( request.getConstraints(),
+                "Search constraints are required." );
+        validateSearch( searchConstraints );
+
+        final UUID[] entitySetIds = searchConstraints.getEntitySetIds();
+
+        Set<Principal> currentPrincipals = Principals.getCurrentPrincipals();
+
+        // check read on entity sets
+        final var authorizedEntitySetIds = entitySetManager
+                .filterToAuthorizedNormalEntitySets( Set.of( entitySetIds ), READ_PERMISSION, currentPrincipals );
+
+        CursorDataSearchResult results = new CursorDataSearchResult( 0, Lists.newArrayList(), Optional.empty() );
+
+        // if user has read access on all normal entity sets
+        if ( authorizedEntitySetIds.size() == entitySetIds.length ) {
+            final var authorizedPropertyTypesByEntitySet = authorizationsHelper.getAuthorizedPropertiesOnEntitySets(
+                    authorizedEntitySetIds, READ_PERMISSION, currentPrincipals );
+
+            results = datastoreSearchService.executeCursorSearch( searchConstraints,
+                    authorizedPropertyTypesByEntitySet,
+                    request.getCursor() );
+        }
+
+        final Set<UUID> entityKeyIds = results.getHits().stream()
+                .map( SearchController::getEntityKeyId )
+                .collect( Collectors.toSet() );
+
+        List<AuditableEvent> searchEvents = new ArrayList<>( entitySetIds.length );
+        for ( UUID entitySetId : entitySetIds ) {
+            searchEvents.add( new AuditableEvent(
+                    spm.getCurrentUserId(),
+                    new AclKey( entitySetId ),
+                    AuditEventType.SEARCH_ENTITY_SET_DATA,
+                    "Entity set data searched through SearchController.searchEntitySetDataWithCursor",
+                    Optional.of( entityKeyIds ),
+                    ImmutableMap.of( "query", searchConstraints ),
+                    OffsetDateTime.now(),
+                    Optional.empty()
+            ) );
+        }
+
+        recordEvents( searchEvents );
+
+        return results;
+    }
+
+    /**
+     * Streams every hit of a search instead of a page of them. The response is a JSON array of entity data keys, or of
+     * entities when hydrating, written as the hits are scrolled so that exports of any size run in bounded memory.
+     */
+    @RequestMapping(
+            path = { EXPORT },
+            method = RequestMethod.PATCH,
+            produces = { MediaType.APPLICATION_JSON_VALUE } )
+    @Timed
+    public void exportEntitySetData(
+            @RequestBody SearchConstraints searchConstraints,
+            @RequestParam( value = HYDRATE, required = false, defaultValue = "false" ) boolean hydrate,
+            HttpServletResponse response ) throws IOException {
+        validateSearch( searchConstraints );
+
+        final UUID[] entitySetIds = searchConstraints.getEntitySetIds();
+
+        Set<Principal> currentPrincipals = Principals.getCurrentPrincipals();
+
+        final var authorizedEntitySetIds = entitySetManager
+                .filterToAuthorizedNormalEntitySets( Set.of( entitySetIds ), READ_PERMISSION, currentPrincipals );
+
+        if ( authorizedEntitySetIds.size() != entitySetIds.length ) {
+            throw new ForbiddenException( "Insufficient permissions to read the entity sets " + Set.of( entitySetIds )
+                    + " or they don't exist." );
+        }
+
+        final var authorizedPropertyTypesByEntitySet = authorizationsHelper.getAuthorizedPropertiesOnEntitySets(
+                authorizedEntitySetIds, READ_PERMISSION, currentPrincipals );
+
+        // Batches are audited from the scroll threads, which don't carry the security context of the request.
+        final UUID userId = spm.getCurrentUserId();
+        final var exported = new AtomicLong();
+        var completed = false;
+
+        response.setContentType( MediaType.APPLICATION_JSON_VALUE );
+        try {
+            datastoreSearchService.exportSearch( searchConstraints,
+                    authorizedPropertyTypesByEntitySet,
+                    hydrate,
+                    entityDataKeys -> {
+                        exported.addAndGet( entityDataKeys.size() );
+                        recordEvents( getExportEvents( userId, searchConstraints, entityDataKeys ) );
+                    },
+                    response.getOutputStream() );
+            completed = true;
+        } finally {
+            List<AuditableEvent> searchEvents = new ArrayList<>( entitySetIds.length );
+            for ( UUID entitySetId : entitySetIds ) {
+                searchEvents.add( new AuditableEvent(
+                        userId,
+                        new AclKey( entitySetId ),
+                        AuditEventType.SEARCH_ENTITY_SET_DATA,
+                        "Entity set data export finished through SearchController.exportEntitySetData",
+                        Optional.empty(),
+                        ImmutableMap.of( "query",
+                                searchConstraints,
+                                "exported",
+                                exported.get(),
+                                "completed",
+                                completed ),
+                        OffsetDateTime.now(),
+                        Optional.empty()
+                ) );
+            }
+
+            recordEvents( searchEvents );
+        }
+    }
+
+    /**
+     * @return One audit event per entity set of the batch, holding the entity key ids about to leave the system.
+     */
+    private static List<AuditableEvent> getExportEvents(
+            UUID userId,
+            SearchConstraints searchConstraints,
+            List<EntityDataKey> entityDataKeys ) {
+        return entityDataKeys.stream()
+                .collect( Collectors.groupingBy( EntityDataKey::getEntitySetId,
+                        Collectors.mapping( EntityDataKey::getEntityKeyId, Collectors.toSet() ) ) )
+                .entrySet().stream()
+                .map( entry -> new AuditableEvent(
+                        userId,
+                        new AclKey( entry.getKey() ),
+                        AuditEventType.SEARCH_ENTITY_SET_DATA,
+                        "Entity set data exported through SearchController.exportEntitySetData",
+                        Optional.of( entry.getValue() ),
+                        ImmutableMap.of( "query", searchConstraints ),
+                        OffsetDateTime.now(),
+                        Optional.empty() ) )
+                .collect( Collectors.toList() );
+    }
+
+    /**
+     * Runs terms, histogram, date histogram, stats and geohash grid aggregations over the entities matching a search,
+     * so that values can be counted without loading the entities. Only property types the caller may read in every
+     * searched entity set can be aggregated on.
+     */
+    @RequestMapping(
+            path = { AGGREGATE },
+            method = RequestMethod.PATCH,
+            consumes = { MediaType.APPLICATION_JSON_VALUE },
+            produces = { MediaType.APPLICATION_JSON_VALUE } )
+    @Timed
+    public AggregationResult aggregateEntitySetData( @RequestBody AggregationRequest request ) {
+        final SearchConstraints searchConstraints = checkNotNull( request.getConstraints(),
+                "Search constraints are required." );
+        validateSearch( searchConstraints );
+
+        final UUID[] entitySetIds = searchConstraints.getEntitySetIds();
+
+        Set<Principal> currentPrincipals = Principals.getCurrentPrincipals();
+
+        final var authorizedEntitySetIds = entitySetManager
+                .filterToAuthorizedNormalEntitySets( Set.of( entitySetIds ), READ_PERMISSION, currentPrincipals );
+
+        if ( authorizedEntitySetIds.size() != entitySetIds.length ) {
+            throw new ForbiddenException( "Insufficient permissions to read the entity sets " + Set.of( entitySetIds )
+                    + " or they don't exist." );
+        }
+
+        final var authorizedPropertyTypesByEntitySet = authorizationsHelper.getAuthorizedPropertiesOnEntitySets(
+                authorizedEntitySetIds, READ_PERMISSION, currentPrincipals );
+
+        request.getAggregations().values().forEach( aggregation -> {
+            if ( !authorizedPropertyTypesByEntitySet.values().stream()
+                    .allMatch( propertyTypes -> propertyTypes.containsKey( aggregation.getPropertyTypeId() ) ) ) {
+                throw new ForbiddenException( "Insufficient permissions to read property type "
+                        + aggregation.getPropertyTypeId() + " in the entity sets " + Set.of( entitySetIds ) + "." );
+            }
+        } );
+
+        final var result = datastoreSearchService.executeAggregation( request, authorizedPropertyTypesByEntitySet );
+
+        List<AuditableEvent> searchEvents = new ArrayList<>( entitySetIds.length );
+        for ( UUID entitySetId : entitySetIds ) {
+            searchEvents.add( new AuditableEvent(
+                    spm.getCurrentUserId(),
+                    new AclKey( entitySetId ),
+                    AuditEventType.SEARCH_ENTITY_SET_DATA,
+                    "Entity set data aggregated through SearchController.aggregateEntitySetData",
+                    Optional.empty(),
+                    ImmutableMap.of( "query", searchConstraints, "aggregations", request.getAggregations() ),
+                    OffsetDateTime.now(),
+                    Optional.empty()
+            ) );
+        }
+
+        recordEvents( searchEvents );
+
+        return result;
+    }
+
+    /**
+     * Suggests readable entity sets whose name or title starts like the words typed so far. Cheap enough to be called
+     * on every keystroke of a search box.
+     */
+    @RequestMapping(
+            path = { SUGGEST + ENTITY_SETS },
+            method = RequestMethod.GET,
+            produces = { MediaType.APPLICATION_JSON_VALUE } )
+    @Timed
+    public SearchResult suggestEntitySets(
+            @RequestParam( value = PREFIX ) String prefix,
+            @RequestParam( value = MAX_HITS, required = false, defaultValue = "10" ) int maxHits ) {
+        final Set<AclKey> authorizedAclKeys = authorizations.getAuthorizedObjectsOfType(
+                Principals.getCurrentPrincipals(),
+                SecurableObjectType.EntitySet,
+                READ_PERMISSION
+        ).collect( Collectors.toSet() );
+
+        return datastoreSearchService.suggestEntitySets( prefix,
+                authorizedAclKeys,
+                Math.min( maxHits, SearchApi.MAX_SEARCH_RESULTS ) );
+    }
+
+    /**
+     * Suggests entity types, association types, property types, apps or collections whose title starts like the words
+     * typed so far. Entity set collections are readable per object, so only those the caller may read are suggested;
+     * the other types are part of the data model every caller can list.
+     */
+    @RequestMapping(
+            path = { SUGGEST + OBJECT_TYPE_PATH },
+            method = RequestMethod.GET,
+            produces = { MediaType.APPLICATION_JSON_VALUE } )
+    @Timed
+    public SearchResult suggestSecurableObjects(
+            @PathVariable( OBJECT_TYPE ) SecurableObjectType objectType,
+            @RequestParam( value = PREFIX ) String prefix,
+            @RequestParam( value = MAX_HITS, required = false, defaultValue = "10" ) int maxHits ) {
+        final Optional<Set<AclKey>> authorizedAclKeys = PER_OBJECT_AUTHORIZED_SUGGEST_TYPES.contains( objectType )
+                ? Optional.of( authorizations.getAuthorizedObjectsOfType(
+                        Principals.getCurrentPrincipals(),
+                        objectType,
+                        READ_PERMISSION
+                ).collect( Collectors.toSet() ) )
+                : Optional.empty();
+
+        return datastoreSearchService.suggestSecurableObjects( objectType,
+                prefix,
+                authorizedAclKeys,
+                Math.min( maxHits, SearchApi.MAX_SEARCH_RESULTS ) );
+    }
+
     @Override
     public AuthorizationManager getAuthorizationManager() {
         return authorizations;
@@ -683,7 +1056,8 @@ public class SearchController implements SearchApi, AuthorizingComponent, Auditi
     @Timed
     public Void triggerAllEntitySetDataIndex() {
         ensureAdminAccess();
-        searchService.triggerAllEntitySetDataIndex();
+        // Runs as a resumable job, whose progress is available through the admin jobs endpoints.
+        datastoreSearchService.triggerAllEntitySetDataIndex();
         return null;
     }
 
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.services;
+
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caps chunks by a number of documents that follows how fast the cluster processes them, and by a fixed estimated
+ * payload size.
+ * <p>
+ * The cap starts at a quarter of the maximum. It grows by a quarter after every chunk that finishes within the target
+ * latency. It shrinks by a quarter after every chunk that takes more than twice as long. It is halved whenever the
+ * cluster rejects a chunk. It always stays between a small floor and the maximum.
+ */
+final class AdaptiveBulkChunkSizer implements BulkChunkSizer {
+    private static final Logger logger = LoggerFactory.getLogger( AdaptiveBulkChunkSizer.class );
+
+    private static final int MIN_DOCUMENTS = 10;
+
+    private final int  maxDocuments;
+    private final long maxBytes;
+    private final long targetLatencyMillis;
+
+    private volatile int limit;
+
+    AdaptiveBulkChunkSizer( int maxDocuments, long maxBytes, long targetLatencyMillis ) {
+        this.maxDocuments = Math.max( MIN_DOCUMENTS, maxDocuments );
+        this.maxBytes = maxBytes;
+        this.targetLatencyMillis = targetLatencyMillis;
+        this.limit = Math.max( MIN_DOCUMENTS, this.maxDocuments / 4 );
+    }
+
+    @Override
+    public boolean isFull( BulkRequest chunk ) {
+        return chunk.numberOfActions() >= limit || chunk.estimatedSizeInBytes() >= maxBytes;
+    }
+
+    @Override
+    public void recordSuccess( int documents, long tookMillis ) {
+        // Chunks cut short by the payload size or the end of a write say little about the document cap.
+        if ( documents < limit && tookMillis <= targetLatencyMillis ) {
+            return;
+        }
+        adjust( tookMillis, false );
+    }
+
+    @Override
+    public void recordRejection() {
+        adjust( 0, true );
+    }
+
+    private synchronized void adjust( long tookMillis, boolean rejected ) {
+        final var previous = limit;
+        if ( rejected ) {
+            limit = Math.max( MIN_DOCUMENTS, previous / 2 );
+        } else if ( tookMillis <= targetLatencyMillis ) {
+            limit = Math.min( maxDocuments, previous + Math.max( 1, previous / 4 ) );
+        } else if ( tookMillis > 2 * targetLatencyMillis ) {
+            limit = Math.max( MIN_DOCUMENTS, previous - previous / 4 );
+        }
+
+        if ( limit != previous ) {
+            logger.debug( "Adjusted bulk chunk size from {} to {} documents (took {} ms, rejected: {}).",
+                    previous,
+                    limit,
+                    tookMillis,
+                    rejected );
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.services;
+
+import com.openlattice.edm.type.PropertyType;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float4Vector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.SmallIntVector;
+import org.apache.arrow.vector.TimeMicroVector;
+import org.apache.arrow.vector.TimeStampMicroTZVector;
+import org.apache.arrow.vector.TinyIntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes entity set data as an Apache Arrow IPC stream.
+ * <p>
+ * Every property type becomes a nullable list column, since every property may hold several values, whose element
+ * type follows the datatype of the property type. Types without a native Arrow counterpart, such as ids, geography
+ * points and durations, are written as UTF-8 strings. Rows are written in record batches of a fixed number of rows, so
+ * only one batch is held in memory at a time.
+ */
+final class ArrowEntitySetDataWriter {
+    private static final String ITEM     = "item";
+    private static final String TIMEZONE = "UTC";
+
+    private final BufferAllocator allocator;
+    private final int             batchSize;
+
+    ArrowEntitySetDataWriter( BufferAllocator allocator, int batchSize ) {
+        this.allocator = allocator;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param propertyTypes The property types of the columns, in column order.
+     * @return The number of rows written.
+     */
+    long write(
+            List<PropertyType> propertyTypes,
+            Iterator<Map<FullQualifiedName, Set<Object>>> entities,
+            OutputStream out ) throws IOException {
+        final List<Field> fields = new ArrayList<>( propertyTypes.size() );
+        final List<ValueWriter> valueWriters = new ArrayList<>( propertyTypes.size() );
+        for ( PropertyType propertyType : propertyTypes ) {
+            fields.add( getField( propertyType ) );
+            valueWriters.add( getValueWriter( propertyType ) );
+        }
+
+        long written = 0;
+        try ( BufferAllocator requestAllocator = allocator.newChildAllocator( "entity-set-data", 0, Long.MAX_VALUE );
+                VectorSchemaRoot root = VectorSchemaRoot.create( new Schema( fields ), requestAllocator );
+                ArrowStreamWriter writer = new ArrowStreamWriter( root, null, Channels.newChannel( out ) ) ) {
+            writer.start();
+            while ( entities.hasNext() ) {
+                root.allocateNew();
+                int rows = 0;
+                while ( rows < batchSize && entities.hasNext() ) {
+                    writeRow( root, propertyTypes, valueWriters, rows++, entities.next() );
+                }
+                root.setRowCount( rows );
+                writer.writeBatch();
+                written += rows;
+            }
+            writer.end();
+        }
+        return written;
+    }
+
+    private static void writeRow(
+            VectorSchemaRoot root,
+            List<PropertyType> propertyTypes,
+            List<ValueWriter> valueWriters,
+            int row,
+            Map<FullQualifiedName, Set<Object>> entity ) {
+        for ( int i = 0; i < propertyTypes.size(); ++i ) {
+            final var values = entity.get( propertyTypes.get( i ).getType() );
+            if ( values == null ) {
+                continue;
+            }
+
+            final var column = (ListVector) root.getVector( i );
+            final var data = column.getDataVector();
+            final var writer = valueWriters.get( i );
+            int index = column.startNewValue( row );
+            for ( Object value : values ) {
+                writer.write( data, index++, value );
+            }
+            column.endValue( row, values.size() );
+        }
+    }
+
+    private static Field getField( PropertyType propertyType ) {
+        final var item = new Field( ITEM, FieldType.nullable( getArrowType( propertyType ) ), null );
+        return new Field( propertyType.getType().getFullQualifiedNameAsString(),
+                FieldType.nullable( new ArrowType.List() ),
+                List.of( item ) );
+    }
+
+    private static ArrowType getArrowType( PropertyType propertyType ) {
+        switch ( propertyType.getDatatype() ) {
+            case Boolean:
+                return new ArrowType.Bool();
+            case SByte:
+                return new ArrowType.Int( 8, true );
+            case Byte:
+            case Int16:
+                return new ArrowType.Int( 16, true );
+            case Int32:
+                return new ArrowType.Int( 32, true );
+            case Int64:
+                return new ArrowType.Int( 64, true );
+            case Single:
+                return new ArrowType.FloatingPoint( FloatingPointPrecision.SINGLE );
+            case Decimal:
+            case Double:
+                return new ArrowType.FloatingPoint( FloatingPointPrecision.DOUBLE );
+            case Date:
+                return new ArrowType.Date( DateUnit.DAY );
+            case DateTimeOffset:
+                return new ArrowType.Timestamp( TimeUnit.MICROSECOND, TIMEZONE );
+            case TimeOfDay:
+                return new ArrowType.Time( TimeUnit.MICROSECOND, 64 );
+            default:
+                return new ArrowType.Utf8();
+        }
+    }
+
+    private static ValueWriter getValueWriter( PropertyType propertyType ) {
+        switch ( propertyType.getDatatype() ) {
+            case Boolean:
+                return ( data, index, value ) -> ( (BitVector) data )
+                        .setSafe( index, Boolean.parseBoolean( value.toString() ) ? 1 : 0 );
+            case SByte:
+                return ( data, index, value ) -> ( (TinyIntVector) data )
+                        .setSafe( index, (byte) toLong( value ) );
+            case Byte:
+            case Int16:
+                return ( data, index, value ) -> ( (SmallIntVector) data )
+                        .setSafe( index, (short) toLong( value ) );
+            case Int32:
+                return ( data, index, value ) -> ( (IntVector) data ).setSafe( index, (int) toLong( value ) );
+            case Int64:
+                return ( data, index, value ) -> ( (BigIntVector) data ).setSafe( index, toLong( value ) );
+            case Single:
+                return ( data, index, value ) -> ( (Float4Vector) data ).setSafe( index, (float) toDouble( value ) );
+            case Decimal:
+            case Double:
+                return ( data, index, value ) -> ( (Float8Vector) data ).setSafe( index, toDouble( value ) );
+            case Date:
+                return ( data, index, value ) -> ( (DateDayVector) data )
+                        .setSafe( index, (int) toLocalDate( value ).toEpochDay() );
+            case DateTimeOffset:
+                return ( data, index, value ) -> ( (TimeStampMicroTZVector) data )
+                        .setSafe( index, toEpochMicros( value ) );
+            case TimeOfDay:
+                return ( data, index, value ) -> ( (TimeMicroVector) data )
+                        .setSafe( index, toLocalTime( value ).toNanoOfDay() / 1_000 );
+            default:
+                return ( data, index, value ) -> ( (VarCharVector) data )
+                        .setSafe( index, value.toString().getBytes( StandardCharsets.UTF_8 ) );
+        }
+    }
+
+    private static long toLong( Object value ) {
+        return value instanceof Number ? ( (Number) value ).longValue() : Long.parseLong( value.toString() );
+    }
+
+    private static double toDouble( Object value ) {
+        return value instanceof Number ? ( (Number) value ).doubleValue() : Double.parseDouble( value.toString() );
+    }
+
+    private static LocalDate toLocalDate( Object value ) {
+        return value instanceof LocalDate ? (LocalDate) value : LocalDate.parse( value.toString() );
+    }
+
+    private static LocalTime toLocalTime( Object value ) {
+        return value instanceof LocalTime ? (LocalTime) value : LocalTime.parse( value.toString() );
+    }
+
+    private static long toEpochMicros( Object value ) {
+        final var dateTime = value instanceof OffsetDateTime
+                ? (OffsetDateTime) value
+                : OffsetDateTime.parse( value.toString() );
+        return ChronoUnit.MICROS.between( Instant.EPOCH, dateTime.toInstant() );
+    }
+
+    @FunctionalInterface
+    private interface ValueWriter {
+        void write( FieldVector data, int index, Object value );
+    }
+}
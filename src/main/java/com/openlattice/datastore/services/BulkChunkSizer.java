@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.services;
+
+import org.elasticsearch.action.bulk.BulkRequest;
+
+/**
+ * Decides when a chunk of the {@link BulkIndexer} is big enough to be sent. Implementations are picked by the bulk
+ * sizing of the search tuning configuration and must be thread safe, since chunks of concurrent writes share them.
+ */
+interface BulkChunkSizer {
+    /**
+     * @return Whether the chunk should be sent before any more requests are added to it.
+     */
+    boolean isFull( BulkRequest chunk );
+
+    /**
+     * Feeds back how long elasticsearch took to process a chunk.
+     */
+    void recordSuccess( int documents, long tookMillis );
+
+    /**
+     * Feeds back that elasticsearch rejected a chunk or some of its items because it is saturated.
+     */
+    void recordRejection();
+}
@@ -0,0 +1,467 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.services;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.index.VersionType;
+import org.elasticsearch.rest.RestStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Splits bulk writes into chunks sized by a {@link BulkChunkSizer} and sends them asynchronously.
+ * <p>
+ * The number of bulk requests in flight is bounded across all callers sharing an instance. Once the bound is reached
+ * callers block until a chunk completes, so producers can never outrun the cluster. Requests are pulled lazily from
+ * the supplied iterator, so only the documents of chunks currently being built or in flight are held on the heap.
+ * <p>
+ * When a chunk comes back with failed items only those items are looked at. Items rejected because the cluster is
+ * saturated (429 / es_rejected_execution) are resent on their own after a jittered exponential backoff, while permanent
+ * failures such as mapping errors are recorded and dropped. A chunk keeps its in flight permit until all of its retries
+ * have settled, so retries never add load beyond the configured concurrency.
+ * <p>
+ * A {@link WriteMirror} can repeat the successful writes of a chunk elsewhere. Its writes are derived off the transport
+ * threads once the chunk has settled and are sent before the chunk gives up its permit. Writes with an external version
+ * that are rejected as conflicts have been overtaken by a newer document and don't count as failures.
+ */
+final class BulkIndexer {
+    private static final Logger logger = LoggerFactory.getLogger( BulkIndexer.class );
+
+    private static final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setDaemon( true ).setNameFormat( "bulk-retry-%d" ).build() );
+
+    private final Supplier<Client> clients;
+    private final BulkChunkSizer   sizer;
+    private final Semaphore        inFlight;
+    private final int              maxRetries;
+    private final long             initialDelayMillis;
+    private final long             maxDelayMillis;
+
+    BulkIndexer(
+            Supplier<Client> clients,
+            BulkChunkSizer sizer,
+            int maxConcurrentRequests,
+            int maxRetries,
+            long initialDelayMillis,
+            long maxDelayMillis ) {
+        this.clients = clients;
+        this.sizer = sizer;
+        this.inFlight = new Semaphore( maxConcurrentRequests, true );
+        this.maxRetries = maxRetries;
+        this.initialDelayMillis = initialDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    /**
+     * Sends all requests and blocks until every chunk, including its retries, has completed.
+     *
+     * @param description Human readable description of the write, used for logging.
+     * @param requests The write requests to send. They are consumed lazily.
+     * @return The aggregated outcome of all chunks.
+     */
+    BulkIndexResult execute( String description, Iterator<? extends DocWriteRequest<?>> requests ) {
+        return execute( description, requests, WriteMirror.NONE );
+    }
+
+    /**
+     * Sends all requests, repeats the successful ones as derived by the mirror and blocks until every chunk, including
+     * its retries and repeated writes, has completed.
+     *
+     * @param description Human readable description of the write, used for logging.
+     * @param requests The write requests to send. They are consumed lazily.
+     * @param mirror Derives the writes that repeat a successful write.
+     * @return The aggregated outcome of all chunks.
+     */
+    BulkIndexResult execute(
+            String description,
+            Iterator<? extends DocWriteRequest<?>> requests,
+            WriteMirror mirror ) {
+        final var result = new BulkIndexResult( description );
+        final List<CompletableFuture<Void>> chunks = new ArrayList<>();
+
+        BulkRequest chunk = new BulkRequest();
+        try {
+            while ( requests.hasNext() ) {
+                chunk.add( requests.next() );
+                if ( sizer.isFull( chunk ) ) {
+                    chunks.add( submit( chunk, result, mirror ) );
+                    chunk = new BulkRequest();
+                }
+            }
+
+            if ( chunk.numberOfActions() > 0 ) {
+                chunks.add( submit( chunk, result, mirror ) );
+            }
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            logger.error( "Interrupted while submitting bulk chunks for {}", description );
+            result.markIncomplete();
+        }
+
+        CompletableFuture.allOf( chunks.toArray( new CompletableFuture[ 0 ] ) ).join();
+
+        if ( !result.isSuccessful() ) {
+            logger.warn( "Bulk write for {} finished with {} failed documents out of {} in {} chunks ({} retried).",
+                    description,
+                    result.getFailedDocuments(),
+                    result.getDocuments(),
+                    result.getChunks(),
+                    result.getRetriedDocuments() );
+        }
+
+        return result;
+    }
+
+    private CompletableFuture<Void> submit(
+            BulkRequest chunk,
+            BulkIndexResult result,
+            WriteMirror mirror ) throws InterruptedException {
+        inFlight.acquire();
+
+        final var completion = new CompletableFuture<Void>();
+        completion.whenComplete( ( ignored, e ) -> inFlight.release() );
+
+        final var chunkNumber = result.startChunk( chunk.numberOfActions() );
+        if ( mirror == WriteMirror.NONE ) {
+            send( chunk, chunkNumber, 0, result, null, completion );
+        } else {
+            final var written = new ConcurrentLinkedQueue<Map.Entry<DocWriteRequest<?>, DocWriteResponse>>();
+            final var settled = new CompletableFuture<Void>();
+            settled.thenRunAsync( () -> sendMirrored( written, mirror, chunkNumber, result, completion ),
+                    retryScheduler );
+            send( chunk, chunkNumber, 0, result, written, settled );
+        }
+
+        return completion;
+    }
+
+    private void sendMirrored(
+            Collection<Map.Entry<DocWriteRequest<?>, DocWriteResponse>> written,
+            WriteMirror mirror,
+            int chunkNumber,
+            BulkIndexResult result,
+            CompletableFuture<Void> completion ) {
+        final var mirrored = new BulkRequest();
+        try {
+            written.forEach( write -> mirror.mirror( write.getKey(), write.getValue() ).forEach( mirrored::add ) );
+        } catch ( RuntimeException e ) {
+            result.recordFailure( chunkNumber, written.size(), e );
+            completion.complete( null );
+            return;
+        }
+
+        if ( mirrored.numberOfActions() == 0 ) {
+            completion.complete( null );
+        } else {
+            logger.debug( "Repeating {} writes of chunk {} of bulk write for {}.",
+                    mirrored.numberOfActions(),
+                    chunkNumber,
+                    result.description );
+            send( mirrored, chunkNumber, 0, result, null, completion );
+        }
+    }
+
+    /**
+     * @param written Collects the successful writes for a mirror, or null if they aren't repeated.
+     */
+    private void send(
+            BulkRequest request,
+            int chunkNumber,
+            int attempt,
+            BulkIndexResult result,
+            Collection<Map.Entry<DocWriteRequest<?>, DocWriteResponse>> written,
+            CompletableFuture<Void> completion ) {
+        try {
+            clients.get().bulk( request, new ActionListener<>() {
+                @Override
+                public void onResponse( BulkResponse response ) {
+                    sizer.recordSuccess( request.numberOfActions(), response.getTook().millis() );
+                    try {
+                        retryOrComplete( retryableItems( request, chunkNumber, response, result, written ),
+                                chunkNumber,
+                                attempt,
+                                result,
+                                written,
+                                completion );
+                    } catch ( RuntimeException e ) {
+                        result.recordFailure( chunkNumber, request.numberOfActions(), e );
+                        completion.complete( null );
+                    }
+                }
+
+                @Override
+                public void onFailure( Exception e ) {
+                    if ( isRetryable( e ) ) {
+                        sizer.recordRejection();
+                        logger.debug( "Chunk {} of bulk write for {} was rejected, backing off.",
+                                chunkNumber,
+                                result.description );
+                        retryOrComplete( request, chunkNumber, attempt, result, written, completion );
+                    } else {
+                        result.recordFailure( chunkNumber, request.numberOfActions(), e );
+                        completion.complete( null );
+                    }
+                }
+            } );
+        } catch ( RuntimeException e ) {
+            result.recordFailure( chunkNumber, request.numberOfActions(), e );
+            completion.complete( null );
+        }
+    }
+
+    /**
+     * Records the outcome of a response and collects the requests of items that are worth sending again.
+     */
+    private BulkRequest retryableItems(
+            BulkRequest request,
+            int chunkNumber,
+            BulkResponse response,
+            BulkIndexResult result,
+            Collection<Map.Entry<DocWriteRequest<?>, DocWriteResponse>> written ) {
+        if ( !response.hasFailures() ) {
+            result.recordSuccess( chunkNumber, response );
+            if ( written != null ) {
+                for ( BulkItemResponse item : response ) {
+                    written.add( Map.entry( request.requests().get( item.getItemId() ), item.getResponse() ) );
+                }
+            }
+            return null;
+        }
+
+        final var retries = new BulkRequest();
+        final var permanentFailures = new ArrayList<BulkItemResponse.Failure>();
+
+        for ( BulkItemResponse item : response ) {
+            final DocWriteRequest<?> itemRequest = request.requests().get( item.getItemId() );
+            if ( !item.isFailed() ) {
+                if ( written != null ) {
+                    written.add( Map.entry( itemRequest, item.getResponse() ) );
+                }
+            } else if ( isSuperseded( itemRequest, item.getFailure() ) ) {
+                logger.debug( "Skipped {} of {}/{}, a newer version is already there.",
+                        itemRequest.opType(),
+                        itemRequest.index(),
+                        itemRequest.id() );
+            } else if ( isRetryable( item.getFailure() ) ) {
+                retries.add( itemRequest );
+            } else {
+                permanentFailures.add( item.getFailure() );
+            }
+        }
+
+        if ( retries.numberOfActions() > 0 ) {
+            sizer.recordRejection();
+        }
+
+        if ( !permanentFailures.isEmpty() ) {
+            result.recordPermanentFailures( chunkNumber, response.getItems().length, permanentFailures );
+        }
+
+        return retries;
+    }
+
+    private void retryOrComplete(
+            BulkRequest retries,
+            int chunkNumber,
+            int attempt,
+            BulkIndexResult result,
+            Collection<Map.Entry<DocWriteRequest<?>, DocWriteResponse>> written,
+            CompletableFuture<Void> completion ) {
+        if ( retries == null || retries.numberOfActions() == 0 ) {
+            completion.complete( null );
+            return;
+        }
+
+        if ( attempt >= maxRetries ) {
+            result.recordExhausted( chunkNumber, retries.numberOfActions(), attempt );
+            completion.complete( null );
+            return;
+        }
+
+        final var delay = backoffMillis( attempt );
+        result.recordRetry( retries.numberOfActions() );
+        logger.info( "Retrying {} rejected documents of chunk {} of bulk write for {} in {} ms (attempt {} of {}).",
+                retries.numberOfActions(),
+                chunkNumber,
+                result.description,
+                delay,
+                attempt + 1,
+                maxRetries );
+
+        try {
+            retryScheduler.schedule( () -> send( retries, chunkNumber, attempt + 1, result, written, completion ),
+                    delay,
+                    TimeUnit.MILLISECONDS );
+        } catch ( RejectedExecutionException e ) {
+            result.recordFailure( chunkNumber, retries.numberOfActions(), e );
+            completion.complete( null );
+        }
+    }
+
+    /**
+     * Exponential backoff capped at the configured maximum, with equal jitter so that chunks rejected together do not
+     * come back together.
+     */
+    private long backoffMillis( int attempt ) {
+        final var ceiling = Math.min( maxDelayMillis, initialDelayMillis << Math.min( attempt, 30 ) );
+        final var half = Math.max( 1, ceiling / 2 );
+        return half + ThreadLocalRandom.current().nextLong( half + 1 );
+    }
+
+    private static boolean isSuperseded( DocWriteRequest<?> request, BulkItemResponse.Failure failure ) {
+        return failure.getStatus() == RestStatus.CONFLICT && request.versionType() != VersionType.INTERNAL;
+    }
+
+    private static boolean isRetryable( BulkItemResponse.Failure failure ) {
+        return failure.getStatus() == RestStatus.TOO_MANY_REQUESTS || isRetryable( failure.getCause() );
+    }
+
+    private static boolean isRetryable( Throwable e ) {
+        return e != null && ( ExceptionsHelper.unwrapCause( e ) instanceof EsRejectedExecutionException
+                || ExceptionsHelper.status( e ) == RestStatus.TOO_MANY_REQUESTS );
+    }
+
+    /**
+     * Outcome of a bulk write. Updated concurrently from transport threads as chunks complete.
+     */
+    static final class BulkIndexResult {
+        private final String        description;
+        private final AtomicInteger chunks           = new AtomicInteger();
+        private final AtomicInteger failedChunks     = new AtomicInteger();
+        private final AtomicLong    documents        = new AtomicLong();
+        private final AtomicLong    failedDocuments  = new AtomicLong();
+        private final AtomicLong    retriedDocuments = new AtomicLong();
+        private volatile boolean    complete         = true;
+
+        private BulkIndexResult( String description ) {
+            this.description = description;
+        }
+
+        private int startChunk( int numberOfDocuments ) {
+            documents.addAndGet( numberOfDocuments );
+            return chunks.incrementAndGet();
+        }
+
+        private void recordSuccess( int chunkNumber, BulkResponse response ) {
+            logger.debug( "Chunk {} of bulk write for {} indexed {} documents in {} ms.",
+                    chunkNumber,
+                    description,
+                    response.getItems().length,
+                    response.getTook().millis() );
+        }
+
+        private void recordPermanentFailures(
+                int chunkNumber,
+                int numberOfDocuments,
+                List<BulkItemResponse.Failure> failures ) {
+            failedDocuments.addAndGet( failures.size() );
+            failedChunks.incrementAndGet();
+            final var first = failures.get( 0 );
+            logger.warn( "Chunk {} of bulk write for {} had {} permanently failed documents out of {}. "
+                            + "First failure for id {} in index {}: {}",
+                    chunkNumber,
+                    description,
+                    failures.size(),
+                    numberOfDocuments,
+                    first.getId(),
+                    first.getIndex(),
+                    first.getMessage() );
+        }
+
+        private void recordRetry( int numberOfDocuments ) {
+            retriedDocuments.addAndGet( numberOfDocuments );
+        }
+
+        private void recordExhausted( int chunkNumber, int numberOfDocuments, int attempts ) {
+            failedDocuments.addAndGet( numberOfDocuments );
+            failedChunks.incrementAndGet();
+            logger.error( "Giving up on {} rejected documents of chunk {} of bulk write for {} after {} retries.",
+                    numberOfDocuments,
+                    chunkNumber,
+                    description,
+                    attempts );
+        }
+
+        private void recordFailure( int chunkNumber, int numberOfDocuments, Exception e ) {
+            failedDocuments.addAndGet( numberOfDocuments );
+            failedChunks.incrementAndGet();
+            logger.error( "Chunk {} of bulk write for {} with {} documents failed.",
+                    chunkNumber,
+                    description,
+                    numberOfDocuments,
+                    e );
+        }
+
+        private void markIncomplete() {
+            complete = false;
+        }
+
+        boolean isSuccessful() {
+            return complete && failedDocuments.get() == 0;
+        }
+
+        int getChunks() {
+            return chunks.get();
+        }
+
+        int getFailedChunks() {
+            return failedChunks.get();
+        }
+
+        long getDocuments() {
+            return documents.get();
+        }
+
+        long getFailedDocuments() {
+            return failedDocuments.get();
+        }
+
+        long getRetriedDocuments() {
+            return retriedDocuments.get();
+        }
+    }
+}
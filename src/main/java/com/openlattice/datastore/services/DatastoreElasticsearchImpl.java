@@ -5,11 +5,17 @@ import com.dataloom.streams.StreamUtil;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.eventbus.EventBus;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.hazelcast.core.HazelcastInstance;
 import com.openlattice.authorization.AclKey;
 import com.openlattice.authorization.securable.AbstractSecurableObject;
 import com.openlattice.authorization.securable.SecurableObjectType;
@@ -17,6 +23,15 @@ import com.openlattice.client.serialization.SerializationConstants;
 import com.openlattice.conductor.rpc.ConductorElasticsearchApi;
 import com.openlattice.conductor.rpc.SearchConfiguration;
 import com.openlattice.data.EntityDataKey;
+import com.openlattice.datastore.configuration.SearchTuningConfiguration;
+import com.openlattice.datastore.configuration.SearchTuningConfiguration.BulkSizing;
+import com.openlattice.datastore.configuration.SearchTuningConfiguration.DocumentFormat;
+import com.openlattice.datastore.search.AggregationResult;
+import com.openlattice.datastore.search.AggregationType;
+import com.openlattice.datastore.search.EntityDataAggregation;
+import com.openlattice.datastore.search.EntityDataHits;
+import com.openlattice.datastore.search.EntityDataKeyPage;
+import com.openlattice.datastore.search.SearchCursor;
 import com.openlattice.edm.EntitySet;
 import com.openlattice.edm.type.Analyzer;
 import com.openlattice.edm.type.AssociationType;
@@ -27,73 +42,127 @@ import com.openlattice.rhizome.hazelcast.DelegatedStringSet;
 import com.openlattice.rhizome.hazelcast.DelegatedUUIDSet;
 import com.openlattice.scrunchie.search.ElasticsearchTransportClientFactory;
 import com.openlattice.search.SortDefinition;
-import com.openlattice.search.requests.Constraint;
-import com.openlattice.search.requests.ConstraintGroup;
 import com.openlattice.search.requests.EntityDataKeySearchResult;
 import com.openlattice.search.requests.SearchConstraints;
-import com.openlattice.search.requests.SearchDetails;
 import com.openlattice.search.requests.SearchResult;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.lucene.search.join.ScoreMode;
 import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
-import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.admin.indices.alias.Alias;
+import org.elasticsearch.action.admin.indices.create.CreateIndexRequestBuilder;
 import org.elasticsearch.action.admin.indices.mapping.put.PutMappingRequest;
-import org.elasticsearch.action.bulk.BulkRequestBuilder;
-import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.search.MultiSearchRequest;
 import org.elasticsearch.action.search.MultiSearchResponse;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.client.Client;
-import org.elasticsearch.common.geo.GeoPoint;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.common.settings.Settings;
-import org.elasticsearch.common.unit.DistanceUnit;
 import org.elasticsearch.common.unit.Fuzziness;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.VersionType;
+import org.elasticsearch.index.mapper.IdFieldMapper;
 import org.elasticsearch.index.query.*;
-import org.elasticsearch.index.reindex.BulkByScrollResponse;
+import org.elasticsearch.index.reindex.AbstractBulkByScrollRequest;
 import org.elasticsearch.index.reindex.DeleteByQueryAction;
 import org.elasticsearch.index.reindex.DeleteByQueryRequestBuilder;
+import org.elasticsearch.index.reindex.ReindexAction;
+import org.elasticsearch.index.reindex.ReindexRequestBuilder;
+import org.elasticsearch.index.reindex.UpdateByQueryAction;
+import org.elasticsearch.index.reindex.UpdateByQueryRequestBuilder;
+import org.elasticsearch.script.Script;
 import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.aggregations.Aggregation;
+import org.elasticsearch.search.aggregations.AggregationBuilder;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.MultiBucketsAggregation;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramInterval;
+import org.elasticsearch.search.aggregations.bucket.nested.Nested;
+import org.elasticsearch.search.aggregations.bucket.nested.NestedAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.Stats;
+import org.elasticsearch.search.slice.SliceBuilder;
 import org.elasticsearch.search.sort.FieldSortBuilder;
 import org.elasticsearch.search.sort.GeoDistanceSortBuilder;
 import org.elasticsearch.search.sort.NestedSortBuilder;
 import org.elasticsearch.search.sort.ScoreSortBuilder;
 import org.elasticsearch.search.sort.SortBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
 import org.elasticsearch.search.sort.SortOrder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.scheduling.annotation.Scheduled;
 
+import javax.annotation.PreDestroy;
 import java.io.IOException;
-import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.openlattice.IdConstants.ENTITY_SET_ID_KEY_ID;
 import static com.openlattice.IdConstants.ID_ID;
 import static com.openlattice.IdConstants.LAST_WRITE_ID;
+import static com.openlattice.datastore.services.EntityDocumentFormatter.ENTITY_KEY_ID_FIELD;
 import static java.util.stream.Collectors.toSet;
 
 public class DatastoreElasticsearchImpl implements ConductorElasticsearchApi {
     // @formatter:off
-    private static final int MAX_CONCURRENT_SEARCHES = 3;
 
     private static final ObjectMapper mapper = ObjectMappers.newJsonMapper();
     private static final Logger       logger = LoggerFactory
             .getLogger( DatastoreElasticsearchImpl.class );
 
+    private static final String FIELDS                      = "fields";
+    private static final String IGNORE_ABOVE                = "ignore_above";
+    private static final String KEYWORD_SUBFIELD            = "keyword";
+    private static final String META                        = "_meta";
+    private static final int    KEYWORD_SUBFIELD_MAX_LENGTH = 256;
+
+    // index.max_result_window defaults to 10000, which bounds the hits a single lookup search can return.
+    private static final int MAX_ROUTING_LOOKUP_SIZE = 10_000;
+
+    private static final String   COPY_TO            = "copy_to";
+    private static final String   SEARCH_AS_YOU_TYPE = "search_as_you_type";
+    private static final String   SUGGEST            = "suggest";
+    private static final String[] SUGGEST_FIELDS     = new String[] {
+            SUGGEST,
+            SUGGEST + "._2gram",
+            SUGGEST + "._3gram"
+    };
+
     private static final String[] DEFAULT_INDICES = new String[] {
             ENTITY_SET_DATA_MODEL,
             ORGANIZATIONS,
@@ -129,26 +198,107 @@ public class DatastoreElasticsearchImpl implements ConductorElasticsearchApi {
         mapper.configure( SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false );
     }
 
-    private       Client                              client;
     private       ElasticsearchTransportClientFactory factory;
-    private       boolean                             connected = true;
     private       String                              server;
     private       String                              cluster;
     private       int                                 port;
     private       int                                 defaultNumReplicas;
     private       int                                 defaultNumShards;
+    private final BulkIndexer                         bulkIndexer;
+    private final EntityDocumentFormatter             documentFormatter;
+    private final ElasticsearchConnectionMonitor      connectionMonitor;
+    private final SearchConcurrencyLimiter            searchConcurrency;
+    private final ElasticsearchTaskTracker            taskTracker;
+    private final VersionedIndices                    versionedIndices;
+    private final SearchQueryTemplates                queryTemplates;
+    private final List<Consumer<UUID>>                writeListeners = new CopyOnWriteArrayList<>();
+    private final Cache<String, Boolean>              indicesWithEntityKeyIds = CacheBuilder.newBuilder()
+            .expireAfterWrite( 1, TimeUnit.MINUTES )
+            .build();
+    private final Set<String>                         mappedKeywordSubfields = ConcurrentHashMap.newKeySet();
+    private final ExecutorService                     indexMaintenanceExecutor;
+    private final ExecutorService                     scrollExecutor;
+    private final int                                 exportSlices;
+    private final int                                 exportBatchSize;
+    private final long                                exportScrollKeepAliveMillis;
+    private final boolean                             routeByEntitySet;
+    private final int                                 bulkMaxDocuments;
+    private volatile Client                           client;
     // @formatter:on
 
     public DatastoreElasticsearchImpl( SearchConfiguration config ) {
-        this( config, Optional.empty() );
+        this( config, SearchTuningConfiguration.defaults() );
+    }
+
+    public DatastoreElasticsearchImpl( SearchConfiguration config, SearchTuningConfiguration tuning ) {
+        this( config, tuning, Optional.empty() );
     }
 
     public DatastoreElasticsearchImpl(
             SearchConfiguration config,
             Optional<Client> someClient ) {
+        this( config, SearchTuningConfiguration.defaults(), someClient );
+    }
+
+    public DatastoreElasticsearchImpl(
+            SearchConfiguration config,
+            SearchTuningConfiguration tuning,
+            Optional<Client> someClient ) {
         init( config );
         client = someClient.orElseGet( factory::getClient );
+        connectionMonitor = new ElasticsearchConnectionMonitor( factory,
+                client,
+                reconnected -> client = reconnected,
+                tuning.getHealthCheckIntervalMillis(),
+                tuning.getReconnectInitialDelayMillis(),
+                tuning.getReconnectMaxDelayMillis(),
+                tuning.getReconnectCloseGraceMillis() );
+        documentFormatter = tuning.getDocumentFormat() == DocumentFormat.MAPPED
+                ? new MappedEntityDocumentFormatter( mapper )
+                : new EntityDocumentSerializer( mapper );
+        searchConcurrency = new SearchConcurrencyLimiter( tuning.getMaxConcurrentSearches(),
+                tuning.isAdaptiveConcurrentSearches(),
+                tuning.getSearchTargetLatencyMillis() );
+        exportSlices = tuning.getExportSlices();
+        exportBatchSize = tuning.getExportBatchSize();
+        exportScrollKeepAliveMillis = tuning.getExportScrollKeepAliveMillis();
+        routeByEntitySet = tuning.isRouteByEntitySet();
+        bulkMaxDocuments = tuning.getBulkMaxDocuments();
+        taskTracker = new ElasticsearchTaskTracker( tuning.getTaskRetentionMillis() );
+        versionedIndices = new VersionedIndices( () -> client );
+        queryTemplates = new SearchQueryTemplates( tuning.getQueryTemplateCacheSize() );
+        indexMaintenanceExecutor = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setDaemon( true ).setNameFormat( "index-maintenance-%d" ).build() );
+        scrollExecutor = Executors.newFixedThreadPool( exportSlices,
+                new ThreadFactoryBuilder().setDaemon( true ).setNameFormat( "search-export-%d" ).build() );
+        bulkIndexer = new BulkIndexer( () -> client,
+                newBulkChunkSizer( tuning ),
+                tuning.getBulkMaxConcurrentRequests(),
+                tuning.getBulkMaxRetries(),
+                tuning.getBulkRetryInitialDelayMillis(),
+                tuning.getBulkRetryMaxDelayMillis() );
         initializeIndices();
+        connectionMonitor.start();
+    }
+
+    /**
+     * Stops the background threads of the search service. Index maintenance already submitted may finish, while
+     * running exports are interrupted.
+     */
+    @PreDestroy
+    public void shutdown() {
+        connectionMonitor.stop();
+        indexMaintenanceExecutor.shutdown();
+        scrollExecutor.shutdownNow();
+    }
+
+    private static BulkChunkSizer newBulkChunkSizer( SearchTuningConfiguration tuning ) {
+        if ( tuning.getBulkSizing() == BulkSizing.ADAPTIVE ) {
+            return new AdaptiveBulkChunkSizer( tuning.getBulkMaxDocuments(),
+                    tuning.getBulkMaxBytes(),
+                    tuning.getBulkTargetLatencyMillis() );
+        }
+        return new FixedBulkChunkSizer( tuning.getBulkMaxDocuments(), tuning.getBulkMaxBytes() );
     }
 
     private void init( SearchConfiguration config ) {
@@ -169,20 +319,82 @@ public class DatastoreElasticsearchImpl implements ConductorElasticsearchApi {
     }
 
     private boolean createIndex( String indexName ) {
+        if ( !verifyElasticsearchConnection() ) { return false; }
+
+        if ( indexExists( indexName ) ) {
+            addMissingSuggestField( indexName );
+            return true;
+        }
+
+        try {
+            prepareIndex( indexName, VersionedIndices.newVersion( indexName ) )
+                    .addAlias( new Alias( indexName ) )
+                    .execute().actionGet();
+            return true;
+        } catch ( IOException e ) {
+            logger.error( "Unable to initialize index {}", indexName, e );
+            return false;
+        }
+    }
+
+    /**
+     * Prepares the creation of a physical index with the settings and mappings of the given alias.
+     */
+    private CreateIndexRequestBuilder prepareIndex( String indexName, String version ) throws IOException {
         switch ( indexName ) {
             case ENTITY_SET_DATA_MODEL:
-                return initializeEntitySetDataModelIndex();
+                return prepareEntitySetDataModelIndex( version );
             case ORGANIZATIONS:
-                return initializeOrganizationIndex();
+                return prepareOrganizationIndex( version );
             default: {
-                return initializeDefaultIndex( indexName, typeNamesByIndexName.get( indexName ) );
+                return prepareDefaultIndex( version, indexName );
             }
         }
     }
 
+    /**
+     * Brings an index created before suggestions were supported up to date. Its mapping only gains fields, which an
+     * existing index accepts, and its documents are indexed again in place in the background so that their titles are
+     * copied into the suggest field.
+     */
+    private void addMissingSuggestField( String indexName ) {
+        if ( ORGANIZATIONS.equals( indexName ) || hasFieldInEveryVersion( indexName, SUGGEST ) ) {
+            return;
+        }
+
+        final var mapping = ENTITY_SET_DATA_MODEL.equals( indexName )
+                ? Pair.of( ENTITY_SET_TYPE, getEntitySetDataModelMapping() )
+                : Pair.of( typeNamesByIndexName.get( indexName ), getDefaultMapping( indexName ) );
+        try {
+            client.admin().indices().preparePutMapping( indexName )
+                    .setType( mapping.getLeft() )
+                    .setSource( mapping.getRight() )
+                    .get();
+        } catch ( RuntimeException e ) {
+            logger.error( "Unable to add the suggest field to index {}, re-index it to enable suggestions.",
+                    indexName,
+                    e );
+            return;
+        }
+        updateInPlace( indexName, QueryBuilders.matchAllQuery(), "suggest field of " + indexName );
+    }
+
+    private boolean hasFieldInEveryVersion( String indexName, String field ) {
+        final var mappings = client.admin().indices().prepareGetFieldMappings( indexName )
+                .setFields( field )
+                .get()
+                .mappings();
+        return versionedIndices.getLiveIndices( indexName ).stream().allMatch( version -> mappings
+                .getOrDefault( version, Map.of() )
+                .values()
+                .stream()
+                .anyMatch( fields -> fields.containsKey( field ) ) );
+    }
+
     @Override
     public Set<UUID> getEntityTypesWithIndices() {
         return Stream.of( client.admin().indices().prepareGetIndex().setFeatures().get().getIndices() )
+                .map( VersionedIndices::getAlias )
                 .filter( s -> s.startsWith( DATA_INDEX_PREFIX ) )
                 .map( s -> UUID.fromString( s.substring( DATA_INDEX_PREFIX.length() ) ) )
                 .collect( toSet() );
@@ -223,13 +435,13 @@ public class DatastoreElasticsearchImpl implements ConductorElasticsearchApi {
         return client.admin().indices().prepareExists( indexName ).execute().actionGet().isExists();
     }
 
-    private boolean initializeEntitySetDataModelIndex() {
-        if ( !verifyElasticsearchConnection() ) { return false; }
-
-        if ( indexExists( ENTITY_SET_DATA_MODEL ) ) {
-            return true;
-        }
+    private CreateIndexRequestBuilder prepareEntitySetDataModelIndex( String version ) throws IOException {
+        return client.admin().indices().prepareCreate( version )
+                .setSettings( getMetaphoneSettings( defaultNumShards ) )
+                .addMapping( ENTITY_SET_TYPE, getEntitySetDataModelMapping() );
+    }
 
+    private Map<String, Object> getEntitySetDataModelMapping() {
         // entity_set type mapping
         ImmutableMap.Builder<String, Object> properties = ImmutableMap.builder();
         properties.put( PROPERTY_TYPES, ImmutableMap.of( TYPE, NESTED ) );
@@ -237,66 +449,61 @@ public class DatastoreElasticsearchImpl implements ConductorElasticsearchApi {
 
         Map<String, String> typeTextAnalyzerMetaphoneAnalyzer = ImmutableMap
                 .of( TYPE, TEXT, ANALYZER, METAPHONE_ANALYZER );
+        Map<String, String> suggestedTextAnalyzerMetaphoneAnalyzer = ImmutableMap
+                .of( TYPE, TEXT, ANALYZER, METAPHONE_ANALYZER, COPY_TO, SUGGEST );
 
-        properties.put( ENTITY_SET + "." + SerializationConstants.NAME_FIELD, typeTextAnalyzerMetaphoneAnalyzer );
-        properties.put( ENTITY_SET + "." + SerializationConstants.TITLE_FIELD, typeTextAnalyzerMetaphoneAnalyzer );
+        properties.put( ENTITY_SET + "." + SerializationConstants.NAME_FIELD, suggestedTextAnalyzerMetaphoneAnalyzer );
+        properties.put( ENTITY_SET + "." + SerializationConstants.TITLE_FIELD, suggestedTextAnalyzerMetaphoneAnalyzer );
         properties
                 .put( ENTITY_SET + "." + SerializationConstants.DESCRIPTION_FIELD, typeTextAnalyzerMetaphoneAnalyzer );
+        properties.put( SUGGEST, ImmutableMap.of( TYPE, SEARCH_AS_YOU_TYPE ) );
 
-        Map<String, Object> mapping = ImmutableMap
-                .of( ENTITY_SET_TYPE, ImmutableMap.of( MAPPING_PROPERTIES, properties.build() ) );
-
-        try {
-            client.admin().indices().prepareCreate( ENTITY_SET_DATA_MODEL )
-                    .setSettings( getMetaphoneSettings( defaultNumShards ) )
-                    .addMapping( ENTITY_SET_TYPE, mapping )
-                    .execute().actionGet();
-            return true;
-        } catch ( IOException e ) {
-            logger.error( "Unable to initialize entity set data model index", e );
-            return false;
-        }
+        return ImmutableMap.of( ENTITY_SET_TYPE, ImmutableMap.of( MAPPING_PROPERTIES, properties.build() ) );
     }
 
-    private boolean initializeOrganizationIndex() {
-        if ( !verifyElasticsearchConnection() ) { return false; }
-
-        if ( indexExists( ORGANIZATIONS ) ) {
-            return true;
-        }
-
+    private CreateIndexRequestBuilder prepareOrganizationIndex( String version ) {
         // entity_set type mapping
         Map<String, Object> properties = ImmutableMap.of( ORGANIZATION, ImmutableMap.of( TYPE, OBJECT ) );
         Map<String, Object> organizationData = ImmutableMap.of( MAPPING_PROPERTIES, properties );
 
-        client.admin().indices().prepareCreate( ORGANIZATIONS )
+        return client.admin().indices().prepareCreate( version )
                 .setSettings( Settings.builder()
                         .put( NUM_SHARDS, defaultNumShards )
                         .put( NUM_REPLICAS, defaultNumReplicas ) )
-                .addMapping( ORGANIZATION_TYPE, ImmutableMap.of( ORGANIZATION_TYPE, organizationData ) )
-                .execute().actionGet();
-        return true;
+                .addMapping( ORGANIZATION_TYPE, ImmutableMap.of( ORGANIZATION_TYPE, organizationData ) );
     }
 
-    private boolean initializeDefaultIndex( String indexName, String typeName ) {
-        if ( !verifyElasticsearchConnection() ) { return false; }
-
-        if ( indexExists( indexName ) ) {
-            return true;
-        }
-
-        Map<String, Object> mapping = ImmutableMap.of( typeName, ImmutableMap.of() );
-        client.admin().indices().prepareCreate( indexName )
+    /**
+     * Securable objects are mapped dynamically, except for their title which is also copied into a search as you type
+     * field for suggestions.
+     */
+    private CreateIndexRequestBuilder prepareDefaultIndex( String version, String indexName ) {
+        final String typeName = typeNamesByIndexName.get( indexName );
+        return client.admin().indices().prepareCreate( version )
                 .setSettings( Settings.builder()
                         .put( NUM_SHARDS, defaultNumShards )
                         .put( NUM_REPLICAS, defaultNumReplicas ) )
-                .addMapping( typeName, mapping )
-                .execute().actionGet();
-        return true;
+                .addMapping( typeName, getDefaultMapping( indexName ) );
     }
 
-    private Map<String, String> getFieldMapping( PropertyType propertyType ) {
-        Map<String, String> fieldMapping = Maps.newHashMap();
+    private Map<String, Object> getDefaultMapping( String indexName ) {
+        final String typeName = typeNamesByIndexName.get( indexName );
+        final String titleField = ASSOCIATION_TYPE_INDEX.equals( indexName )
+                ? SerializationConstants.ENTITY_TYPE + "." + SerializationConstants.TITLE_FIELD
+                : SerializationConstants.TITLE_FIELD;
+        Map<String, Object> properties = ImmutableMap.of(
+                titleField, ImmutableMap.of(
+                        TYPE, TEXT,
+                        FIELDS, ImmutableMap.of( KEYWORD_SUBFIELD, ImmutableMap.of(
+                                TYPE, KEYWORD,
+                                IGNORE_ABOVE, KEYWORD_SUBFIELD_MAX_LENGTH ) ),
+                        COPY_TO, SUGGEST ),
+                SUGGEST, ImmutableMap.of( TYPE, SEARCH_AS_YOU_TYPE ) );
+        return ImmutableMap.of( typeName, ImmutableMap.of( MAPPING_PROPERTIES, properties ) );
+    }
+
+    private Map<String, Object> getFieldMapping( PropertyType propertyType ) {
+        Map<String, Object> fieldMapping = Maps.newHashMap();
         switch ( propertyType.getDatatype() ) {
             case Boolean: {
                 fieldMapping.put( TYPE, BOOLEAN );
@@ -333,6 +540,10 @@ public class DatastoreElasticsearchImpl implements ConductorElasticsearchApi {
                         : STANDARD;
                 fieldMapping.put( TYPE, TEXT );
                 fieldMapping.put( ANALYZER, analyzer );
+                // analyzed text can't be aggregated on, so the raw value is kept in a keyword subfield for terms
+                fieldMapping.put( FIELDS, ImmutableMap.of( KEYWORD_SUBFIELD, ImmutableMap.of(
+                        TYPE, KEYWORD,
+                        IGNORE_ABOVE, KEYWORD_SUBFIELD_MAX_LENGTH ) ) );
                 break;
             }
             case Date:
@@ -375,18 +586,13 @@ public class DatastoreElasticsearchImpl implements ConductorElasticsearchApi {
         String indexName = getIndexName( entityTypeId );
         String typeName = getTypeName( entityTypeId );
 
-        boolean exists = client.admin().indices()
-                .prepareExists( indexName ).execute().actionGet().isExists();
-        if ( exists ) {
+        if ( indexExists( indexName ) ) {
             return true;
         }
 
-        final Map<String, Object> entityTypeMapping = prepareEntityTypeDataMappings( typeName, propertyTypes );
-
         try {
-            client.admin().indices().prepareCreate( indexName )
-                    .setSettings( getMetaphoneSettings( entityType.getShards() ) )
-                    .addMapping( typeName, entityTypeMapping )
+            prepareEntityTypeDataIndex( entityType, propertyTypes, VersionedIndices.newVersion( indexName ) )
+                    .addAlias( new Alias( indexName ) )
                     .execute().actionGet();
         } catch ( IOException e ) {
             logger.debug( "unable to create entity type data index for {}", entityTypeId );
@@ -394,22 +600,109 @@ public class DatastoreElasticsearchImpl implements ConductorElasticsearchApi {
         return true;
     }
 
-    private boolean addMappingToEntityTypeDataIndex(
+    /**
+     * Rebuilds the data index of an entity type with the current mappings, for changes that cannot be applied to the
+     * live index in place.
+     * <p>
+     * Documents are copied server side into a new version of the index while searches and writes keep using the
+     * current one, and the alias is switched over once the copy has finished. Writes made in the meantime are repeated
+     * on the new version, see {@link VersionedIndices}, so none of them is lost when the current version is dropped.
+     * The new version is routed by entity set if routing is currently configured, regardless of the current version.
+     *
+     * @return The id under which the progress of the rebuild can be looked up in the {@link ElasticsearchTaskTracker},
+     * or empty if the new index could not be created.
+     */
+    public Optional<UUID> reindexEntityTypeData( EntityType entityType, List<PropertyType> propertyTypes ) {
+        if ( !verifyElasticsearchConnection() ) { return Optional.empty(); }
+
+        final var indexName = getIndexName( entityType.getId() );
+        final var version = VersionedIndices.newVersion( indexName );
+        try {
+            prepareEntityTypeDataIndex( entityType, propertyTypes, version ).execute().actionGet();
+        } catch ( IOException e ) {
+            logger.error( "Unable to create new version of entity type data index {}", indexName, e );
+            return Optional.empty();
+        }
+        try {
+            versionedIndices.startRebuild( indexName, version );
+        } catch ( RuntimeException e ) {
+            logger.error( "Unable to start rebuild of {} into {}.", indexName, version, e );
+            versionedIndices.abandon( indexName, version );
+            return Optional.empty();
+        }
+
+        final var request = new ReindexRequestBuilder( client, ReindexAction.INSTANCE )
+                .source( indexName )
+                .abortOnVersionConflict( false );
+        request.destination( version ).setVersionType( VersionType.EXTERNAL );
+        // Documents written before entity key ids were indexed get them, so that cursor searches of the new version can
+        // break ties on them. The new version may be routed differently from the current one, see VersionedIndices.
+        final var entityKeyId = "ctx._source['" + ENTITY_KEY_ID_FIELD + "']";
+        final var routing = routeByEntitySet ? "ctx._source['" + ENTITY_SET_ID_FIELD + "']" : "null";
+        request.script( new Script( "if (" + entityKeyId + " == null) { " + entityKeyId + " = ctx._id } "
+                + "ctx._routing = " + routing ) );
+        request.request().setSlices( AbstractBulkByScrollRequest.AUTO_SLICES );
+
+        final var task = taskTracker.start( "re-index of " + indexName + " into " + version );
+        request.execute( ActionListener.wrap(
+                response -> indexMaintenanceExecutor.execute( () -> {
+                    if ( response.getBulkFailures().isEmpty() && response.getSearchFailures().isEmpty()
+                            && !response.isTimedOut() ) {
+                        try {
+                            versionedIndices.publish( indexName, version, defaultNumReplicas );
+                        } catch ( RuntimeException e ) {
+                            logger.error( "Unable to publish {} as {}.", version, indexName, e );
+                            versionedIndices.abandon( indexName, version );
+                            task.onFailure( e );
+                            return;
+                        }
+                    } else {
+                        versionedIndices.abandon( indexName, version );
+                    }
+                    task.onResponse( response );
+                } ),
+                e -> indexMaintenanceExecutor.execute( () -> {
+                    versionedIndices.abandon( indexName, version );
+                    task.onFailure( e );
+                } ) ) );
+        logger.info( "Started re-index of {} into {} as task {}.", indexName, version, task.getId() );
+
+        return Optional.of( task.getId() );
+    }
+
+    private CreateIndexRequestBuilder prepareEntityTypeDataIndex(
             EntityType entityType,
+            List<PropertyType> propertyTypes,
+            String version ) throws IOException {
+        final String typeName = getTypeName( entityType.getId() );
+        final Map<String, Object> entityTypeMapping = prepareEntityTypeDataMappings( typeName,
+                propertyTypes,
+                VersionedIndices.getRoutingMeta( routeByEntitySet ) );
+
+        return client.admin().indices().prepareCreate( version )
+                .setSettings( getMetaphoneSettings( entityType.getShards() ) )
+                .addMapping( typeName, entityTypeMapping );
+    }
+
+    private boolean addMappingToEntityTypeDataIndex(
+            UUID entityTypeId,
             List<PropertyType> propertyTypes ) {
 
-        String indexName = getIndexName( entityType.getId() );
-        String typeName = getTypeName( entityType.getId() );
+        String indexName = getIndexName( entityTypeId );
+        String typeName = getTypeName( entityTypeId );
 
         final Map<String, Object> entityTypeDataMapping = prepareEntityTypeDataMappings( typeName, propertyTypes );
 
-        PutMappingRequest request = new PutMappingRequest( indexName );
+        // Versions that are being rebuilt need the mapping too, since writes to the alias are repeated on them.
+        final var indices = new HashSet<>( versionedIndices.getPendingVersions( indexName ) );
+        indices.add( indexName );
+        PutMappingRequest request = new PutMappingRequest( indices.toArray( new String[ 0 ] ) );
         request.type( typeName );
         request.source( entityTypeDataMapping );
         try {
             client.admin().indices().putMapping( request ).actionGet();
         } catch ( IllegalStateException e ) {
-            logger.debug( "unable to add mapping to entity type data index for {}", entityType.getId() );
+            logger.debug( "unable to add mapping to entity type data index for {}", entityTypeId );
         }
         return true;
     }
@@ -417,6 +710,13 @@ public class DatastoreElasticsearchImpl implements ConductorElasticsearchApi {
     private Map<String, Object> prepareEntityTypeDataMappings(
             String typeName,
             List<PropertyType> propertyTypes ) {
+        return prepareEntityTypeDataMappings( typeName, propertyTypes, Map.of() );
+    }
+
+    private Map<String, Object> prepareEntityTypeDataMappings(
+            String typeName,
+            List<PropertyType> propertyTypes,
+            Map<String, Object> meta ) {
         Map<String, Object> keywordMapping = ImmutableMap.of( TYPE, KEYWORD );
         // securable_object_row type mapping
         ImmutableMap.Builder<String, Object> entityPropertiesMapping = ImmutableMap.builder();
@@ -436,11 +736,16 @@ public class DatastoreElasticsearchImpl implements ConductorElasticsearchApi {
 
         Map<String, Object> properties = ImmutableMap.of(
                 ENTITY, entityMapping,
-                ENTITY_SET_ID_FIELD, keywordMapping );
+                ENTITY_SET_ID_FIELD, keywordMapping,
+                ENTITY_KEY_ID_FIELD, keywordMapping );
 
-        Map<String, Object> entityTypeDataMapping = ImmutableMap.of(
-                typeName, ImmutableMap.of(
-                        MAPPING_PROPERTIES, properties ) );
+        ImmutableMap.Builder<String, Object> typeMapping = ImmutableMap.builder();
+        typeMapping.put( MAPPING_PROPERTIES, properties );
+        if ( !meta.isEmpty() ) {
+            typeMapping.put( META, meta );
+        }
+
+        Map<String, Object> entityTypeDataMapping = ImmutableMap.of( typeName, typeMapping.build() );
 
         return entityTypeDataMapping;
     }
@@ -457,9 +762,9 @@ public class DatastoreElasticsearchImpl implements ConductorElasticsearchApi {
 
         try {
             String s = ObjectMappers.getJsonMapper().writeValueAsString( entitySetDataModel );
-            client.prepareIndex( ENTITY_SET_DATA_MODEL, ENTITY_SET_TYPE, entitySet.getId().toString() )
+            write( client.prepareIndex( ENTITY_SET_DATA_MODEL, ENTITY_SET_TYPE, entitySet.getId().toString() )
                     .setSource( s, XContentType.JSON )
-                    .execute().actionGet();
+                    .request() );
 
             return true;
         } catch ( JsonProcessingException e ) {
@@ -478,24 +783,33 @@ public class DatastoreElasticsearchImpl implements ConductorElasticsearchApi {
     @Override
     public boolean addPropertyTypesToEntityType( EntityType entityType, List<PropertyType> newPropertyTypes ) {
         saveObjectToElasticsearch( ENTITY_TYPE_INDEX, ENTITY_TYPE, entityType, entityType.getId().toString() );
-        return addMappingToEntityTypeDataIndex( entityType, newPropertyTypes );
+        return addMappingToEntityTypeDataIndex( entityType.getId(), newPropertyTypes );
     }
 
     @Override
     public boolean deleteEntitySet( UUID entitySetId, UUID entityTypeId ) {
         if ( !verifyElasticsearchConnection() ) { return false; }
 
-        client.prepareDelete( ENTITY_SET_DATA_MODEL, ENTITY_SET_TYPE, entitySetId.toString() ).execute().actionGet();
-
-        BulkByScrollResponse response = new DeleteByQueryRequestBuilder( client, DeleteByQueryAction.INSTANCE )
-                .filter( QueryBuilders.termQuery( ENTITY_SET_ID_FIELD, entitySetId.toString() ) )
-                .source( getIndexName( entityTypeId ) )
-                .get();
+        write( client.prepareDelete( ENTITY_SET_DATA_MODEL, ENTITY_SET_TYPE, entitySetId.toString() ).request() );
+
+        final var indexName = getIndexName( entityTypeId );
+        final var query = QueryBuilders.termQuery( ENTITY_SET_ID_FIELD, entitySetId.toString() );
+        final long deleted;
+        if ( versionedIndices.getPendingVersions( indexName ).isEmpty() ) {
+            deleted = new DeleteByQueryRequestBuilder( client, DeleteByQueryAction.INSTANCE )
+                    .filter( query )
+                    .source( versionedIndices.getWriteIndex( indexName ) )
+                    .get()
+                    .getDeleted();
+        } else {
+            deleted = deleteMatchesById( indexName, getTypeName( entityTypeId ), query, entitySetId );
+        }
 
         logger.info( "Deleted {} documents from index {} for entity set {}",
-                response.getDeleted(),
+                deleted,
                 entityTypeId,
                 entitySetId );
+        onWrite( entityTypeId );
 
         return true;
     }
@@ -506,53 +820,6 @@ public class DatastoreElasticsearchImpl implements ConductorElasticsearchApi {
 
     /*** ENTITY DATA CREATE/DELETE ***/
 
-    /**
-     * @param entityValues Property values of a linked entity mapped by the normal entity set id, normal entity key id
-     *                     and property type ids respectively.
-     */
-    private byte[] formatLinkedEntity( Map<UUID, Map<UUID, Map<UUID, Set<Object>>>> entityValues ) {
-
-        List<Map<Object, Object>> documents = entityValues.entrySet().stream().flatMap( esEntry -> {
-            final var entitySetId = esEntry.getKey();
-            Map<UUID, Map<UUID, Set<Object>>> entity = esEntry.getValue(); // ek_id -> pt_id -> pt_values
-
-            return entity.entrySet().stream().map( ekEntry -> {
-                final var entityKeyId = ekEntry.getKey();
-                final var propertyValues = ekEntry.getValue();
-
-                Map<Object, Object> values = new HashMap<>( propertyValues.size() + 2 );
-                propertyValues.forEach( values::put );
-                values.put( ID_ID.getId(), entityKeyId );
-                values.put( ENTITY_SET_ID_KEY_ID.getId(), entitySetId );
-
-                return values;
-            } );
-        } ).collect( Collectors.toList() );
-
-        try {
-            return mapper.writeValueAsBytes( ImmutableMap.of( ENTITY, documents ) );
-
-        } catch ( JsonProcessingException e ) {
-            logger.debug( "error creating linked entity data" );
-            return null;
-        }
-    }
-
-    private byte[] formatEntity( UUID entitySetId, Map<UUID, Set<Object>> entity ) {
-
-        Map<Object, Object> values = new HashMap<>( entity.size() + 1 );
-        entity.forEach( values::put );
-        values.put( ENTITY_SET_ID_KEY_ID.getId(), entitySetId );
-
-        try {
-            return mapper.writeValueAsBytes( ImmutableMap.of( ENTITY, values, ENTITY_SET_ID_FIELD, entitySetId ) );
-
-        } catch ( JsonProcessingException e ) {
-            logger.debug( "error creating entity data" );
-            return null;
-        }
-    }
-
     @Override
     public boolean createEntityData( UUID entityTypeId, EntityDataKey edk, Map<UUID, Set<Object>> propertyValues ) {
         if ( !verifyElasticsearchConnection() ) { return false; }
@@ -560,12 +827,16 @@ public class DatastoreElasticsearchImpl implements ConductorElasticsearchApi {
         UUID entitySetId = edk.getEntitySetId();
         UUID entityKeyId = edk.getEntityKeyId();
 
-        byte[] data = formatEntity( entitySetId, propertyValues );
+        byte[] data = documentFormatter.formatEntity( entitySetId, entityKeyId, propertyValues );
 
         if ( data != null ) {
-            client.prepareIndex( getIndexName( entityTypeId ), getTypeName( entityTypeId ), entityKeyId.toString() )
-                    .setSource( data, XContentType.JSON )
-                    .execute().actionGet();
+            final var index = versionedIndices.getWriteIndex( getIndexName( entityTypeId ) );
+            write( client.prepareIndex( index, getTypeName( entityTypeId ), entityKeyId.toString() )
+                            .setSource( data, XContentType.JSON )
+                            .setRouting( getRouting( index, entitySetId ) )
+                            .request(),
+                    versionedIndices.routedBy( entitySetId.toString() ) );
+            onWrite( entityTypeId );
         }
 
         return data != null;
@@ -579,31 +850,32 @@ public class DatastoreElasticsearchImpl implements ConductorElasticsearchApi {
         if ( !verifyElasticsearchConnection() ) { return false; }
 
         if ( !entitiesById.isEmpty() ) {
-            String indexName = getIndexName( entityTypeId );
+            String indexName = versionedIndices.getWriteIndex( getIndexName( entityTypeId ) );
             String indexType = getTypeName( entityTypeId );
+            String routing = getRouting( indexName, entitySetId );
 
-            BulkRequestBuilder requestBuilder = client.prepareBulk();
+            Iterator<DocWriteRequest<?>> requests = entitiesById.entrySet().stream()
+                    .map( entity -> {
+                        byte[] data = documentFormatter
+                                .formatEntity( entitySetId, entity.getKey(), entity.getValue() );
 
-            entitiesById.forEach( ( entityKeyId, entityData ) -> {
-                byte[] data = formatEntity( entitySetId, entityData );
-
-                if ( data != null ) {
-                    requestBuilder.add(
-                            client.prepareIndex( indexName, indexType, entityKeyId.toString() )
-                                    .setSource( data, XContentType.JSON ) );
-                }
-            } );
-
-            BulkResponse resp = requestBuilder.execute().actionGet();
-
-            if ( resp.hasFailures() ) {
-                logger.info( "At least one failure observed when attempting to index {} entities for entity set {}: {}",
-                        entitiesById.size(),
-                        entitySetId,
-                        resp.buildFailureMessage() );
-                return false;
-            }
+                        if ( data == null ) {
+                            return null;
+                        }
 
+                        return (DocWriteRequest<?>) client
+                                .prepareIndex( indexName, indexType, entity.getKey().toString() )
+                                .setSource( data, XContentType.JSON )
+                                .setRouting( routing )
+                                .request();
+                    } )
+                    .filter( Objects::nonNull )
+                    .iterator();
+
+            final var result = bulkIndexer.execute( "entity set " + entitySetId + " (" + entitiesById.size()
+                    + " entities)", requests, versionedIndices.routedBy( entitySetId.toString() ) );
+            onWrite( entityTypeId );
+            return result.isSuccessful();
         }
         return true;
     }
@@ -616,74 +888,179 @@ public class DatastoreElasticsearchImpl implements ConductorElasticsearchApi {
         if ( !verifyElasticsearchConnection() ) { return false; }
 
         if ( !entitiesByLinkingId.isEmpty() ) {
-            String indexName = getIndexName( entityTypeId );
+            String indexName = versionedIndices.getWriteIndex( getIndexName( entityTypeId ) );
             String indexType = getTypeName( entityTypeId );
 
-            BulkRequestBuilder requestBuilder = client.prepareBulk();
+            Iterator<DocWriteRequest<?>> requests = entitiesByLinkingId.entrySet().stream()
+                    .map( linkedEntity -> {
+                        final byte[] data = documentFormatter
+                                .formatLinkedEntity( linkedEntity.getKey(), linkedEntity.getValue() );
 
-            entitiesByLinkingId.forEach( ( linkingId, entityValues ) -> {
-                        final byte[] data = formatLinkedEntity( entityValues );
-
-                        if ( data != null ) {
-                            requestBuilder.add(
-                                    client.prepareIndex( indexName, indexType, linkingId.toString() )
-                                            .setSource( data, XContentType.JSON ) );
+                        if ( data == null ) {
+                            return null;
                         }
-                    }
-            );
-            final var resp = requestBuilder.execute().actionGet();
-
-            if ( resp.hasFailures() ) {
-                logger.info( "At least one failure observed when attempting to index linking entities with linking " +
-                                "ids {}: {}",
-                        entitiesByLinkingId.keySet(),
-                        resp.buildFailureMessage() );
-                return false;
-            }
 
+                        return (DocWriteRequest<?>) client
+                                .prepareIndex( indexName, indexType, linkedEntity.getKey().toString() )
+                                .setSource( data, XContentType.JSON )
+                                .request();
+                    } )
+                    .filter( Objects::nonNull )
+                    .iterator();
+
+            final var result = bulkIndexer
+                    .execute( "linked entities of entity type " + entityTypeId + " ("
+                            + entitiesByLinkingId.size() + " linking ids)", requests, versionedIndices );
+            onWrite( entityTypeId );
+            return result.isSuccessful();
         }
         return true;
     }
 
+    /**
+     * Deletes entity documents by id. When documents are routed by entity set, in the live version of the index or in a
+     * version that is being rebuilt, the shard of a document can't be derived
+     * from its id alone, so the entity set of each batch of documents is looked up with a single ids search first and
+     * the documents are then deleted in bulk, routed to their entity set. Like a delete by query, the lookup only sees
+     * documents that have been refreshed. Callers that know the entity set should use
+     * {@link #deleteEntityDataBulk(UUID, UUID, Set)}, which skips the lookup.
+     */
     @Override
     public boolean deleteEntityDataBulk( UUID entityTypeId, Set<UUID> entityKeyIds ) {
         if ( !verifyElasticsearchConnection() ) { return false; }
 
-        String index = getIndexName( entityTypeId );
+        final var indexName = getIndexName( entityTypeId );
+        if ( !versionedIndices.hasVersionRoutedByEntitySet( indexName ) ) {
+            return deleteEntityDataBulk( entityTypeId, null, entityKeyIds );
+        }
+
+        final var batchSize = Math.min( bulkMaxDocuments, MAX_ROUTING_LOOKUP_SIZE );
+        for ( List<String> ids : Iterables.partition( Iterables.transform( entityKeyIds, UUID::toString ),
+                batchSize ) ) {
+            final var hits = client.prepareSearch( indexName )
+                    .setQuery( QueryBuilders.idsQuery().addIds( ids.toArray( new String[ 0 ] ) ) )
+                    .setSize( ids.size() )
+                    .setFetchSource( ENTITY_SET_ID_FIELD, null )
+                    .get()
+                    .getHits();
+
+            // Linked entity documents have no entity set and aren't routed, so they are grouped under null.
+            final Map<UUID, Set<UUID>> entityKeyIdsByEntitySet = new HashMap<>();
+            for ( SearchHit hit : hits ) {
+                final var entitySetId = hit.getSourceAsMap().get( ENTITY_SET_ID_FIELD );
+                entityKeyIdsByEntitySet
+                        .computeIfAbsent( entitySetId == null ? null : UUID.fromString( entitySetId.toString() ),
+                                esId -> new HashSet<>() )
+                        .add( UUID.fromString( hit.getId() ) );
+            }
+
+            entityKeyIdsByEntitySet.forEach( ( entitySetId, entitySetKeyIds ) ->
+                    deleteEntityDataBulk( entityTypeId, entitySetId, entitySetKeyIds ) );
+        }
+
+        return true;
+    }
+
+    /**
+     * Deletes entity documents of a single entity set by id, routed to the shard of the entity set.
+     */
+    public boolean deleteEntityDataBulk( UUID entityTypeId, UUID entitySetId, Set<UUID> entityKeyIds ) {
+        if ( !verifyElasticsearchConnection() ) { return false; }
+
+        String index = versionedIndices.getWriteIndex( getIndexName( entityTypeId ) );
         String type = getTypeName( entityTypeId );
+        String routing = entitySetId == null ? null : getRouting( index, entitySetId );
 
-        BulkRequestBuilder request = client.prepareBulk();
-        entityKeyIds.forEach( entityKeyId ->
-                request.add( client.prepareDelete( index, type, entityKeyId.toString() ) )
-        );
+        Iterator<DocWriteRequest<?>> requests = entityKeyIds.stream()
+                .map( entityKeyId -> (DocWriteRequest<?>) client
+                        .prepareDelete( index, type, entityKeyId.toString() )
+                        .setRouting( routing )
+                        .request() )
+                .iterator();
 
-        request.execute().actionGet();
+        bulkIndexer.execute( "deletion of " + entityKeyIds.size() + " entities of entity type " + entityTypeId,
+                requests,
+                versionedIndices.routedBy( entitySetId == null ? null : entitySetId.toString() ) );
+        onWrite( entityTypeId );
 
         return true;
     }
 
+    /**
+     * Deletes the documents of an entity set and waits until they are gone, so callers can rely on a clear having taken
+     * effect once it returns. The delete by query runs unthrottled with one slice per shard, so it finishes as fast as
+     * the cluster allows. Its progress can be followed in the {@link ElasticsearchTaskTracker} while it runs. While
+     * the index is being rebuilt the documents are deleted one by one instead, see {@link VersionedIndices}.
+     */
     @Override
     public boolean clearEntitySetData( UUID entitySetId, UUID entityTypeId ) {
         if ( !verifyElasticsearchConnection() ) { return false; }
 
-        final var resp = new DeleteByQueryRequestBuilder( client, DeleteByQueryAction.INSTANCE )
-                .filter( QueryBuilders.termQuery( ENTITY_SET_ID_FIELD, entitySetId.toString() ) )
-                .source( getIndexName( entityTypeId ) )
-                .execute()
-                .actionGet();
+        final var indexName = getIndexName( entityTypeId );
+        if ( !versionedIndices.getPendingVersions( indexName ).isEmpty() ) {
+            try {
+                final var deleted = deleteMatchesById( indexName,
+                        getTypeName( entityTypeId ),
+                        QueryBuilders.termQuery( ENTITY_SET_ID_FIELD, entitySetId.toString() ),
+                        entitySetId );
+                logger.info( "Deleted {} normal entity documents one by one while deleting entity set data {}, "
+                        + "since {} is being rebuilt", deleted, entitySetId, indexName );
+            } finally {
+                onWrite( entityTypeId );
+            }
+            return true;
+        }
 
-        logger.info( "Deleted {} normal entity documents while deleting entity set data {}", resp.getDeleted(),
-                entitySetId );
+        final var task = taskTracker.start( "clear data of entity set " + entitySetId );
+        try {
+            final var response = prepareClearEntitySetData( entitySetId, entityTypeId ).get();
+            task.onResponse( response );
+            logger.info( "Deleted {} normal entity documents while deleting entity set data {}",
+                    response.getDeleted(),
+                    entitySetId );
+        } catch ( RuntimeException e ) {
+            task.onFailure( e );
+            throw e;
+        } finally {
+            onWrite( entityTypeId );
+        }
 
         return true;
     }
 
+    private DeleteByQueryRequestBuilder prepareClearEntitySetData( UUID entitySetId, UUID entityTypeId ) {
+        final var index = versionedIndices.getWriteIndex( getIndexName( entityTypeId ) );
+        final var request = new DeleteByQueryRequestBuilder( client, DeleteByQueryAction.INSTANCE )
+                .filter( QueryBuilders.termQuery( ENTITY_SET_ID_FIELD, entitySetId.toString() ) )
+                .source( index )
+                .abortOnVersionConflict( false );
+        request.request().setSlices( AbstractBulkByScrollRequest.AUTO_SLICES );
+        request.request().setRouting( getRouting( index, entitySetId ) );
+        return request;
+    }
+
+    /**
+     * Registers a listener that is called with the entity type id whenever entity documents of that type are written or
+     * deleted through this instance.
+     */
+    public void addWriteListener( Consumer<UUID> listener ) {
+        writeListeners.add( listener );
+    }
+
+    private void onWrite( UUID entityTypeId ) {
+        writeListeners.forEach( listener -> listener.accept( entityTypeId ) );
+    }
+
     /*** ENTITY DATA SEARCH HELPERS ***/
 
     private EntityDataKeySearchResult getEntityDataKeySearchResult( MultiSearchResponse response ) {
         List<EntityDataKey> entityDataKeys = Lists.newArrayList();
         var totalHits = 0;
         for ( MultiSearchResponse.Item item : response.getResponses() ) {
+            if ( item.isFailure() ) {
+                logger.warn( "Search of one of the requested entity sets failed.", item.getFailure() );
+                continue;
+            }
             for ( SearchHit hit : item.getResponse().getHits() ) {
                 entityDataKeys.add( new EntityDataKey( getEntitySetIdFromHit( hit ),
                         UUID.fromString( hit.getId() ) ) );
@@ -693,237 +1070,697 @@ public class DatastoreElasticsearchImpl implements ConductorElasticsearchApi {
         return new EntityDataKeySearchResult( totalHits, entityDataKeys );
     }
 
-    private BoolQueryBuilder getAdvancedSearchQuery(
-            Constraint constraints,
-            Map<UUID, Map<String, Float>> authorizedFieldsMap ) {
+    /*** ENTITY DATA SEARCH ***/
 
-        BoolQueryBuilder query = QueryBuilders.boolQuery().minimumShouldMatch( 1 );
-        for ( SearchDetails search : constraints.getSearches().get() ) {
-            if ( authorizedFieldsMap.keySet().contains( search.getPropertyType() ) ) {
+    @Override
+    public EntityDataKeySearchResult executeSearch(
+            SearchConstraints searchConstraints,
+            Map<UUID, UUID> entityTypesByEntitySetId,
+            Map<UUID, DelegatedUUIDSet> authorizedPropertyTypesByEntitySet,
+            Map<UUID, DelegatedUUIDSet> linkingEntitySets ) {
+        if ( !verifyElasticsearchConnection() ) {
+            return new EntityDataKeySearchResult( 0, ImmutableList.of() );
+        }
 
-                QueryStringQueryBuilder queryString = QueryBuilders
-                        .queryStringQuery( search.getSearchTerm() )
-                        .fields( authorizedFieldsMap.get( search.getPropertyType() ) ).lenient( true );
+        MultiSearchRequest requests = prepareEntitySetSearches( searchConstraints,
+                entityTypesByEntitySetId,
+                authorizedPropertyTypesByEntitySet,
+                linkingEntitySets,
+                entitySetId -> null );
 
-                if ( search.getExactMatch() ) {
-                    query.must( queryString );
-                    query.minimumShouldMatch( 0 );
-                } else {
-                    query.should( queryString );
-                }
-            }
+        if ( requests.requests().isEmpty() ) {
+            return new EntityDataKeySearchResult( 0, ImmutableList.of() );
         }
 
-        return query;
+        return getEntityDataKeySearchResult( multiSearch( requests ) );
     }
 
-    private QueryBuilder getSimpleSearchQuery(
-            Constraint constraints,
-            Map<UUID, Map<String, Float>> authorizedFieldsMap ) {
+    /**
+     * Counts the hits of a search without fetching, scoring or sorting them.
+     *
+     * @param atLeast When positive, every entity set is only counted until it reaches this many hits, which is enough
+     *                to tell whether a search has at least as many. Otherwise hits are counted exactly.
+     * @return The number of hits of all entity sets together.
+     */
+    public long executeCount(
+            SearchConstraints searchConstraints,
+            Map<UUID, UUID> entityTypesByEntitySetId,
+            Map<UUID, DelegatedUUIDSet> authorizedPropertyTypesByEntitySet,
+            Map<UUID, DelegatedUUIDSet> linkingEntitySets,
+            int atLeast ) {
+        if ( !verifyElasticsearchConnection() ) {
+            return 0;
+        }
+
+        MultiSearchRequest requests = searchConcurrency.newRequest();
 
-        String searchTerm = constraints.getSearchTerm().get();
-        boolean fuzzy = constraints.getFuzzy().get();
+        for ( UUID entitySetId : searchConstraints.getEntitySetIds() ) {
+            QueryBuilder query = getEntitySetSearchQuery( entitySetId,
+                    searchConstraints,
+                    authorizedPropertyTypesByEntitySet,
+                    linkingEntitySets );
 
-        String formattedSearchTerm = fuzzy ? getFormattedFuzzyString( searchTerm ) : searchTerm;
+            if ( query != null ) {
+                SearchRequestBuilder request = client
+                        .prepareSearch( getIndexName( entityTypesByEntitySetId.get( entitySetId ) ) )
+                        .setQuery( QueryBuilders.constantScoreQuery( query ) )
+                        .setSize( 0 )
+                        .setFetchSource( false );
+                if ( atLeast > 0 ) {
+                    request.setTrackTotalHitsUpTo( atLeast );
+                } else {
+                    request.setTrackTotalHits( true );
+                }
+                routeToEntitySet( request, entitySetId, linkingEntitySets );
+                requests.add( request );
+            }
+        }
 
-        return QueryBuilders.queryStringQuery( formattedSearchTerm )
-                .fields( authorizedFieldsMap.values().stream()
-                        .flatMap( fieldsMap -> fieldsMap.entrySet().stream() )
-                        .collect( Collectors.toMap( Map.Entry::getKey, Map.Entry::getValue ) ) )
-                .lenient( true );
+        if ( requests.requests().isEmpty() ) {
+            return 0;
+        }
+
+        long totalHits = 0;
+        for ( MultiSearchResponse.Item item : multiSearch( requests ).getResponses() ) {
+            if ( item.isFailure() ) {
+                logger.warn( "Count of one of the requested entity sets failed.", item.getFailure() );
+                continue;
+            }
+            totalHits += item.getResponse().getHits().getTotalHits().value;
+        }
+        return totalHits;
     }
 
-    private BoolQueryBuilder getGeoDistanceSearchQuery(
-            Constraint constraints,
-            Map<UUID, Map<String, Float>> authorizedFieldsMap ) {
+    /**
+     * Runs the same search as {@link #executeSearch} but also reads the values of the requested property types from
+     * the source of every hit, so that the hits can be returned without loading them from postgres.
+     * <p>
+     * Values are returned the way they are stored in the document, i.e. in their JSON representation. The values of a
+     * hit of a linking entity set are merged from the linked entities that belong to its normal entity sets.
+     *
+     * @param sourcePropertyTypesByEntitySet The property types to read from the source of the hits, by entity set id.
+     */
+    public EntityDataHits executeSourceSearch(
+            SearchConstraints searchConstraints,
+            Map<UUID, UUID> entityTypesByEntitySetId,
+            Map<UUID, DelegatedUUIDSet> authorizedPropertyTypesByEntitySet,
+            Map<UUID, DelegatedUUIDSet> linkingEntitySets,
+            Map<UUID, Set<UUID>> sourcePropertyTypesByEntitySet ) {
+        if ( !verifyElasticsearchConnection() ) {
+            return new EntityDataHits( 0, ImmutableList.of(), ImmutableMap.of() );
+        }
+
+        final var entitySetIdField = ENTITY_SET_ID_KEY_ID.getId().toString();
 
-        UUID propertyTypeId = constraints.getPropertyTypeId().get();
-        if ( authorizedFieldsMap.getOrDefault( propertyTypeId, ImmutableMap.of() ).size() == 0 ) {
-            return null;
+        MultiSearchRequest requests = prepareEntitySetSearches( searchConstraints,
+                entityTypesByEntitySetId,
+                authorizedPropertyTypesByEntitySet,
+                linkingEntitySets,
+                entitySetId -> Stream.concat(
+                        Stream.of( entitySetIdField ),
+                        sourcePropertyTypesByEntitySet.getOrDefault( entitySetId, Set.of() ).stream()
+                                .map( UUID::toString ) )
+                        .map( field -> ENTITY + "." + field )
+                        .toArray( String[]::new ) );
+
+        if ( requests.requests().isEmpty() ) {
+            return new EntityDataHits( 0, ImmutableList.of(), ImmutableMap.of() );
         }
 
-        double latitude = constraints.getLatitude().get();
-        double longitude = constraints.getLongitude().get();
-        double radius = constraints.getRadius().get();
+        List<EntityDataKey> entityDataKeys = Lists.newArrayList();
+        Map<EntityDataKey, Map<UUID, Set<Object>>> values = new HashMap<>();
+        long totalHits = 0;
 
-        BoolQueryBuilder query = QueryBuilders.boolQuery().minimumShouldMatch( 1 );
+        for ( MultiSearchResponse.Item item : multiSearch( requests ).getResponses() ) {
+            if ( item.isFailure() ) {
+                logger.warn( "Search of one of the requested entity sets failed.", item.getFailure() );
+                continue;
+            }
+
+            for ( SearchHit hit : item.getResponse().getHits() ) {
+                final var entitySetId = getEntitySetIdFromHit( hit );
+                final var edk = new EntityDataKey( entitySetId, UUID.fromString( hit.getId() ) );
+                final var propertyTypeIds = sourcePropertyTypesByEntitySet.getOrDefault( entitySetId, Set.of() );
+                final Set<UUID> normalEntitySetIds = linkingEntitySets.get( entitySetId );
+                final Map<UUID, Set<Object>> hitValues = new HashMap<>( propertyTypeIds.size() );
+
+                final Object source = hit.getSourceAsMap().get( ENTITY );
+                final List<?> entities = source instanceof List
+                        ? (List<?>) source
+                        : Collections.singletonList( source );
+                for ( Object entity : entities ) {
+                    if ( entity instanceof Map ) {
+                        final var entityValues = (Map<?, ?>) entity;
+                        final var sourceEntitySetId = entityValues.get( entitySetIdField );
+                        if ( normalEntitySetIds == null || ( sourceEntitySetId != null && normalEntitySetIds
+                                .contains( UUID.fromString( sourceEntitySetId.toString() ) ) ) ) {
+                            readSourceValues( entityValues, propertyTypeIds, hitValues );
+                        }
+                    }
+                }
 
-        authorizedFieldsMap.get( propertyTypeId ).keySet().forEach( fieldName ->
-                query.should( QueryBuilders
-                        .geoDistanceQuery( fieldName )
-                        .point( latitude, longitude )
-                        .distance( radius, DistanceUnit.fromString( constraints.getDistanceUnit().get().name() ) ) )
-        );
+                entityDataKeys.add( edk );
+                values.put( edk, hitValues );
+            }
+            totalHits += item.getResponse().getHits().getTotalHits().value;
+        }
 
-        return query;
+        return new EntityDataHits( totalHits, entityDataKeys, values );
     }
 
-    private BoolQueryBuilder getGeoPolygonSearchQuery(
-            Constraint constraints,
-            Map<UUID, Map<String, Float>> authorizedFieldsMap ) {
+    private static void readSourceValues(
+            Map<?, ?> entity,
+            Set<UUID> propertyTypeIds,
+            Map<UUID, Set<Object>> values ) {
+        for ( UUID propertyTypeId : propertyTypeIds ) {
+            final Object propertyValues = entity.get( propertyTypeId.toString() );
+            if ( propertyValues == null ) {
+                continue;
+            }
+
+            final var target = values.computeIfAbsent( propertyTypeId, id -> new LinkedHashSet<>() );
+            if ( propertyValues instanceof Collection ) {
+                target.addAll( (Collection<?>) propertyValues );
+            } else {
+                target.add( propertyValues );
+            }
+        }
+    }
 
-        UUID propertyTypeId = constraints.getPropertyTypeId().get();
-        if ( authorizedFieldsMap.getOrDefault( propertyTypeId, ImmutableMap.of() ).size() == 0 ) {
-            return null;
+    /**
+     * Runs aggregations over the entities of normal entity sets that match a search. All entity sets are searched with
+     * a single request and aggregated together.
+     *
+     * @param propertyTypes The property types being aggregated on, by id. Callers are expected to have checked that
+     *                      they may read them in every entity set and that they suit the requested aggregations.
+     */
+    public AggregationResult executeAggregation(
+            SearchConstraints searchConstraints,
+            Map<UUID, UUID> entityTypesByEntitySetId,
+            Map<UUID, DelegatedUUIDSet> authorizedPropertyTypesByEntitySet,
+            Map<String, EntityDataAggregation> aggregations,
+            Map<UUID, PropertyType> propertyTypes ) {
+        if ( !verifyElasticsearchConnection() ) {
+            return new AggregationResult( 0, ImmutableMap.of(), ImmutableMap.of() );
         }
 
         BoolQueryBuilder query = QueryBuilders.boolQuery().minimumShouldMatch( 1 );
+        for ( UUID entitySetId : searchConstraints.getEntitySetIds() ) {
+            QueryBuilder entitySetQuery = getEntitySetSearchQuery( entitySetId,
+                    searchConstraints,
+                    authorizedPropertyTypesByEntitySet,
+                    ImmutableMap.of() );
+            if ( entitySetQuery != null ) {
+                query.should( entitySetQuery );
+            }
+        }
+
+        if ( query.should().isEmpty() ) {
+            return new AggregationResult( 0, ImmutableMap.of(), ImmutableMap.of() );
+        }
 
-        for ( List<List<Double>> zone : constraints.getZones().get() ) {
-            List<GeoPoint> polygon = zone.stream().map( pair -> new GeoPoint( pair.get( 1 ), pair.get( 0 ) ) )
-                    .collect( Collectors.toList() );
+        final var termsPropertyTypes = aggregations.values().stream()
+                .filter( aggregation -> aggregation.getType() == AggregationType.TERMS )
+                .map( aggregation -> propertyTypes.get( aggregation.getPropertyTypeId() ) )
+                .collect( Collectors.toList() );
+        entityTypesByEntitySetId.values().stream()
+                .distinct()
+                .forEach( entityTypeId -> addMissingKeywordSubfields( entityTypeId, termsPropertyTypes ) );
+
+        NestedAggregationBuilder entityAggregations = AggregationBuilders.nested( ENTITY, ENTITY );
+        aggregations.forEach( ( name, aggregation ) -> entityAggregations.subAggregation(
+                buildAggregation( name, aggregation, propertyTypes.get( aggregation.getPropertyTypeId() ) ) ) );
+
+        SearchRequestBuilder request = client
+                .prepareSearch( entityTypesByEntitySetId.values().stream()
+                        .distinct()
+                        .map( this::getIndexName )
+                        .toArray( String[]::new ) )
+                .setQuery( query )
+                .setTrackTotalHits( true )
+                .setSize( 0 )
+                .addAggregation( entityAggregations );
+        if ( Stream.of( request.request().indices() ).allMatch( versionedIndices::isRoutedByEntitySet ) ) {
+            request.setRouting( Stream.of( searchConstraints.getEntitySetIds() )
+                    .map( UUID::toString )
+                    .toArray( String[]::new ) );
+        }
 
-            authorizedFieldsMap.get( propertyTypeId ).keySet()
-                    .forEach( fieldName -> query.should( QueryBuilders.geoPolygonQuery( fieldName, polygon ) ) );
+        SearchResponse response = request.execute().actionGet();
+
+        Map<String, List<AggregationResult.Bucket>> buckets = new LinkedHashMap<>();
+        Map<String, AggregationResult.Stats> stats = new LinkedHashMap<>();
+        Nested entityResults = response.getAggregations().get( ENTITY );
+        for ( Aggregation result : entityResults.getAggregations() ) {
+            if ( result instanceof Stats ) {
+                final var values = (Stats) result;
+                final var empty = values.getCount() == 0;
+                stats.put( result.getName(), new AggregationResult.Stats( values.getCount(),
+                        empty ? null : values.getMin(),
+                        empty ? null : values.getMax(),
+                        empty ? null : values.getAvg(),
+                        empty ? null : values.getSum() ) );
+            } else if ( result instanceof MultiBucketsAggregation ) {
+                buckets.put( result.getName(), ( (MultiBucketsAggregation) result ).getBuckets().stream()
+                        .map( bucket -> new AggregationResult.Bucket( bucket.getKeyAsString(), bucket.getDocCount() ) )
+                        .collect( Collectors.toList() ) );
+            }
         }
 
-        return query;
+        return new AggregationResult( response.getHits().getTotalHits().value, buckets, stats );
     }
 
-    private QueryBuilder getWriteDateTimeFilterQuery( UUID[] entitySetIds, Constraint constraint ) {
-        BoolQueryBuilder query = QueryBuilders.boolQuery().minimumShouldMatch( 1 );
+    /**
+     * Adds the keyword subfields that terms aggregations run on to the string properties of an entity type data index
+     * created before they were mapped. A new subfield only gets values as documents are indexed, so the documents
+     * already in the index are indexed again in place in the background, which is tracked in the
+     * {@link ElasticsearchTaskTracker}. Until that has finished, terms aggregations leave out the documents it hasn't
+     * reached yet.
+     */
+    private void addMissingKeywordSubfields( UUID entityTypeId, Collection<PropertyType> propertyTypes ) {
+        final var indexName = getIndexName( entityTypeId );
+        final var unchecked = propertyTypes.stream()
+                .filter( propertyType -> propertyType.getDatatype() == EdmPrimitiveTypeKind.String )
+                .filter( propertyType -> !mappedKeywordSubfields.contains( indexName + "/" + propertyType.getId() ) )
+                .distinct()
+                .collect( Collectors.toList() );
+        if ( unchecked.isEmpty() ) {
+            return;
+        }
 
-        for ( int i = 0; i < entitySetIds.length; i++ ) {
-            RangeQueryBuilder rangeQuery = QueryBuilders.rangeQuery( getFieldName( LAST_WRITE_ID.getId() ) );
+        final var missing = unchecked.stream()
+                .filter( propertyType -> !hasFieldInEveryVersion( indexName,
+                        getKeywordSubfieldName( propertyType.getId() ) ) )
+                .collect( Collectors.toList() );
 
-            if ( constraint.getStartDate().isPresent() ) {
-                rangeQuery.gt( constraint.getStartDate().get().toString() );
-            }
+        if ( !missing.isEmpty() ) {
+            addMappingToEntityTypeDataIndex( entityTypeId, missing );
+            final var filter = QueryBuilders.boolQuery().minimumShouldMatch( 1 );
+            missing.forEach( propertyType -> filter.should( QueryBuilders.nestedQuery( ENTITY,
+                    QueryBuilders.existsQuery( getFieldName( propertyType.getId() ) ),
+                    ScoreMode.None ) ) );
+            updateInPlace( indexName, filter, "keyword subfields of " + indexName );
+        }
+        unchecked.forEach( propertyType -> mappedKeywordSubfields.add( indexName + "/" + propertyType.getId() ) );
+    }
 
-            if ( constraint.getEndDate().isPresent() ) {
-                rangeQuery.lte( constraint.getEndDate().get().toString() );
+    /**
+     * Indexes the matching documents of an index again as they are, so that fields added to its mapping since they were
+     * written get their values. This runs in the background and is tracked in the {@link ElasticsearchTaskTracker}.
+     */
+    private void updateInPlace( String indexName, QueryBuilder filter, String description ) {
+        final var request = new UpdateByQueryRequestBuilder( client, UpdateByQueryAction.INSTANCE )
+                .source( versionedIndices.getWriteIndex( indexName ) )
+                .filter( filter )
+                .abortOnVersionConflict( false );
+        request.request().setSlices( AbstractBulkByScrollRequest.AUTO_SLICES );
+
+        final var task = taskTracker.start( "update of " + description );
+        request.execute( task );
+        logger.info( "Started update of {} as task {}.", description, task.getId() );
+    }
+
+    private AggregationBuilder buildAggregation(
+            String name,
+            EntityDataAggregation aggregation,
+            PropertyType propertyType ) {
+        final var field = getFieldName( propertyType.getId() );
+        switch ( aggregation.getType() ) {
+            case TERMS: {
+                final var terms = AggregationBuilders.terms( name ).field(
+                        propertyType.getDatatype() == EdmPrimitiveTypeKind.String
+                                ? getKeywordSubfieldName( propertyType.getId() )
+                                : field );
+                aggregation.getSize().ifPresent( terms::size );
+                return terms;
+            }
+            case HISTOGRAM:
+                return AggregationBuilders.histogram( name ).field( field )
+                        .interval( aggregation.getInterval().orElseThrow() );
+            case DATE_HISTOGRAM:
+                return AggregationBuilders.dateHistogram( name ).field( field ).calendarInterval(
+                        new DateHistogramInterval( aggregation.getCalendarInterval().orElseThrow() ) );
+            case STATS:
+                return AggregationBuilders.stats( name ).field( field );
+            case GEOHASH_GRID: {
+                final var grid = AggregationBuilders.geohashGrid( name ).field( field );
+                aggregation.getPrecision().ifPresent( grid::precision );
+                aggregation.getSize().ifPresent( grid::size );
+                return grid;
             }
+            default:
+                throw new IllegalArgumentException( "Unsupported aggregation type " + aggregation.getType() );
+        }
+    }
+
+    /**
+     * Builds one search per entity set of the constraints, skipping entity sets whose query can't match anything.
+     *
+     * @param sourceIncludes The source fields to fetch for the hits of an entity set, or null to fetch no source.
+     */
+    private MultiSearchRequest prepareEntitySetSearches(
+            SearchConstraints searchConstraints,
+            Map<UUID, UUID> entityTypesByEntitySetId,
+            Map<UUID, DelegatedUUIDSet> authorizedPropertyTypesByEntitySet,
+            Map<UUID, DelegatedUUIDSet> linkingEntitySets,
+            Function<UUID, String[]> sourceIncludes ) {
+        SortBuilder sort = buildSort( searchConstraints.getSortDefinition() );
+
+        MultiSearchRequest requests = searchConcurrency.newRequest();
+
+        for ( int i = 0; i < searchConstraints.getEntitySetIds().length; i++ ) {
+            UUID entitySetId = searchConstraints.getEntitySetIds()[ i ];
 
-            query.should( rangeQuery );
+            QueryBuilder query = getEntitySetSearchQuery( entitySetId,
+                    searchConstraints,
+                    authorizedPropertyTypesByEntitySet,
+                    linkingEntitySets );
+
+            if ( query != null ) {
+                SearchRequestBuilder request = client
+                        .prepareSearch( getIndexName( entityTypesByEntitySetId.get( entitySetId ) ) )
+                        .setQuery( query )
+                        .setTrackTotalHits( true )
+                        .setFrom( searchConstraints.getStart() )
+                        .setSize( searchConstraints.getMaxHits() )
+                        .addSort( sort );
+
+                final var includes = sourceIncludes.apply( entitySetId );
+                if ( includes == null ) {
+                    request.setFetchSource( false );
+                } else {
+                    request.setFetchSource( includes, null );
+                }
+
+                routeToEntitySet( request, entitySetId, linkingEntitySets );
+                requests.add( request );
+            }
         }
 
-        return query;
+        return requests;
     }
 
-    private QueryBuilder getQueryForSearch(
-            Set<UUID> entitySetIds,
+    /**
+     * Pages through the hits of a search with search_after instead of from/size, so that every page costs the same no
+     * matter how deep it is and paging is not bounded by the max result window of the index.
+     * <p>
+     * Every entity set is paged independently, sorted by the requested sort and then by entity key id to break ties. A
+     * page returns up to {@link SearchConstraints#getMaxHits()} hits per entity set. The start offset of the
+     * constraints is ignored. The page fails as a whole if the search of any entity set fails.
+     *
+     * @param cursor Where the previous page of this search stopped, or empty for the first page.
+     * @return The hits of the page and, unless every entity set is exhausted, the cursor of the next page.
+     */
+    public EntityDataKeyPage executeCursorSearch(
             SearchConstraints searchConstraints,
-            Map<UUID, Map<String, Float>> authorizedFieldsMap ) {
-        BoolQueryBuilder query = QueryBuilders.boolQuery();
-
-        if ( authorizedFieldsMap.size() == 0 ) {
-            return null;
+            Map<UUID, UUID> entityTypesByEntitySetId,
+            Map<UUID, DelegatedUUIDSet> authorizedPropertyTypesByEntitySet,
+            Map<UUID, DelegatedUUIDSet> linkingEntitySets,
+            Optional<SearchCursor> cursor ) {
+        if ( !verifyElasticsearchConnection() ) {
+            return new EntityDataKeyPage( 0, ImmutableList.of(), Optional.empty() );
         }
 
-        for ( ConstraintGroup constraintGroup : searchConstraints.getConstraintGroups() ) {
-            BoolQueryBuilder subQuery = QueryBuilders.boolQuery()
-                    .minimumShouldMatch( constraintGroup.getMinimumMatches() );
+        final var firstPage = cursor.isEmpty();
+        final Map<UUID, Object[]> positions = cursor.map( SearchCursor::getPositions ).orElseGet( () -> {
+            Map<UUID, Object[]> initial = new LinkedHashMap<>();
+            for ( UUID entitySetId : searchConstraints.getEntitySetIds() ) {
+                initial.put( entitySetId, null );
+            }
+            return initial;
+        } );
 
-            for ( Constraint constraint : constraintGroup.getConstraints() ) {
+        SortBuilder sort = buildSort( searchConstraints.getSortDefinition() );
 
-                switch ( constraint.getSearchType() ) {
-                    case advanced:
-                        BoolQueryBuilder advancedSearchQuery = getAdvancedSearchQuery( constraint,
-                                authorizedFieldsMap );
-                        if ( advancedSearchQuery.hasClauses() ) { subQuery.should( advancedSearchQuery ); }
-                        break;
+        MultiSearchRequest requests = searchConcurrency.newRequest();
+        List<UUID> searchedEntitySetIds = new ArrayList<>( positions.size() );
 
-                    case geoDistance:
-                        BoolQueryBuilder geoDistanceSearchQuery = getGeoDistanceSearchQuery( constraint,
-                                authorizedFieldsMap );
-                        if ( geoDistanceSearchQuery.hasClauses() ) { subQuery.should( geoDistanceSearchQuery ); }
-                        break;
+        positions.forEach( ( entitySetId, searchAfter ) -> {
+            QueryBuilder query = getEntitySetSearchQuery( entitySetId,
+                    searchConstraints,
+                    authorizedPropertyTypesByEntitySet,
+                    linkingEntitySets );
 
-                    case geoPolygon:
-                        BoolQueryBuilder geoPolygonSearchQuery = getGeoPolygonSearchQuery( constraint,
-                                authorizedFieldsMap );
-                        if ( geoPolygonSearchQuery.hasClauses() ) { subQuery.should( geoPolygonSearchQuery ); }
-                        break;
+            if ( query != null ) {
+                final var indexName = getIndexName( entityTypesByEntitySetId.get( entitySetId ) );
+                SearchRequestBuilder request = client
+                        .prepareSearch( indexName )
+                        .setQuery( query )
+                        .setTrackTotalHits( firstPage )
+                        .setSize( searchConstraints.getMaxHits() )
+                        .addSort( sort )
+                        .addSort( getTiebreakSort( indexName ) )
+                        .setFetchSource( false );
+                if ( searchAfter != null ) {
+                    request.searchAfter( searchAfter );
+                }
+                routeToEntitySet( request, entitySetId, linkingEntitySets );
+                requests.add( request );
+                searchedEntitySetIds.add( entitySetId );
+            }
+        } );
 
-                    case simple:
-                        subQuery.should( getSimpleSearchQuery( constraint, authorizedFieldsMap ) );
-                        break;
+        if ( requests.requests().isEmpty() ) {
+            return new EntityDataKeyPage( 0, ImmutableList.of(), Optional.empty() );
+        }
 
-                    case writeDateTimeFilter:
-                        subQuery.should( getWriteDateTimeFilterQuery( searchConstraints.getEntitySetIds(),
-                                constraint ) );
-                        break;
+        MultiSearchResponse response = multiSearch( requests );
 
-                }
+        List<EntityDataKey> entityDataKeys = Lists.newArrayList();
+        Map<UUID, Object[]> nextPositions = new LinkedHashMap<>();
+        long totalHits = 0;
+
+        MultiSearchResponse.Item[] items = response.getResponses();
+        for ( int i = 0; i < items.length; i++ ) {
+            final var entitySetId = searchedEntitySetIds.get( i );
+            if ( items[ i ].isFailure() ) {
+                // Skipping the entity set would silently drop it from every following page, so the whole page fails
+                // and can be retried with the same cursor.
+                throw new IllegalStateException( "Cursor search of entity set " + entitySetId + " failed.",
+                        items[ i ].getFailure() );
+            }
 
+            final var hits = items[ i ].getResponse().getHits();
+            if ( firstPage ) {
+                totalHits += hits.getTotalHits().value;
             }
 
-            if ( !subQuery.hasClauses() ) {
-                return null;
+            SearchHit last = null;
+            for ( SearchHit hit : hits ) {
+                entityDataKeys.add( new EntityDataKey( entitySetId, UUID.fromString( hit.getId() ) ) );
+                last = hit;
             }
 
-            query.must( QueryBuilders.nestedQuery( ENTITY, subQuery, ScoreMode.Total ) );
+            // A short page means the entity set is exhausted.
+            if ( last != null && hits.getHits().length == searchConstraints.getMaxHits() ) {
+                nextPositions.put( entitySetId, last.getSortValues() );
+            }
         }
 
-        BoolQueryBuilder entitySetQuery = QueryBuilders.boolQuery().minimumShouldMatch( 1 );
-        entitySetIds.forEach( entitySetId -> entitySetQuery.should(
-                QueryBuilders.termQuery( getFieldName( ENTITY_SET_ID_KEY_ID.getId() ),
-                        entitySetId.toString() )
-        ) );
+        if ( !firstPage ) {
+            totalHits = cursor.get().getNumHits();
+        }
 
-        query.must( QueryBuilders.nestedQuery( ENTITY, entitySetQuery, ScoreMode.Max ) );
+        final var next = nextPositions.isEmpty()
+                ? Optional.<SearchCursor>empty()
+                : Optional.of( new SearchCursor( totalHits, nextPositions ) );
 
-        return query;
+        return new EntityDataKeyPage( totalHits, entityDataKeys, next );
     }
 
-    /*** ENTITY DATA SEARCH ***/
+    /**
+     * Breaks ties on the entity key id field, which has doc values, once every document of the index carries it.
+     * Documents written before it was introduced only get it when the index is rebuilt, so until then ties are broken
+     * on _id, which holds the same value but has to be loaded into fielddata. Since both hold the same value, a cursor
+     * stays valid when the tiebreak of its index switches.
+     */
+    private SortBuilder getTiebreakSort( String indexName ) {
+        var complete = indicesWithEntityKeyIds.getIfPresent( indexName );
+        if ( complete == null ) {
+            complete = client.prepareSearch( indexName )
+                    .setQuery( QueryBuilders.boolQuery().mustNot( QueryBuilders.existsQuery( ENTITY_KEY_ID_FIELD ) ) )
+                    .setSize( 0 )
+                    .setTerminateAfter( 1 )
+                    .get()
+                    .getHits()
+                    .getTotalHits().value == 0;
+            indicesWithEntityKeyIds.put( indexName, complete );
+        }
+        return SortBuilders.fieldSort( complete ? ENTITY_KEY_ID_FIELD : IdFieldMapper.NAME ).order( SortOrder.ASC );
+    }
 
-    @Override
-    public EntityDataKeySearchResult executeSearch(
+    /**
+     * Walks every hit of a search with sliced scrolls and hands the entity data keys to the consumer one scroll page at
+     * a time, so the full result is never held in memory.
+     * <p>
+     * Entity sets are exported one after the other. The slices of an entity set are scrolled in parallel, so the
+     * consumer may be called concurrently and must be thread safe. Hits are returned in index order.
+     *
+     * @return The number of entity data keys handed to the consumer.
+     */
+    public long scrollSearch(
             SearchConstraints searchConstraints,
             Map<UUID, UUID> entityTypesByEntitySetId,
             Map<UUID, DelegatedUUIDSet> authorizedPropertyTypesByEntitySet,
-            Map<UUID, DelegatedUUIDSet> linkingEntitySets ) {
-        if ( !verifyElasticsearchConnection() ) {
-            return new EntityDataKeySearchResult( 0, ImmutableList.of() );
-        }
+            Map<UUID, DelegatedUUIDSet> linkingEntitySets,
+            Consumer<List<EntityDataKey>> consumer ) {
+        if ( !verifyElasticsearchConnection() ) { return 0; }
 
-        SortBuilder sort = buildSort( searchConstraints.getSortDefinition() );
+        final var exported = new AtomicLong();
 
-        MultiSearchRequest requests = new MultiSearchRequest().maxConcurrentSearchRequests( MAX_CONCURRENT_SEARCHES );
+        for ( UUID entitySetId : searchConstraints.getEntitySetIds() ) {
+            QueryBuilder query = getEntitySetSearchQuery( entitySetId,
+                    searchConstraints,
+                    authorizedPropertyTypesByEntitySet,
+                    linkingEntitySets );
 
-        for ( int i = 0; i < searchConstraints.getEntitySetIds().length; i++ ) {
-            UUID entitySetId = searchConstraints.getEntitySetIds()[ i ];
+            if ( query == null ) {
+                continue;
+            }
 
-            Set<UUID> normalEntitySets = linkingEntitySets.getOrDefault(
-                    entitySetId, DelegatedUUIDSet.wrap( ImmutableSet.of( entitySetId ) ) );
+            final var indexName = getIndexName( entityTypesByEntitySetId.get( entitySetId ) );
+            // A routed search only hits one shard, and more slices than shards are split within a shard, so neither
+            // gains anything from additional slices.
+            final var routed = !linkingEntitySets.containsKey( entitySetId )
+                    && versionedIndices.isRoutedByEntitySet( indexName );
+            final var slices = routed ? 1 : Math.max( 1, Math.min( exportSlices, getNumberOfShards( indexName ) ) );
+            final var failed = new AtomicBoolean();
+            final var scrolls = new CompletableFuture[ slices ];
+
+            for ( int slice = 0; slice < slices; ++slice ) {
+                final var sliceBuilder = slices > 1 ? new SliceBuilder( slice, slices ) : null;
+                scrolls[ slice ] = CompletableFuture.runAsync( () -> scrollSlice( entitySetId,
+                        indexName,
+                        routed,
+                        query,
+                        sliceBuilder,
+                        failed,
+                        keys -> {
+                            exported.addAndGet( keys.size() );
+                            consumer.accept( keys );
+                        } ), scrollExecutor );
+            }
 
-            Map<UUID, Map<String, Float>> authorizedFieldsMap =
-                    getFieldsMap( entitySetId, authorizedPropertyTypesByEntitySet );
+            try {
+                CompletableFuture.allOf( scrolls ).join();
+            } catch ( CompletionException e ) {
+                failed.set( true );
+                logger.error( "Unable to export search results of entity set {}.", entitySetId, e.getCause() );
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
 
-            QueryBuilder searchQuery = getQueryForSearch( normalEntitySets, searchConstraints, authorizedFieldsMap );
+        return exported.get();
+    }
 
-            if ( searchQuery != null ) {
+    /**
+     * @return The number of primary shards of the index behind an alias.
+     */
+    private int getNumberOfShards( String indexName ) {
+        final var settings = client.admin().indices().prepareGetSettings( indexName ).get().getIndexToSettings();
+        int shards = 1;
+        for ( Iterator<Settings> it = settings.valuesIt(); it.hasNext(); ) {
+            shards = Math.max( shards, it.next().getAsInt( IndexMetaData.SETTING_NUMBER_OF_SHARDS, 1 ) );
+        }
+        return shards;
+    }
 
-                BoolQueryBuilder query = new BoolQueryBuilder().queryName( entitySetId.toString() ).must( searchQuery );
+    private void scrollSlice(
+            UUID entitySetId,
+            String indexName,
+            boolean routed,
+            QueryBuilder query,
+            SliceBuilder slice,
+            AtomicBoolean failed,
+            Consumer<List<EntityDataKey>> consumer ) {
+        final var keepAlive = TimeValue.timeValueMillis( exportScrollKeepAliveMillis );
+
+        SearchRequestBuilder request = client.prepareSearch( indexName )
+                .setQuery( query )
+                .setScroll( keepAlive )
+                .setSize( exportBatchSize )
+                .addSort( SortBuilders.fieldSort( FieldSortBuilder.DOC_FIELD_NAME ) )
+                .setFetchSource( false );
+        if ( slice != null ) {
+            request.slice( slice );
+        }
+        if ( routed ) {
+            request.setRouting( entitySetId.toString() );
+        }
 
-                if ( linkingEntitySets.containsKey( entitySetId ) ) {
-                    query.mustNot( QueryBuilders
-                            .existsQuery( ENTITY_SET_ID_FIELD ) ); // this field will not exist for linked entity
-                    // documents
-                } else {
-                    query.must( QueryBuilders
-                            .termQuery( ENTITY_SET_ID_FIELD, entitySetId.toString() ) ); // match entity set id
+        SearchResponse response = request.get();
+        String scrollId = response.getScrollId();
+        try {
+            while ( response.getHits().getHits().length > 0 && !failed.get() ) {
+                List<EntityDataKey> keys = new ArrayList<>( response.getHits().getHits().length );
+                for ( SearchHit hit : response.getHits() ) {
+                    keys.add( new EntityDataKey( entitySetId, UUID.fromString( hit.getId() ) ) );
                 }
+                consumer.accept( keys );
 
-                SearchRequestBuilder request = client
-                        .prepareSearch( getIndexName( entityTypesByEntitySetId.get( entitySetId ) ) )
-                        .setQuery( query )
-                        .setTrackTotalHits( true )
-                        .setFrom( searchConstraints.getStart() )
-                        .setSize( searchConstraints.getMaxHits() )
-                        .addSort( sort )
-                        .setFetchSource( false );
-                requests.add( request );
+                response = client.prepareSearchScroll( scrollId ).setScroll( keepAlive ).get();
+                scrollId = response.getScrollId();
             }
+        } catch ( RuntimeException e ) {
+            failed.set( true );
+            throw e;
+        } finally {
+            client.prepareClearScroll().addScrollId( scrollId ).execute();
         }
+    }
 
-        if ( requests.requests().isEmpty() ) {
-            return new EntityDataKeySearchResult( 0, ImmutableList.of() );
+    /**
+     * Builds the query matching the entities of a single entity set, or null if the constraints can't match anything
+     * the caller is authorized to see.
+     */
+    private QueryBuilder getEntitySetSearchQuery(
+            UUID entitySetId,
+            SearchConstraints searchConstraints,
+            Map<UUID, DelegatedUUIDSet> authorizedPropertyTypesByEntitySet,
+            Map<UUID, DelegatedUUIDSet> linkingEntitySets ) {
+        Set<UUID> normalEntitySets = linkingEntitySets.getOrDefault(
+                entitySetId, DelegatedUUIDSet.wrap( ImmutableSet.of( entitySetId ) ) );
+
+        // authorized property types are the same within 1 linking entity set (no need for extra check)
+        return queryTemplates.getEntitySetSearchQuery( entitySetId,
+                searchConstraints,
+                authorizedPropertyTypesByEntitySet.getOrDefault( entitySetId, DelegatedUUIDSet.wrap( Set.of() ) ),
+                normalEntitySets,
+                linkingEntitySets.containsKey( entitySetId ) );
+    }
+
+    /**
+     * Documents of a normal entity set all live on the shard picked by its routing, so a search of a single normal
+     * entity set only has to ask that shard. Linked entity documents span entity sets and are not routed.
+     */
+    private void routeToEntitySet(
+            SearchRequestBuilder request,
+            UUID entitySetId,
+            Map<UUID, DelegatedUUIDSet> linkingEntitySets ) {
+        if ( !linkingEntitySets.containsKey( entitySetId )
+                && versionedIndices.isRoutedByEntitySet( request.request().indices()[ 0 ] ) ) {
+            request.setRouting( entitySetId.toString() );
         }
+    }
 
-        MultiSearchResponse response = client.multiSearch( requests ).actionGet();
-        return getEntityDataKeySearchResult( response );
+    /**
+     * @return The routing of the documents of an entity set in the given index, which depends on how the index was
+     * built rather than on the current configuration.
+     */
+    private String getRouting( String index, UUID entitySetId ) {
+        return versionedIndices.isRoutedByEntitySet( index ) ? entitySetId.toString() : null;
+    }
+
+    private MultiSearchResponse multiSearch( MultiSearchRequest requests ) {
+        MultiSearchResponse response;
+        try {
+            response = client.multiSearch( requests ).actionGet();
+        } catch ( RuntimeException e ) {
+            searchConcurrency.recordFailure( e );
+            throw e;
+        }
+        searchConcurrency.record( response );
+        return response;
     }
 
     @Override
@@ -982,7 +1819,7 @@ public class DatastoreElasticsearchImpl implements ConductorElasticsearchApi {
             String s = ObjectMappers.getJsonMapper().writeValueAsString( updatedFields );
             UpdateRequest updateRequest = new UpdateRequest( ORGANIZATIONS, ORGANIZATION_TYPE, id.toString() )
                     .doc( s, XContentType.JSON );
-            client.update( updateRequest ).actionGet();
+            write( updateRequest );
             return true;
         } catch ( IOException e ) {
             logger.debug( "error updating organization in elasticsearch" );
@@ -1032,8 +1869,7 @@ public class DatastoreElasticsearchImpl implements ConductorElasticsearchApi {
 
         if ( securableObjectType.equals( SecurableObjectType.EntityType ) || securableObjectType
                 .equals( SecurableObjectType.AssociationType ) ) {
-            client.admin().indices()
-                    .delete( new DeleteIndexRequest( getIndexName( objectId ) ) );
+            versionedIndices.delete( getIndexName( objectId ) );
         }
 
         String indexName = indexNamesByObjectType.get( securableObjectType );
@@ -1054,7 +1890,7 @@ public class DatastoreElasticsearchImpl implements ConductorElasticsearchApi {
                     ENTITY_SET_DATA_MODEL,
                     ENTITY_SET_TYPE,
                     entitySet.getId().toString() ).doc( s, XContentType.JSON );
-            client.update( updateRequest ).actionGet();
+            write( updateRequest );
             return true;
         } catch ( IOException e ) {
             logger.debug( "error updating entity set metadata in elasticsearch" );
@@ -1074,7 +1910,7 @@ public class DatastoreElasticsearchImpl implements ConductorElasticsearchApi {
                     ENTITY_SET_DATA_MODEL,
                     ENTITY_SET_TYPE,
                     entitySetId.toString() ).doc( s, XContentType.JSON );
-            client.update( updateRequest ).actionGet();
+            write( updateRequest );
             return true;
         } catch ( IOException e ) {
             logger.debug( "error updating property types of entity set in elasticsearch" );
@@ -1088,9 +1924,9 @@ public class DatastoreElasticsearchImpl implements ConductorElasticsearchApi {
 
         try {
             String s = ObjectMappers.getJsonMapper().writeValueAsString( getOrganizationObject( organization ) );
-            client.prepareIndex( ORGANIZATIONS, ORGANIZATION_TYPE, organization.getId().toString() )
+            write( client.prepareIndex( ORGANIZATIONS, ORGANIZATION_TYPE, organization.getId().toString() )
                     .setSource( s, XContentType.JSON )
-                    .execute().actionGet();
+                    .request() );
             return true;
         } catch ( JsonProcessingException e ) {
             logger.debug( "error creating organization in elasticsearch" );
@@ -1264,6 +2100,81 @@ public class DatastoreElasticsearchImpl implements ConductorElasticsearchApi {
         return new SearchResult( response.getHits().getTotalHits().value, hits );
     }
 
+    /**
+     * Completes a partially typed entity set name or title. Meant for type ahead, so it only matches prefixes of the
+     * words typed so far and only returns the id, name and title of the entity sets.
+     */
+    public SearchResult executeEntitySetSuggest( String prefix, Set<AclKey> authorizedAclKeys, int maxHits ) {
+        if ( !verifyElasticsearchConnection() ) { return new SearchResult( 0, Lists.newArrayList() ); }
+
+        QueryBuilder query = QueryBuilders.boolQuery()
+                .must( getSuggestQuery( prefix ) )
+                .filter( QueryBuilders.idsQuery()
+                        .addIds( authorizedAclKeys.stream().map( aclKey -> aclKey.get( 0 ).toString() )
+                                .toArray( String[]::new ) ) );
+
+        return executeSuggest( ENTITY_SET_DATA_MODEL,
+                query,
+                new String[] {
+                        ENTITY_SET + "." + SerializationConstants.ID_FIELD,
+                        ENTITY_SET + "." + SerializationConstants.NAME_FIELD,
+                        ENTITY_SET + "." + SerializationConstants.TITLE_FIELD },
+                maxHits );
+    }
+
+    /**
+     * Completes a partially typed title of a securable object, returning the id, type and title of the matches.
+     *
+     * @param authorizedAclKeys If present, only the objects with these acl keys are suggested.
+     */
+    public SearchResult executeSecurableObjectSuggest(
+            SecurableObjectType securableObjectType,
+            String prefix,
+            Optional<Set<AclKey>> authorizedAclKeys,
+            int maxHits ) {
+        if ( !verifyElasticsearchConnection() ) { return new SearchResult( 0, Lists.newArrayList() ); }
+
+        final var indexName = indexNamesByObjectType.get( securableObjectType );
+        checkArgument( indexName != null && !ORGANIZATIONS.equals( indexName ),
+                "Suggestions are not supported for %s.",
+                securableObjectType );
+
+        final BoolQueryBuilder query = QueryBuilders.boolQuery().must( getSuggestQuery( prefix ) );
+        authorizedAclKeys.ifPresent( aclKeys -> query.filter( QueryBuilders.idsQuery()
+                .addIds( aclKeys.stream().map( aclKey -> aclKey.get( 0 ).toString() ).toArray( String[]::new ) ) ) );
+
+        return executeSuggest( indexName,
+                query,
+                new String[] {
+                        SerializationConstants.ID_FIELD,
+                        SerializationConstants.TYPE_FIELD,
+                        SerializationConstants.TITLE_FIELD,
+                        SerializationConstants.ENTITY_TYPE + "." + SerializationConstants.ID_FIELD,
+                        SerializationConstants.ENTITY_TYPE + "." + SerializationConstants.TYPE_FIELD,
+                        SerializationConstants.ENTITY_TYPE + "." + SerializationConstants.TITLE_FIELD },
+                maxHits );
+    }
+
+    private QueryBuilder getSuggestQuery( String prefix ) {
+        return QueryBuilders.multiMatchQuery( prefix, SUGGEST_FIELDS ).type( MultiMatchQueryBuilder.Type.BOOL_PREFIX );
+    }
+
+    private SearchResult executeSuggest( String indexName, QueryBuilder query, String[] includes, int maxHits ) {
+        SearchResponse response = client.prepareSearch( indexName )
+                .setQuery( query )
+                .setFetchSource( includes, null )
+                .setSize( maxHits )
+                .setTrackTotalHits( false )
+                .execute()
+                .actionGet();
+
+        List<Map<String, Object>> hits = Lists.newArrayList();
+        for ( SearchHit hit : response.getHits() ) {
+            hits.add( hit.getSourceAsMap() );
+        }
+        return new SearchResult( hits.size(), hits );
+    }
+
     /*** RE-INDEXING ***/
 
     private Function<Object, String> getIdFnForType( SecurableObjectType securableObjectType ) {
@@ -1329,9 +2240,9 @@ public class DatastoreElasticsearchImpl implements ConductorElasticsearchApi {
 
         try {
             String s = ObjectMappers.getJsonMapper().writeValueAsString( obj );
-            client.prepareIndex( index, type, id )
+            write( client.prepareIndex( index, type, id )
                     .setSource( s, XContentType.JSON )
-                    .execute().actionGet();
+                    .request() );
             return true;
         } catch ( JsonProcessingException e ) {
             logger.debug( "error saving object to elasticsearch" );
@@ -1345,10 +2256,78 @@ public class DatastoreElasticsearchImpl implements ConductorElasticsearchApi {
     private boolean deleteObjectById( String index, String type, String id ) {
         if ( !verifyElasticsearchConnection() ) { return false; }
 
-        client.prepareDelete( index, type, id ).execute().actionGet();
+        write( client.prepareDelete( index, type, id ).request() );
         return true;
     }
 
+    /**
+     * Runs a single write against an alias and repeats it on the versions of the alias that are being rebuilt.
+     */
+    private void write( DocWriteRequest<?> request ) {
+        write( request, versionedIndices );
+    }
+
+    private void write( DocWriteRequest<?> request, WriteMirror mirror ) {
+        final DocWriteResponse response;
+        switch ( request.opType() ) {
+            case DELETE:
+                response = client.delete( (DeleteRequest) request ).actionGet();
+                break;
+            case UPDATE:
+                // The updated document is needed to repeat an update on a version that is being rebuilt.
+                response = client.update( ( (UpdateRequest) request ).fetchSource( true ) ).actionGet();
+                break;
+            default:
+                response = client.index( (IndexRequest) request ).actionGet();
+        }
+
+        final var mirrored = mirror.mirror( request, response );
+        if ( !mirrored.isEmpty() ) {
+            bulkIndexer.execute( "rebuild copies of " + request.index() + "/" + request.id(), mirrored.iterator() );
+        }
+    }
+
+    /**
+     * Deletes the documents matching a query one by one. While a version of the index is being rebuilt a delete by
+     * query would miss the matches that are copied into it after the delete ran, whereas deleting each match by id
+     * leaves a tombstone in the new version that keeps the copy from bringing it back.
+     *
+     * @return The number of deleted documents.
+     */
+    private long deleteMatchesById( String alias, String type, QueryBuilder query, UUID entitySetId ) {
+        final var index = versionedIndices.getWriteIndex( alias );
+        final var routing = getRouting( index, entitySetId );
+        final var mirror = versionedIndices.routedBy( entitySetId.toString() );
+        final var keepAlive = TimeValue.timeValueMillis( exportScrollKeepAliveMillis );
+        SearchResponse response = client.prepareSearch( index )
+                .setQuery( query )
+                .setRouting( routing )
+                .setScroll( keepAlive )
+                .setSize( bulkMaxDocuments )
+                .addSort( SortBuilders.fieldSort( FieldSortBuilder.DOC_FIELD_NAME ) )
+                .setFetchSource( false )
+                .get();
+        String scrollId = response.getScrollId();
+        long deleted = 0;
+        try {
+            while ( response.getHits().getHits().length > 0 ) {
+                final Iterator<DocWriteRequest<?>> requests = Stream.of( response.getHits().getHits() )
+                        .map( hit -> (DocWriteRequest<?>) client.prepareDelete( index, type, hit.getId() )
+                                .setRouting( routing )
+                                .request() )
+                        .iterator();
+                final var result = bulkIndexer.execute( "deletion of matches in " + index, requests, mirror );
+                deleted += result.getDocuments() - result.getFailedDocuments();
+
+                response = client.prepareSearchScroll( scrollId ).setScroll( keepAlive ).get();
+                scrollId = response.getScrollId();
+            }
+        } finally {
+            client.prepareClearScroll().addScrollId( scrollId ).execute();
+        }
+        return deleted;
+    }
+
     private MatchQueryBuilder mustMatchQuery( String field, Object value ) {
         return QueryBuilders.matchQuery( field, value ).operator( Operator.AND );
     }
@@ -1436,6 +2415,15 @@ public class DatastoreElasticsearchImpl implements ConductorElasticsearchApi {
         return fieldsMap;
     }
 
+    /**
+     * Rebuilds an index from the given objects without taking it offline. The objects are bulk loaded into a new
+     * version of the index and the alias is only switched over once every chunk has been written, so searches keep
+     * hitting the current version for the whole rebuild and a failed rebuild leaves it untouched.
+     * <p>
+     * Writes keep going to the current version and are repeated on the new one, see {@link VersionedIndices}. The
+     * objects are loaded with the lowest external version, so they never replace a document written since the rebuild
+     * started. Objects changed after the caller read them but before the rebuild started are indexed as read.
+     */
     public boolean triggerIndex(
             String index,
             String type,
@@ -1443,72 +2431,94 @@ public class DatastoreElasticsearchImpl implements ConductorElasticsearchApi {
             Function<Object, String> idFn ) {
         if ( !verifyElasticsearchConnection() ) { return false; }
 
-        BulkRequestBuilder bulkRequest = client.prepareBulk();
+        final var version = VersionedIndices.newVersion( index );
+        try {
+            prepareIndex( index, version ).execute().actionGet();
+        } catch ( IOException e ) {
+            logger.error( "Unable to create new version of index {}", index, e );
+            return false;
+        }
+        try {
+            versionedIndices.startRebuild( index, version );
+        } catch ( RuntimeException e ) {
+            logger.error( "Unable to start rebuild of {} into {}.", index, version, e );
+            versionedIndices.abandon( index, version );
+            return false;
+        }
 
-        client.admin().indices().delete( new DeleteIndexRequest( index ) ).actionGet();
-        createIndex( index );
+        Iterator<DocWriteRequest<?>> requests = StreamUtil.stream( objects )
+                .map( object -> {
+                    try {
+                        String id = idFn.apply( object );
+                        String s = ObjectMappers.getJsonMapper().writeValueAsString( object );
+                        return (DocWriteRequest<?>) client.prepareIndex( version, type, id )
+                                .setSource( s, XContentType.JSON )
+                                .setVersionType( VersionType.EXTERNAL )
+                                .setVersion( 0 )
+                                .request();
+                    } catch ( JsonProcessingException e ) {
+                        logger.error( "Error re-indexing securable object type to index {}", index );
+                        return null;
+                    }
+                } )
+                .filter( Objects::nonNull )
+                .iterator();
 
-        objects.forEach( object -> {
-            try {
-                String id = idFn.apply( object );
-                String s = ObjectMappers.getJsonMapper().writeValueAsString( object );
-                bulkRequest
-                        .add( client.prepareIndex( index, type, id )
-                                .setSource( s, XContentType.JSON ) );
-            } catch ( JsonProcessingException e ) {
-                logger.error( "Error re-indexing securable object type to index {}", index );
+        try {
+            final var result = bulkIndexer.execute( "re-index of " + index, requests );
+            if ( !result.isSuccessful() ) {
+                logger.error( "Re-index of {} failed, keeping the current version.", index );
+                versionedIndices.abandon( index, version );
+                return false;
             }
-        } );
 
-        BulkResponse bulkResponse = bulkRequest.get();
-        if ( bulkResponse.hasFailures() ) {
-            bulkResponse.forEach( item -> logger
-                    .error( "Failure during attempted re-index: {}", item.getFailureMessage() ) );
+            versionedIndices.publish( index, version, defaultNumReplicas );
+        } catch ( RuntimeException e ) {
+            logger.error( "Re-index of {} failed, keeping the current version.", index, e );
+            versionedIndices.abandon( index, version );
+            return false;
         }
-
         return true;
     }
 
+    /**
+     * Reads the connection state published by the {@link ElasticsearchConnectionMonitor}. It is kept up to date in the
+     * background, so this is cheap enough to call at the start of every request.
+     */
     public boolean verifyElasticsearchConnection() {
-        if ( connected ) {
-            if ( !factory.isConnected( client ) ) {
-                connected = false;
-            }
-        } else {
-            client = factory.getClient();
-            if ( client != null ) {
-                connected = true;
-            }
-        }
-        return connected;
+        return connectionMonitor.isConnected();
     }
 
-    @Scheduled( fixedRate = 1800000 )
-    public void verifyRunner() throws UnknownHostException {
-        verifyElasticsearchConnection();
+    public ElasticsearchConnectionMonitor getConnectionMonitor() {
+        return connectionMonitor;
+    }
+
+    public ElasticsearchTaskTracker getTaskTracker() {
+        return taskTracker;
     }
 
     /**
-     * Creates for each authorized property type a map with key of that property type id and puts 1 weights as value.
+     * Subscribes the search query template cache to data model change events, which clear it.
      */
-    private static Map<UUID, Map<String, Float>> getFieldsMap(
-            UUID entitySetId,
-            Map<UUID, DelegatedUUIDSet> authorizedPropertyTypesByEntitySet ) {
-        Map<UUID, Map<String, Float>> fieldsMap = Maps.newHashMap();
-        authorizedPropertyTypesByEntitySet.getOrDefault( entitySetId, DelegatedUUIDSet.wrap( ImmutableSet.of() ) )
-                .forEach( propertyTypeId -> {
-                    String fieldName = getFieldName( propertyTypeId );
-
-                    // authorized property types are the same within 1 linking entity set (no need for extra check)
-                    fieldsMap.put( propertyTypeId, Map.of( fieldName, 1F ) );
-                } );
-        return fieldsMap;
+    public void register( EventBus eventBus ) {
+        eventBus.register( queryTemplates );
+    }
+
+    /**
+     * Has the search query template cache follow permission and data model changes made anywhere in the cluster.
+     */
+    public void register( HazelcastInstance hazelcastInstance ) {
+        queryTemplates.register( hazelcastInstance );
     }
 
     private static String getFieldName( UUID propertyTypeId ) {
         return ENTITY + "." + propertyTypeId;
     }
 
+    private static String getKeywordSubfieldName( UUID propertyTypeId ) {
+        return getFieldName( propertyTypeId ) + "." + KEYWORD_SUBFIELD;
+    }
+
     private static Map<String, Object> getOrganizationObject( Organization organization ) {
         Map<String, Object> organizationObject = Maps.newHashMap();
         organizationObject.put( SerializationConstants.ID_FIELD, organization.getId() );
@@ -0,0 +1,470 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.services;
+
+import com.dataloom.mappers.ObjectMappers;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.geekbeast.rhizome.jobs.HazelcastJobService;
+import com.google.common.collect.Maps;
+import com.openlattice.authorization.AclKey;
+import com.openlattice.authorization.securable.SecurableObjectType;
+import com.openlattice.data.DataGraphManager;
+import com.openlattice.data.EntityDataKey;
+import com.openlattice.data.storage.PostgresEntityDataQueryService;
+import com.openlattice.data.storage.partitions.PartitionManager;
+import com.openlattice.datastore.configuration.SearchTuningConfiguration;
+import com.openlattice.datastore.search.AggregationRequest;
+import com.openlattice.datastore.search.AggregationResult;
+import com.openlattice.datastore.search.CursorDataSearchResult;
+import com.openlattice.datastore.search.SearchCursor;
+import com.openlattice.datastore.search.jobs.EntitySetDataReindexJob;
+import com.openlattice.datastore.search.jobs.EntitySetDataReindexJobState;
+import com.openlattice.datastore.search.jobs.EntitySetPartitionCursor;
+import com.openlattice.edm.EntitySet;
+import com.openlattice.edm.type.PropertyType;
+import com.openlattice.rhizome.hazelcast.DelegatedUUIDSet;
+import com.openlattice.search.SearchService;
+import com.openlattice.search.requests.DataSearchResult;
+import com.openlattice.search.requests.SearchConstraints;
+import com.openlattice.search.requests.SearchResult;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.openlattice.edm.EdmConstants.ID_FQN;
+
+/**
+ * Entity data searches that need more from elasticsearch than {@link SearchService} exposes. Like the search service it
+ * resolves the indices and linked entity sets to search, runs the search against {@link DatastoreElasticsearchImpl}
+ * and loads the matching entities from postgres.
+ * <p>
+ * Callers are expected to have checked read access on the entity sets and to pass in the authorized property types.
+ */
+public class DatastoreSearchService {
+    private static final Logger       logger = LoggerFactory.getLogger( DatastoreSearchService.class );
+    private static final ObjectMapper mapper = ObjectMappers.getJsonMapper();
+
+    private static final Set<EdmPrimitiveTypeKind> NUMERIC_TYPES = EnumSet.of( EdmPrimitiveTypeKind.Byte,
+            EdmPrimitiveTypeKind.SByte,
+            EdmPrimitiveTypeKind.Int16,
+            EdmPrimitiveTypeKind.Int32,
+            EdmPrimitiveTypeKind.Int64,
+            EdmPrimitiveTypeKind.Decimal,
+            EdmPrimitiveTypeKind.Double,
+            EdmPrimitiveTypeKind.Single );
+    private static final Set<EdmPrimitiveTypeKind> DATE_TYPES    = EnumSet.of( EdmPrimitiveTypeKind.Date,
+            EdmPrimitiveTypeKind.DateTimeOffset );
+
+    private final DatastoreElasticsearchImpl     elasticsearchApi;
+    private final EntitySetManager               entitySetManager;
+    private final DataGraphManager               dgm;
+    private final PostgresEntityDataQueryService dataQueryService;
+    private final PartitionManager               partitionManager;
+    private final HazelcastJobService            jobService;
+    private final SearchTuningConfiguration      tuning;
+
+    public DatastoreSearchService(
+            DatastoreElasticsearchImpl elasticsearchApi,
+            EntitySetManager entitySetManager,
+            DataGraphManager dgm,
+            PostgresEntityDataQueryService dataQueryService,
+            PartitionManager partitionManager,
+            HazelcastJobService jobService,
+            SearchTuningConfiguration tuning ) {
+        this.elasticsearchApi = elasticsearchApi;
+        this.entitySetManager = entitySetManager;
+        this.dgm = dgm;
+        this.dataQueryService = dataQueryService;
+        this.partitionManager = partitionManager;
+        this.jobService = jobService;
+        this.tuning = tuning;
+    }
+
+    /**
+     * Returns one page of a search paged with search_after.
+     *
+     * @param searchConstraints The constraints of the search. They must be the same for every page.
+     * @param authorizedPropertyTypesByEntitySet The property types the caller may read, by entity set id.
+     * @param cursor The cursor returned with the previous page, or empty for the first page.
+     */
+    public CursorDataSearchResult executeCursorSearch(
+            SearchConstraints searchConstraints,
+            Map<UUID, Map<UUID, PropertyType>> authorizedPropertyTypesByEntitySet,
+            Optional<String> cursor ) {
+        final var searchCursor = cursor.map( SearchCursor::decode );
+        searchCursor.ifPresent( c -> checkArgument(
+                Set.of( searchConstraints.getEntitySetIds() ).containsAll( c.getPositions().keySet() ),
+                "The search cursor does not belong to a search of these entity sets." ) );
+
+        final var entitySets = entitySetManager.getEntitySetsAsMap( Set.of( searchConstraints.getEntitySetIds() ) );
+
+        final var page = elasticsearchApi.executeCursorSearch( searchConstraints,
+                getEntityTypesByEntitySetId( entitySets ),
+                getAuthorizedPropertyTypeIds( authorizedPropertyTypesByEntitySet ),
+                getLinkingEntitySets( entitySets ),
+                searchCursor );
+
+        return new CursorDataSearchResult( page.getNumHits(),
+                getEntities( page.getEntityDataKeys(), entitySets, authorizedPropertyTypesByEntitySet ),
+                page.getNext().map( SearchCursor::encode ) );
+    }
+
+    /**
+     * Streams every hit of a search to the output stream as a JSON array, one scroll page at a time. The array holds
+     * either the entity data keys of the hits or, when hydrating, the entities themselves.
+     *
+     * @param onBatch Called with the entity data keys of every page before it is written. Pages are scrolled in
+     *                parallel, so it may be called concurrently.
+     * @return The number of hits exported.
+     */
+    public long exportSearch(
+            SearchConstraints searchConstraints,
+            Map<UUID, Map<UUID, PropertyType>> authorizedPropertyTypesByEntitySet,
+            boolean hydrate,
+            Consumer<List<EntityDataKey>> onBatch,
+            OutputStream out ) throws IOException {
+        final var entitySets = entitySetManager.getEntitySetsAsMap( Set.of( searchConstraints.getEntitySetIds() ) );
+
+        try ( JsonGenerator generator = mapper.getFactory().createGenerator( out ) ) {
+            generator.writeStartArray();
+
+            final var exported = elasticsearchApi.scrollSearch( searchConstraints,
+                    getEntityTypesByEntitySetId( entitySets ),
+                    getAuthorizedPropertyTypeIds( authorizedPropertyTypesByEntitySet ),
+                    getLinkingEntitySets( entitySets ),
+                    entityDataKeys -> {
+                        onBatch.accept( entityDataKeys );
+                        final List<?> batch = hydrate
+                                ? getEntities( entityDataKeys, entitySets, authorizedPropertyTypesByEntitySet )
+                                : entityDataKeys;
+                        writeBatch( generator, batch );
+                    } );
+
+            generator.writeEndArray();
+            return exported;
+        }
+    }
+
+    private static void writeBatch( JsonGenerator generator, List<?> batch ) {
+        // Slices are scrolled in parallel, so only one of them may write at a time.
+        synchronized ( generator ) {
+            try {
+                for ( Object element : batch ) {
+                    generator.writeObject( element );
+                }
+                generator.flush();
+            } catch ( IOException e ) {
+                throw new UncheckedIOException( "Unable to write search export.", e );
+            }
+        }
+    }
+
+    /**
+     * Submits a job that re-indexes the data of every normal entity set, one page per entity set partition at a time.
+     * Documents of linked entities are keyed by linking id and rebuilt by the linking pipeline, so linking entity sets
+     * are skipped.
+     *
+     * @return The id of the job, which can be inspected and controlled through the admin jobs endpoints.
+     */
+    public UUID triggerAllEntitySetDataIndex() {
+        final var entitySets = entitySetManager.getEntitySetsAsMap( dataQueryService.getEntitySetCounts().keySet() );
+
+        final List<EntitySetPartitionCursor> cursors = new ArrayList<>();
+        entitySets.values().stream()
+                .filter( entitySet -> !entitySet.isLinking() )
+                .forEach( entitySet -> partitionManager.getEntitySetPartitions( entitySet.getId() )
+                        .forEach( partition -> cursors.add( new EntitySetPartitionCursor( entitySet.getId(),
+                                entitySet.getEntityTypeId(),
+                                partition,
+                                new UUID( 0, 0 ) ) ) ) );
+
+        final var jobId = jobService.submitJob( new EntitySetDataReindexJob( new EntitySetDataReindexJobState(
+                tuning.getReindexWorkers(),
+                tuning.getReindexBatchSize(),
+                cursors.size(),
+                cursors,
+                0 ) ) );
+        logger.info( "Submitted job {} to re-index {} partitions of {} entity sets.",
+                jobId,
+                cursors.size(),
+                entitySets.size() );
+        return jobId;
+    }
+
+    /**
+     * Counts the hits of a search without loading them.
+     *
+     * @param atLeast When positive, counting stops once each entity set has this many hits, so the count is only exact
+     *                below it. Otherwise hits are counted exactly.
+     */
+    public long executeCount(
+            SearchConstraints searchConstraints,
+            Map<UUID, Map<UUID, PropertyType>> authorizedPropertyTypesByEntitySet,
+            int atLeast ) {
+        final var entitySets = entitySetManager.getEntitySetsAsMap( Set.of( searchConstraints.getEntitySetIds() ) );
+
+        return elasticsearchApi.executeCount( searchConstraints,
+                getEntityTypesByEntitySetId( entitySets ),
+                getAuthorizedPropertyTypeIds( authorizedPropertyTypesByEntitySet ),
+                getLinkingEntitySets( entitySets ),
+                atLeast );
+    }
+
+    /**
+     * Suggests entity sets, among those the caller may read, whose name or title starts like the given prefix.
+     */
+    public SearchResult suggestEntitySets( String prefix, Set<AclKey> authorizedAclKeys, int maxHits ) {
+        return elasticsearchApi.executeEntitySetSuggest( prefix, authorizedAclKeys, maxHits );
+    }
+
+    /**
+     * Suggests securable objects of the given type whose title starts like the given prefix, restricted to the given
+     * acl keys if present.
+     */
+    public SearchResult suggestSecurableObjects(
+            SecurableObjectType objectType,
+            String prefix,
+            Optional<Set<AclKey>> authorizedAclKeys,
+            int maxHits ) {
+        return elasticsearchApi.executeSecurableObjectSuggest( objectType, prefix, authorizedAclKeys, maxHits );
+    }
+
+    /**
+     * @return Whether entity data search results are built from the source of the search hits.
+     */
+    public boolean isHydratingFromSource() {
+        return tuning.isHydrateSearchFromSource();
+    }
+
+    /**
+     * Runs an entity data search and builds the result from the source of the hits instead of loading the hits from
+     * postgres. Binary properties are not indexed, so when the caller may read any they are loaded from postgres for
+     * the hits of the entity sets that have them.
+     * <p>
+     * Unlike a search hydrated from postgres, hits are returned with the values of their last indexed version and
+     * values are in their JSON representation.
+     */
+    public DataSearchResult executeSourceSearch(
+            SearchConstraints searchConstraints,
+            Map<UUID, Map<UUID, PropertyType>> authorizedPropertyTypesByEntitySet ) {
+        final var entitySets = entitySetManager.getEntitySetsAsMap( Set.of( searchConstraints.getEntitySetIds() ) );
+
+        final Map<UUID, Set<UUID>> indexedPropertyTypeIds = new HashMap<>();
+        final Map<UUID, Map<UUID, PropertyType>> unindexedPropertyTypes = new HashMap<>();
+        authorizedPropertyTypesByEntitySet.forEach( ( entitySetId, propertyTypes ) -> propertyTypes.values()
+                .forEach( propertyType -> {
+                    if ( propertyType.getDatatype() == EdmPrimitiveTypeKind.Binary ) {
+                        unindexedPropertyTypes.computeIfAbsent( entitySetId, esId -> new HashMap<>() )
+                                .put( propertyType.getId(), propertyType );
+                    } else {
+                        indexedPropertyTypeIds.computeIfAbsent( entitySetId, esId -> new HashSet<>() )
+                                .add( propertyType.getId() );
+                    }
+                } ) );
+
+        final var hits = elasticsearchApi.executeSourceSearch( searchConstraints,
+                getEntityTypesByEntitySetId( entitySets ),
+                getAuthorizedPropertyTypeIds( authorizedPropertyTypesByEntitySet ),
+                getLinkingEntitySets( entitySets ),
+                indexedPropertyTypeIds );
+
+        final Map<EntityDataKey, Map<FullQualifiedName, Set<Object>>> entitiesByKey = Maps
+                .newLinkedHashMapWithExpectedSize( hits.getEntityDataKeys().size() );
+        hits.getEntityDataKeys().forEach( edk -> {
+            final var propertyTypes = authorizedPropertyTypesByEntitySet
+                    .getOrDefault( edk.getEntitySetId(), Map.of() );
+            final Map<FullQualifiedName, Set<Object>> entity = new HashMap<>();
+            entity.put( ID_FQN, Set.of( edk.getEntityKeyId() ) );
+            // A hit has no values if none of its properties are indexed, and the source may still hold property types
+            // that have since been removed or are not readable by the caller.
+            hits.getValues().getOrDefault( edk, Map.of() ).forEach( ( propertyTypeId, values ) -> {
+                final var propertyType = propertyTypes.get( propertyTypeId );
+                if ( propertyType != null ) {
+                    entity.put( propertyType.getType(), values );
+                }
+            } );
+            entitiesByKey.put( edk, entity );
+        } );
+
+        final Map<UUID, List<EntityDataKey>> unindexedHitsByEntitySet = hits.getEntityDataKeys().stream()
+                .filter( edk -> unindexedPropertyTypes.containsKey( edk.getEntitySetId() ) )
+                .collect( Collectors.groupingBy( EntityDataKey::getEntitySetId ) );
+        unindexedHitsByEntitySet.forEach( ( entitySetId, entityDataKeys ) -> getEntities( entityDataKeys,
+                entitySets,
+                Map.of( entitySetId, unindexedPropertyTypes.get( entitySetId ) ) ).forEach( entity -> {
+            final var hit = entitiesByKey
+                    .get( new EntityDataKey( entitySetId, SearchService.getEntityKeyId( entity ) ) );
+            if ( hit != null ) {
+                entity.forEach( ( fqn, values ) -> hit.putIfAbsent( fqn, values ) );
+            }
+        } ) );
+
+        return new DataSearchResult( hits.getNumHits(), new ArrayList<>( entitiesByKey.values() ) );
+    }
+
+    /**
+     * Aggregates the entities of normal entity sets that match a search.
+     *
+     * @param authorizedPropertyTypesByEntitySet The property types the caller may read, by entity set id. Every
+     *                                           aggregated property type must be readable in all the entity sets.
+     */
+    public AggregationResult executeAggregation(
+            AggregationRequest request,
+            Map<UUID, Map<UUID, PropertyType>> authorizedPropertyTypesByEntitySet ) {
+        final var searchConstraints = request.getConstraints();
+        final var entitySets = entitySetManager.getEntitySetsAsMap( Set.of( searchConstraints.getEntitySetIds() ) );
+        checkArgument( entitySets.values().stream().noneMatch( EntitySet::isLinking ),
+                "Aggregations over linking entity sets are not supported." );
+
+        final Map<UUID, PropertyType> propertyTypes = new HashMap<>();
+        request.getAggregations().forEach( ( name, aggregation ) -> {
+            checkArgument( aggregation.getType() != null && aggregation.getPropertyTypeId() != null,
+                    "Aggregation %s must have a type and a property type.", name );
+
+            final var propertyType = authorizedPropertyTypesByEntitySet.values().iterator().next()
+                    .get( aggregation.getPropertyTypeId() );
+            final var datatype = propertyType.getDatatype();
+            switch ( aggregation.getType() ) {
+                case TERMS:
+                    checkArgument( datatype != EdmPrimitiveTypeKind.Binary
+                                    && datatype != EdmPrimitiveTypeKind.GeographyPoint,
+                            "Aggregation %s can't count terms of %s values.", name, datatype );
+                    break;
+                case HISTOGRAM:
+                    checkArgument( NUMERIC_TYPES.contains( datatype ),
+                            "Aggregation %s needs a numeric property type.", name );
+                    checkArgument( aggregation.getInterval().filter( interval -> interval > 0 ).isPresent(),
+                            "Aggregation %s needs a positive interval.", name );
+                    break;
+                case DATE_HISTOGRAM:
+                    checkArgument( DATE_TYPES.contains( datatype ),
+                            "Aggregation %s needs a date property type.", name );
+                    checkArgument( aggregation.getCalendarInterval().isPresent(),
+                            "Aggregation %s needs a calendar interval.", name );
+                    break;
+                case STATS:
+                    checkArgument( NUMERIC_TYPES.contains( datatype ) || DATE_TYPES.contains( datatype ),
+                            "Aggregation %s needs a numeric or date property type.", name );
+                    break;
+                case GEOHASH_GRID:
+                    checkArgument( datatype == EdmPrimitiveTypeKind.GeographyPoint,
+                            "Aggregation %s needs a geography point property type.", name );
+                    break;
+            }
+            propertyTypes.put( propertyType.getId(), propertyType );
+        } );
+
+        return elasticsearchApi.executeAggregation( searchConstraints,
+                getEntityTypesByEntitySetId( entitySets ),
+                getAuthorizedPropertyTypeIds( authorizedPropertyTypesByEntitySet ),
+                request.getAggregations(),
+                propertyTypes );
+    }
+
+    /**
+     * Loads the entities behind search hits, keeping the order of the hits. Hits of linking entity sets are keyed by
+     * linking id.
+     */
+    List<Map<FullQualifiedName, Set<Object>>> getEntities(
+            List<EntityDataKey> entityDataKeys,
+            Map<UUID, EntitySet> entitySets,
+            Map<UUID, Map<UUID, PropertyType>> authorizedPropertyTypesByEntitySet ) {
+        final Map<UUID, Set<UUID>> entityKeyIdsByEntitySet = new LinkedHashMap<>();
+        entityDataKeys.forEach( edk -> entityKeyIdsByEntitySet
+                .computeIfAbsent( edk.getEntitySetId(), esId -> new LinkedHashSet<>() )
+                .add( edk.getEntityKeyId() ) );
+
+        final Map<EntityDataKey, Map<FullQualifiedName, Set<Object>>> entitiesByKey = Maps
+                .newHashMapWithExpectedSize( entityDataKeys.size() );
+
+        entityKeyIdsByEntitySet.forEach( ( entitySetId, entityKeyIds ) -> {
+            final var entitySet = entitySets.get( entitySetId );
+            final var authorizedPropertyTypes = authorizedPropertyTypesByEntitySet.get( entitySetId );
+            final Set<UUID> normalEntitySetIds = entitySet.isLinking()
+                    ? entitySet.getLinkedEntitySets()
+                    : Set.of( entitySetId );
+
+            final LinkedHashSet<String> orderedPropertyNames = authorizedPropertyTypes.values().stream()
+                    .map( pt -> pt.getType().getFullQualifiedNameAsString() )
+                    .collect( Collectors.toCollection( LinkedHashSet::new ) );
+
+            final var entities = dgm.getEntitySetData(
+                    normalEntitySetIds.stream()
+                            .collect( Collectors.toMap( esId -> esId, esId -> Optional.of( entityKeyIds ) ) ),
+                    orderedPropertyNames,
+                    normalEntitySetIds.stream()
+                            .collect( Collectors.toMap( esId -> esId, esId -> authorizedPropertyTypes ) ),
+                    entitySet.isLinking() );
+
+            entities.getEntities().forEach( entity -> entitiesByKey
+                    .put( new EntityDataKey( entitySetId, SearchService.getEntityKeyId( entity ) ), entity ) );
+        } );
+
+        final List<Map<FullQualifiedName, Set<Object>>> results = new ArrayList<>( entityDataKeys.size() );
+        entityDataKeys.forEach( edk -> {
+            final var entity = entitiesByKey.get( edk );
+            if ( entity != null ) {
+                results.add( entity );
+            }
+        } );
+        return results;
+    }
+
+    static Map<UUID, UUID> getEntityTypesByEntitySetId( Map<UUID, EntitySet> entitySets ) {
+        return entitySets.values().stream().collect( Collectors.toMap( EntitySet::getId, EntitySet::getEntityTypeId ) );
+    }
+
+    static Map<UUID, DelegatedUUIDSet> getLinkingEntitySets( Map<UUID, EntitySet> entitySets ) {
+        final Map<UUID, DelegatedUUIDSet> linkingEntitySets = new HashMap<>();
+        entitySets.values().stream()
+                .filter( EntitySet::isLinking )
+                .forEach( es -> linkingEntitySets
+                        .put( es.getId(), DelegatedUUIDSet.wrap( es.getLinkedEntitySets() ) ) );
+        return linkingEntitySets;
+    }
+
+    static Map<UUID, DelegatedUUIDSet> getAuthorizedPropertyTypeIds(
+            Map<UUID, Map<UUID, PropertyType>> authorizedPropertyTypesByEntitySet ) {
+        return authorizedPropertyTypesByEntitySet.entrySet().stream().collect( Collectors.toMap(
+                Map.Entry::getKey,
+                entry -> DelegatedUUIDSet.wrap( new LinkedHashSet<>( entry.getValue().keySet() ) ) ) );
+    }
+}
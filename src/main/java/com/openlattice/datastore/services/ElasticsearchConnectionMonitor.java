@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.services;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.health.HealthCheck;
+import com.codahale.metrics.health.HealthCheckRegistry;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.openlattice.scrunchie.search.ElasticsearchTransportClientFactory;
+import org.elasticsearch.client.Client;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Owns the state of the connection to elasticsearch.
+ * <p>
+ * The transport client is probed on a background thread and the outcome is published through a volatile flag, so
+ * request threads never pay for a connectivity check. While the connection is down a new client is requested from the
+ * factory with exponential backoff and handed to the registered listener once it is connected. The client it replaces
+ * is closed after a grace period, so that requests still running on it aren't cut off.
+ */
+public final class ElasticsearchConnectionMonitor {
+    private static final Logger logger = LoggerFactory.getLogger( ElasticsearchConnectionMonitor.class );
+
+    public static final String HEALTH_CHECK_NAME = "elasticsearch";
+
+    private final ElasticsearchTransportClientFactory factory;
+    private final Consumer<Client>                    onReconnect;
+    private final long                                checkIntervalMillis;
+    private final long                                initialDelayMillis;
+    private final long                                maxDelayMillis;
+    private final long                                closeGraceMillis;
+    private final Set<Client>                         retiredClients = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService            executor;
+
+    private volatile Client  client;
+    private volatile boolean connected;
+    private volatile long    lastCheckMillis;
+    private volatile long    lastConnectedMillis;
+    private volatile int     consecutiveFailures;
+
+    ElasticsearchConnectionMonitor(
+            ElasticsearchTransportClientFactory factory,
+            Client client,
+            Consumer<Client> onReconnect,
+            long checkIntervalMillis,
+            long initialDelayMillis,
+            long maxDelayMillis,
+            long closeGraceMillis ) {
+        this.factory = factory;
+        this.client = client;
+        this.onReconnect = onReconnect;
+        this.checkIntervalMillis = checkIntervalMillis;
+        this.initialDelayMillis = initialDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.closeGraceMillis = closeGraceMillis;
+        this.connected = client != null;
+        this.lastConnectedMillis = System.currentTimeMillis();
+        this.executor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon( true ).setNameFormat( "elasticsearch-monitor-%d" ).build() );
+    }
+
+    void start() {
+        executor.schedule( this::check, checkIntervalMillis, TimeUnit.MILLISECONDS );
+    }
+
+    /**
+     * Stops probing the connection and closes the clients that were replaced by a reconnect and are still within their
+     * grace period. The current client is left to its owner.
+     */
+    void stop() {
+        executor.shutdownNow();
+        retiredClients.forEach( this::close );
+    }
+
+    /**
+     * @return The last observed connection state. Never blocks.
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Exposes the connection state as a gauge and a health check.
+     */
+    public void register( MetricRegistry metricRegistry, HealthCheckRegistry healthCheckRegistry ) {
+        metricRegistry.register( MetricRegistry.name( ElasticsearchConnectionMonitor.class, "connected" ),
+                (Gauge<Integer>) () -> connected ? 1 : 0 );
+        metricRegistry.register( MetricRegistry.name( ElasticsearchConnectionMonitor.class, "consecutiveFailures" ),
+                (Gauge<Integer>) () -> consecutiveFailures );
+        healthCheckRegistry.register( HEALTH_CHECK_NAME, new HealthCheck() {
+            @Override
+            protected Result check() {
+                if ( connected ) {
+                    return Result.healthy( "Connected as of %d ms ago.", System.currentTimeMillis() - lastCheckMillis );
+                }
+                return Result.unhealthy( "Disconnected for %d ms after %d failed reconnect attempts.",
+                        System.currentTimeMillis() - lastConnectedMillis,
+                        consecutiveFailures );
+            }
+        } );
+    }
+
+    private void check() {
+        long nextDelay = checkIntervalMillis;
+        try {
+            if ( client != null && factory.isConnected( client ) ) {
+                markConnected();
+            } else {
+                if ( connected ) {
+                    logger.warn( "Lost connection to elasticsearch, attempting to reconnect." );
+                }
+                connected = false;
+                nextDelay = reconnect();
+            }
+        } catch ( RuntimeException e ) {
+            logger.error( "Unable to check connection to elasticsearch.", e );
+            connected = false;
+            nextDelay = backoffMillis( ++consecutiveFailures );
+        } finally {
+            lastCheckMillis = System.currentTimeMillis();
+            schedule( this::check, nextDelay );
+        }
+    }
+
+    private long reconnect() {
+        final var newClient = factory.getClient();
+        if ( newClient == null || !factory.isConnected( newClient ) ) {
+            final var delay = backoffMillis( ++consecutiveFailures );
+            logger.info( "Reconnect attempt {} to elasticsearch failed, retrying in {} ms.",
+                    consecutiveFailures,
+                    delay );
+            if ( newClient != null ) {
+                newClient.close();
+            }
+            return delay;
+        }
+
+        final var oldClient = client;
+        client = newClient;
+        onReconnect.accept( newClient );
+        markConnected();
+        logger.info( "Reconnected to elasticsearch." );
+
+        if ( oldClient != null ) {
+            retiredClients.add( oldClient );
+            schedule( () -> close( oldClient ), closeGraceMillis );
+        }
+        return checkIntervalMillis;
+    }
+
+    private void close( Client retiredClient ) {
+        if ( retiredClients.remove( retiredClient ) ) {
+            retiredClient.close();
+        }
+    }
+
+    private void schedule( Runnable task, long delayMillis ) {
+        try {
+            executor.schedule( task, delayMillis, TimeUnit.MILLISECONDS );
+        } catch ( RejectedExecutionException e ) {
+            logger.debug( "Not scheduling connection maintenance, the monitor was stopped." );
+        }
+    }
+
+    private void markConnected() {
+        connected = true;
+        consecutiveFailures = 0;
+        lastConnectedMillis = System.currentTimeMillis();
+    }
+
+    private long backoffMillis( int failures ) {
+        return Math.min( maxDelayMillis, initialDelayMillis << Math.min( failures - 1, 30 ) );
+    }
+}
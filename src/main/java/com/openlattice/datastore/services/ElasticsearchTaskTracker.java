@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.services;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.index.reindex.BulkByScrollResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.OffsetDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of long running by-query elasticsearch operations started by this node, such as clearing the documents of
+ * an entity set or rebuilding an index, so that their progress can be polled through the admin api.
+ * <p>
+ * Tasks are only known to the node that started them. Finished tasks are forgotten after the retention period.
+ */
+public class ElasticsearchTaskTracker {
+    private static final Logger logger = LoggerFactory.getLogger( ElasticsearchTaskTracker.class );
+
+    private final Cache<UUID, TaskStatus> tasks;
+
+    public ElasticsearchTaskTracker( long retentionMillis ) {
+        this.tasks = CacheBuilder.newBuilder()
+                .expireAfterWrite( retentionMillis, TimeUnit.MILLISECONDS )
+                .build();
+    }
+
+    /**
+     * Registers a new task and returns the listener that must be notified once it completes.
+     */
+    TrackedTask start( String description ) {
+        final var status = new TaskStatus( UUID.randomUUID(), description );
+        tasks.put( status.getId(), status );
+        return new TrackedTask( status );
+    }
+
+    public Optional<TaskStatus> getTask( UUID taskId ) {
+        return Optional.ofNullable( tasks.getIfPresent( taskId ) );
+    }
+
+    public Map<UUID, TaskStatus> getTasks() {
+        return Map.copyOf( tasks.asMap() );
+    }
+
+    final class TrackedTask implements ActionListener<BulkByScrollResponse> {
+        private final TaskStatus status;
+
+        private TrackedTask( TaskStatus status ) {
+            this.status = status;
+        }
+
+        UUID getId() {
+            return status.getId();
+        }
+
+        @Override
+        public void onResponse( BulkByScrollResponse response ) {
+            status.complete( response );
+            // Re-insert so that the retention period starts when the task finishes.
+            tasks.put( status.getId(), status );
+            logger.info( "Task {} ({}) finished in {}: {} created, {} updated, {} deleted, {} conflicts, {} failures.",
+                    status.getId(),
+                    status.getDescription(),
+                    response.getTook(),
+                    response.getCreated(),
+                    response.getUpdated(),
+                    response.getDeleted(),
+                    response.getVersionConflicts(),
+                    status.getFailures() );
+        }
+
+        @Override
+        public void onFailure( Exception e ) {
+            status.fail( e );
+            tasks.put( status.getId(), status );
+            logger.error( "Task {} ({}) failed.", status.getId(), status.getDescription(), e );
+        }
+    }
+
+    public enum TaskState {
+        RUNNING,
+        SUCCEEDED,
+        FAILED
+    }
+
+    /**
+     * Progress of a tracked task. Counts are only filled in once the task has finished.
+     */
+    public static class TaskStatus {
+        private final    UUID           id;
+        private final    String         description;
+        private final    OffsetDateTime started;
+        private volatile TaskState      state    = TaskState.RUNNING;
+        private volatile OffsetDateTime finished;
+        private volatile long           created;
+        private volatile long           updated;
+        private volatile long           deleted;
+        private volatile long           batches;
+        private volatile long           versionConflicts;
+        private volatile long           failures;
+        private volatile String         error;
+
+        private TaskStatus( UUID id, String description ) {
+            this.id = id;
+            this.description = description;
+            this.started = OffsetDateTime.now();
+        }
+
+        private void complete( BulkByScrollResponse response ) {
+            created = response.getCreated();
+            updated = response.getUpdated();
+            deleted = response.getDeleted();
+            batches = response.getBatches();
+            versionConflicts = response.getVersionConflicts();
+            failures = response.getBulkFailures().size() + response.getSearchFailures().size();
+            if ( failures > 0 || response.isTimedOut() ) {
+                state = TaskState.FAILED;
+                error = response.isTimedOut() ? "Timed out." : failures + " documents could not be processed.";
+            } else {
+                state = TaskState.SUCCEEDED;
+            }
+            finished = OffsetDateTime.now();
+        }
+
+        private void fail( Exception e ) {
+            error = e.getMessage();
+            state = TaskState.FAILED;
+            finished = OffsetDateTime.now();
+        }
+
+        @JsonProperty( "id" )
+        public UUID getId() {
+            return id;
+        }
+
+        @JsonProperty( "description" )
+        public String getDescription() {
+            return description;
+        }
+
+        @JsonProperty( "state" )
+        public TaskState getState() {
+            return state;
+        }
+
+        @JsonProperty( "started" )
+        public OffsetDateTime getStarted() {
+            return started;
+        }
+
+        @JsonProperty( "finished" )
+        public Optional<OffsetDateTime> getFinished() {
+            return Optional.ofNullable( finished );
+        }
+
+        @JsonProperty( "created" )
+        public long getCreated() {
+            return created;
+        }
+
+        @JsonProperty( "updated" )
+        public long getUpdated() {
+            return updated;
+        }
+
+        @JsonProperty( "deleted" )
+        public long getDeleted() {
+            return deleted;
+        }
+
+        @JsonProperty( "batches" )
+        public long getBatches() {
+            return batches;
+        }
+
+        @JsonProperty( "versionConflicts" )
+        public long getVersionConflicts() {
+            return versionConflicts;
+        }
+
+        @JsonProperty( "failures" )
+        public long getFailures() {
+            return failures;
+        }
+
+        @JsonProperty( "error" )
+        public Optional<String> getError() {
+            return Optional.ofNullable( error );
+        }
+    }
+}
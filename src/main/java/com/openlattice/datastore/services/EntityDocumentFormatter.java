@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.services;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Turns property values into the entity documents of the data indices. Implementations must produce equivalent
+ * documents, up to field order, and are picked by the document format of the search tuning configuration.
+ */
+public interface EntityDocumentFormatter {
+    /**
+     * Top level keyword field holding the id of the document, the entity key id of an entity or the linking id of a
+     * linked entity. Unlike _id it has doc values, so it can be sorted on without loading fielddata.
+     */
+    String ENTITY_KEY_ID_FIELD = "entityKeyId";
+
+    /**
+     * @param entitySetId The entity set the entity belongs to.
+     * @param entityKeyId The entity key id of the entity.
+     * @param entity Property values of the entity mapped by property type id.
+     * @return The serialized document or null if it could not be serialized.
+     */
+    byte[] formatEntity( UUID entitySetId, UUID entityKeyId, Map<UUID, Set<Object>> entity );
+
+    /**
+     * @param linkingId The linking id of the linked entity.
+     * @param entityValues Property values of a linked entity mapped by the normal entity set id, normal entity key id
+     *                     and property type ids respectively.
+     * @return The serialized document or null if it could not be serialized.
+     */
+    byte[] formatLinkedEntity( UUID linkingId, Map<UUID, Map<UUID, Map<UUID, Set<Object>>>> entityValues );
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.openlattice.IdConstants.ENTITY_SET_ID_KEY_ID;
+import static com.openlattice.IdConstants.ID_ID;
+import static com.openlattice.conductor.rpc.ConductorElasticsearchApi.ENTITY;
+import static com.openlattice.conductor.rpc.ConductorElasticsearchApi.ENTITY_SET_ID_FIELD;
+
+/**
+ * Writes entity documents for the data indices straight from property value maps, without building intermediate maps.
+ * <p>
+ * The output is equivalent to serializing the document maps with the supplied mapper, up to field order. Field names
+ * are precomputed per property type id and values that are not plain strings, numbers, booleans or ids are handed to
+ * the mapper, so dates and other types keep their existing representation. Each thread reuses its own output buffer,
+ * so the only allocation per document is the returned array.
+ */
+public final class EntityDocumentSerializer implements EntityDocumentFormatter {
+    private static final Logger logger = LoggerFactory.getLogger( EntityDocumentSerializer.class );
+
+    private static final SerializableString ENTITY_NAME              = new SerializedString( ENTITY );
+    private static final SerializableString ENTITY_SET_ID_FIELD_NAME = new SerializedString( ENTITY_SET_ID_FIELD );
+    private static final SerializableString ENTITY_KEY_ID_FIELD_NAME = new SerializedString( ENTITY_KEY_ID_FIELD );
+
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+
+    private final ObjectMapper                            mapper;
+    private final ConcurrentMap<UUID, SerializableString> fieldNames = new ConcurrentHashMap<>();
+    private final ThreadLocal<ByteArrayBuilder>           buffers    = ThreadLocal
+            .withInitial( () -> new ByteArrayBuilder( INITIAL_BUFFER_SIZE ) );
+
+    public EntityDocumentSerializer( ObjectMapper mapper ) {
+        this.mapper = mapper;
+    }
+
+    @Override
+    public byte[] formatEntity( UUID entitySetId, UUID entityKeyId, Map<UUID, Set<Object>> entity ) {
+        final var buffer = acquireBuffer();
+        try ( JsonGenerator generator = mapper.getFactory().createGenerator( buffer ) ) {
+            generator.writeStartObject();
+            generator.writeFieldName( ENTITY_NAME );
+            writeEntity( generator, entity );
+            generator.writeFieldName( fieldName( ENTITY_SET_ID_KEY_ID.getId() ) );
+            generator.writeString( entitySetId.toString() );
+            generator.writeEndObject();
+
+            generator.writeFieldName( ENTITY_SET_ID_FIELD_NAME );
+            generator.writeString( entitySetId.toString() );
+            generator.writeFieldName( ENTITY_KEY_ID_FIELD_NAME );
+            generator.writeString( entityKeyId.toString() );
+            generator.writeEndObject();
+        } catch ( IOException e ) {
+            logger.debug( "error creating entity data", e );
+            return null;
+        }
+        return buffer.toByteArray();
+    }
+
+    @Override
+    public byte[] formatLinkedEntity( UUID linkingId, Map<UUID, Map<UUID, Map<UUID, Set<Object>>>> entityValues ) {
+        final var buffer = acquireBuffer();
+        try ( JsonGenerator generator = mapper.getFactory().createGenerator( buffer ) ) {
+            generator.writeStartObject();
+            generator.writeFieldName( ENTITY_NAME );
+            generator.writeStartArray();
+
+            for ( var esEntry : entityValues.entrySet() ) {
+                final var entitySetId = esEntry.getKey().toString();
+                for ( var ekEntry : esEntry.getValue().entrySet() ) {
+                    writeEntity( generator, ekEntry.getValue() );
+                    generator.writeFieldName( fieldName( ID_ID.getId() ) );
+                    generator.writeString( ekEntry.getKey().toString() );
+                    generator.writeFieldName( fieldName( ENTITY_SET_ID_KEY_ID.getId() ) );
+                    generator.writeString( entitySetId );
+                    generator.writeEndObject();
+                }
+            }
+
+            generator.writeEndArray();
+            generator.writeFieldName( ENTITY_KEY_ID_FIELD_NAME );
+            generator.writeString( linkingId.toString() );
+            generator.writeEndObject();
+        } catch ( IOException e ) {
+            logger.debug( "error creating linked entity data", e );
+            return null;
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Opens an object and writes the property values into it. The caller appends any extra fields and closes it.
+     */
+    private void writeEntity( JsonGenerator generator, Map<UUID, Set<Object>> entity ) throws IOException {
+        generator.writeStartObject();
+        for ( var property : entity.entrySet() ) {
+            generator.writeFieldName( fieldName( property.getKey() ) );
+            final var values = property.getValue();
+            if ( values == null ) {
+                generator.writeNull();
+                continue;
+            }
+
+            generator.writeStartArray();
+            for ( Object value : values ) {
+                writeValue( generator, value );
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    private void writeValue( JsonGenerator generator, Object value ) throws IOException {
+        if ( value instanceof String ) {
+            generator.writeString( (String) value );
+        } else if ( value instanceof UUID ) {
+            generator.writeString( value.toString() );
+        } else if ( value instanceof Integer ) {
+            generator.writeNumber( (Integer) value );
+        } else if ( value instanceof Long ) {
+            generator.writeNumber( (Long) value );
+        } else if ( value instanceof Double ) {
+            generator.writeNumber( (Double) value );
+        } else if ( value instanceof Boolean ) {
+            generator.writeBoolean( (Boolean) value );
+        } else {
+            mapper.writeValue( generator, value );
+        }
+    }
+
+    private SerializableString fieldName( UUID propertyTypeId ) {
+        return fieldNames.computeIfAbsent( propertyTypeId, id -> new SerializedString( id.toString() ) );
+    }
+
+    /**
+     * Resetting keeps the most recent block of the builder, which Jackson caps in size, so a thread never retains more
+     * than one bounded block between documents.
+     */
+    private ByteArrayBuilder acquireBuffer() {
+        final var buffer = buffers.get();
+        buffer.reset();
+        return buffer;
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.openlattice.data.DataGraphManager;
+import com.openlattice.data.EntitySetData;
+import com.openlattice.data.storage.EntityDatastore;
+import com.openlattice.data.storage.partitions.PartitionManager;
+import com.openlattice.data.requests.FileType;
+import com.openlattice.datastore.configuration.DataReadConfiguration;
+import com.openlattice.datastore.data.EntitySetDataCursor;
+import com.openlattice.datastore.data.EntitySetDataPage;
+import com.openlattice.edm.type.PropertyType;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Reads entity set data for the data api in ways the data graph manager does not offer on its own.
+ */
+public class EntitySetDataService {
+    private static final Logger logger = LoggerFactory.getLogger( EntitySetDataService.class );
+
+    public static final String APPLICATION_ARROW_STREAM_VALUE = "application/vnd.apache.arrow.stream";
+
+    private final DataGraphManager      dgm;
+    private final EntityDatastore       replicaDatastore;
+    private final PartitionManager      partitionManager;
+    private final EntityKeyIdPager      entityKeyIdPager;
+    private final ObjectMapper          mapper;
+    private final CsvMapper             csvMapper;
+    private final BufferAllocator       allocator = new RootAllocator( Long.MAX_VALUE );
+    private final DataReadConfiguration config;
+    private final ExecutorService       partitionReaders;
+
+    /**
+     * @param replicaDatastore Reads entities from the read replica, for the partitioned reads of whole entity sets.
+     */
+    public EntitySetDataService(
+            DataGraphManager dgm,
+            EntityDatastore replicaDatastore,
+            PartitionManager partitionManager,
+            EntityKeyIdPager entityKeyIdPager,
+            ObjectMapper mapper,
+            DataReadConfiguration config ) {
+        this.dgm = dgm;
+        this.replicaDatastore = replicaDatastore;
+        this.partitionManager = partitionManager;
+        this.entityKeyIdPager = entityKeyIdPager;
+        this.mapper = mapper;
+        this.config = config;
+        this.csvMapper = new CsvMapper();
+        this.csvMapper.registerModule( new JavaTimeModule() );
+        this.csvMapper.disable( SerializationFeature.WRITE_DATES_AS_TIMESTAMPS );
+        this.partitionReaders = Executors.newFixedThreadPool( config.getPartitionReadThreads(),
+                new ThreadFactoryBuilder().setDaemon( true ).setNameFormat( "partition-reader-%d" ).build() );
+    }
+
+    /**
+     * Writes entity set data to the output stream row by row, as a JSON array of entities or as CSV with one column per
+     * column title. Rows are pulled from the cursor backing the data and never collected, and the output is flushed
+     * at a fixed interval of rows, so a download holds a bounded number of rows in memory whatever its size.
+     *
+     * @return The number of rows written.
+     */
+    public long writeEntitySetData(
+            EntitySetData<FullQualifiedName> data,
+            FileType fileType,
+            OutputStream out ) throws IOException {
+        return write( data.getColumnTitles(), data.getEntities().iterator(), fileType, out );
+    }
+
+    /**
+     * Writes all entities of a normal entity set like
+     * {@link #writeEntitySetData(EntitySetData, FileType, OutputStream)}, but reads them with
+     * {@link PartitionedEntitySetDataReader}, several partitions at a time on the read replica, so that large downloads
+     * scale with the number of partitions instead of being bound to a single query.
+     *
+     * @param orderedPropertyTypes The property types to write, in column order.
+     * @param authorizedPropertyTypes The authorized property types of the entity set, keyed by entity set id.
+     * @return The number of rows written.
+     */
+    public long writeEntitySetData(
+            UUID entitySetId,
+            List<PropertyType> orderedPropertyTypes,
+            Map<UUID, Map<UUID, PropertyType>> authorizedPropertyTypes,
+            FileType fileType,
+            OutputStream out ) throws IOException {
+        final var columnTitles = getPropertyNames( orderedPropertyTypes );
+        return write( columnTitles,
+                readPartitions( entitySetId, columnTitles, authorizedPropertyTypes ),
+                fileType,
+                out );
+    }
+
+    /**
+     * Writes entity set data to the output stream as an Apache Arrow IPC stream with one typed list column per property
+     * type. Rows are pulled from the cursor backing the data in record batches of downloadFlushRows rows.
+     *
+     * @param propertyTypes The property types to write, in column order.
+     * @return The number of rows written.
+     */
+    public long writeArrow(
+            EntitySetData<FullQualifiedName> data,
+            List<PropertyType> propertyTypes,
+            OutputStream out ) throws IOException {
+        return writeArrow( propertyTypes, data.getEntities().iterator(), out );
+    }
+
+    /**
+     * Writes all entities of a normal entity set like {@link #writeArrow(EntitySetData, List, OutputStream)}, reading
+     * several partitions at a time like {@link #writeEntitySetData(UUID, List, Map, FileType, OutputStream)}.
+     */
+    public long writeArrow(
+            UUID entitySetId,
+            List<PropertyType> orderedPropertyTypes,
+            Map<UUID, Map<UUID, PropertyType>> authorizedPropertyTypes,
+            OutputStream out ) throws IOException {
+        return writeArrow( orderedPropertyTypes,
+                readPartitions( entitySetId, getPropertyNames( orderedPropertyTypes ), authorizedPropertyTypes ),
+                out );
+    }
+
+    /**
+     * Reads one page of a normal entity set with keyset paging over its partitions. Each page picks up right after the
+     * last entity key id returned from each partition, so every page costs the same no matter how deep into the entity
+     * set it is, and neither side has to hold more than one page.
+     * <p>
+     * Entities are visited by partition and then by entity key id. Entities written to a partition after it has been
+     * passed or moved between partitions by a repartition while paging may be missed or returned twice.
+     *
+     * @param cursor The cursor returned with the previous page, or empty for the first page.
+     * @param pageSize The maximum number of entities to return.
+     */
+    public EntitySetDataPage getEntitySetDataPage(
+            UUID entitySetId,
+            LinkedHashSet<String> orderedPropertyNames,
+            Map<UUID, Map<UUID, PropertyType>> authorizedPropertyTypes,
+            Optional<String> cursor,
+            int pageSize ) {
+        checkArgument( pageSize > 0 && pageSize <= config.getMaxPageSize(),
+                "Page size must be between 1 and %s.", config.getMaxPageSize() );
+
+        final TreeMap<Integer, UUID> positions = cursor
+                .map( token -> EntitySetDataCursor.decode( token ).getPositions() )
+                .orElseGet( () -> getFirstPositions( entitySetId ) );
+
+        final List<UUID> entityKeyIds = new ArrayList<>( pageSize );
+        final TreeMap<Integer, UUID> next = new TreeMap<>( positions );
+        for ( Map.Entry<Integer, UUID> position : positions.entrySet() ) {
+            final int remaining = pageSize - entityKeyIds.size();
+            if ( remaining == 0 ) {
+                break;
+            }
+
+            final var page = entityKeyIdPager
+                    .getPage( entitySetId, position.getKey(), position.getValue(), remaining );
+            entityKeyIds.addAll( page );
+            if ( page.size() < remaining ) {
+                next.remove( position.getKey() );
+            } else {
+                next.put( position.getKey(), page.get( page.size() - 1 ) );
+            }
+        }
+
+        final Optional<String> nextCursor = next.isEmpty()
+                ? Optional.empty()
+                : Optional.of( new EntitySetDataCursor( next ).encode() );
+        if ( entityKeyIds.isEmpty() ) {
+            return new EntitySetDataPage( List.of(), nextCursor );
+        }
+
+        final var data = dgm.getEntitySetData(
+                Map.of( entitySetId, Optional.of( Set.copyOf( entityKeyIds ) ) ),
+                orderedPropertyNames,
+                authorizedPropertyTypes,
+                false );
+        final List<Map<FullQualifiedName, Set<Object>>> entities = new ArrayList<>( entityKeyIds.size() );
+        data.getEntities().forEach( entities::add );
+
+        return new EntitySetDataPage( entities, nextCursor );
+    }
+
+    private PartitionedEntitySetDataReader readPartitions(
+            UUID entitySetId,
+            LinkedHashSet<String> orderedPropertyNames,
+            Map<UUID, Map<UUID, PropertyType>> authorizedPropertyTypes ) {
+        final var pageSize = config.getPartitionReadPageSize();
+        return new PartitionedEntitySetDataReader( entitySetId,
+                partitionManager.getEntitySetPartitions( entitySetId ),
+                ( partition, lastEntityKeyId ) -> entityKeyIdPager
+                        .getPage( entitySetId, partition, lastEntityKeyId, pageSize ),
+                entityKeyIds -> replicaDatastore.getEntitySetData(
+                        Map.of( entitySetId, Optional.of( entityKeyIds ) ),
+                        orderedPropertyNames,
+                        authorizedPropertyTypes,
+                        false ).getEntities(),
+                partitionReaders,
+                config.getPartitionReadParallelism(),
+                pageSize );
+    }
+
+    private long write(
+            Set<String> columnTitles,
+            Iterator<Map<FullQualifiedName, Set<Object>>> entities,
+            FileType fileType,
+            OutputStream out ) throws IOException {
+        try {
+            return fileType == FileType.csv
+                    ? writeCsv( columnTitles, entities, out )
+                    : writeJson( entities, out );
+        } finally {
+            close( entities );
+        }
+    }
+
+    private long writeArrow(
+            List<PropertyType> propertyTypes,
+            Iterator<Map<FullQualifiedName, Set<Object>>> entities,
+            OutputStream out ) throws IOException {
+        try {
+            return new ArrowEntitySetDataWriter( allocator, config.getDownloadFlushRows() )
+                    .write( propertyTypes, entities, out );
+        } finally {
+            close( entities );
+        }
+    }
+
+    private static LinkedHashSet<String> getPropertyNames( List<PropertyType> orderedPropertyTypes ) {
+        return orderedPropertyTypes.stream()
+                .map( pt -> pt.getType().getFullQualifiedNameAsString() )
+                .collect( Collectors.toCollection( LinkedHashSet::new ) );
+    }
+
+    private TreeMap<Integer, UUID> getFirstPositions( UUID entitySetId ) {
+        final TreeMap<Integer, UUID> positions = new TreeMap<>();
+        partitionManager.getEntitySetPartitions( entitySetId )
+                .forEach( partition -> positions.put( partition, EntityKeyIdPager.FIRST_ENTITY_KEY_ID ) );
+        return positions;
+    }
+
+    private long writeJson( Iterator<Map<FullQualifiedName, Set<Object>>> entities, OutputStream out )
+            throws IOException {
+        final var flushRows = config.getDownloadFlushRows();
+        long written = 0;
+        try ( JsonGenerator generator = mapper.getFactory().createGenerator( out ) ) {
+            generator.writeStartArray();
+            while ( entities.hasNext() ) {
+                generator.writeObject( entities.next() );
+                if ( ++written % flushRows == 0 ) {
+                    generator.flush();
+                }
+            }
+            generator.writeEndArray();
+        }
+        return written;
+    }
+
+    private long writeCsv(
+            Set<String> columnTitles,
+            Iterator<Map<FullQualifiedName, Set<Object>>> entities,
+            OutputStream out ) throws IOException {
+        final var schemaBuilder = CsvSchema.builder();
+        columnTitles.forEach( title -> schemaBuilder.addColumn( title, CsvSchema.ColumnType.ARRAY ) );
+        final var schema = schemaBuilder.setUseHeader( true ).build();
+
+        final Map<String, FullQualifiedName> columns = new LinkedHashMap<>( columnTitles.size() );
+        columnTitles.forEach( title -> columns.put( title, new FullQualifiedName( title ) ) );
+
+        final var flushRows = config.getDownloadFlushRows();
+        long written = 0;
+        try ( SequenceWriter writer = csvMapper.writer( schema ).writeValues( out ) ) {
+            while ( entities.hasNext() ) {
+                final var entity = entities.next();
+                final Map<String, Set<Object>> row = new LinkedHashMap<>( columns.size() );
+                columns.forEach( ( title, fqn ) -> row.put( title, entity.getOrDefault( fqn, Set.of() ) ) );
+                writer.write( row );
+                if ( ++written % flushRows == 0 ) {
+                    writer.flush();
+                }
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Aborted downloads must still give the database cursor back.
+     */
+    private static void close( Iterator<?> entities ) {
+        if ( entities instanceof AutoCloseable ) {
+            try {
+                ( (AutoCloseable) entities ).close();
+            } catch ( Exception e ) {
+                logger.warn( "Unable to close entity set data cursor.", e );
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.services;
+
+import org.elasticsearch.action.bulk.BulkRequest;
+
+/**
+ * Caps chunks by a fixed number of documents and estimated payload size.
+ */
+final class FixedBulkChunkSizer implements BulkChunkSizer {
+    private final int  maxDocuments;
+    private final long maxBytes;
+
+    FixedBulkChunkSizer( int maxDocuments, long maxBytes ) {
+        this.maxDocuments = maxDocuments;
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public boolean isFull( BulkRequest chunk ) {
+        return chunk.numberOfActions() >= maxDocuments || chunk.estimatedSizeInBytes() >= maxBytes;
+    }
+
+    @Override
+    public void recordSuccess( int documents, long tookMillis ) {
+    }
+
+    @Override
+    public void recordRejection() {
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.services;
+
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.map.listener.EntryAddedListener;
+import com.hazelcast.map.listener.EntryRemovedListener;
+import com.hazelcast.map.listener.EntryUpdatedListener;
+
+import java.util.function.Consumer;
+
+/**
+ * Hands the key of every entry added to, updated in or removed from a Hazelcast map to a callback.
+ * <p>
+ * Map events are delivered to every member that registered a listener, so local caches cleared through it see changes
+ * made anywhere in the cluster. Register it without values, since only the key is used.
+ */
+final class MapChangeListener<K> implements EntryAddedListener<K, Object>,
+        EntryUpdatedListener<K, Object>,
+        EntryRemovedListener<K, Object> {
+    private final Consumer<K> onChange;
+
+    MapChangeListener( Consumer<K> onChange ) {
+        this.onChange = onChange;
+    }
+
+    @Override
+    public void entryAdded( EntryEvent<K, Object> event ) {
+        onChange.accept( event.getKey() );
+    }
+
+    @Override
+    public void entryUpdated( EntryEvent<K, Object> event ) {
+        onChange.accept( event.getKey() );
+    }
+
+    @Override
+    public void entryRemoved( EntryEvent<K, Object> event ) {
+        onChange.accept( event.getKey() );
+    }
+}
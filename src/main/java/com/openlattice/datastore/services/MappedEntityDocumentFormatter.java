@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static com.openlattice.IdConstants.ENTITY_SET_ID_KEY_ID;
+import static com.openlattice.IdConstants.ID_ID;
+import static com.openlattice.conductor.rpc.ConductorElasticsearchApi.ENTITY;
+import static com.openlattice.conductor.rpc.ConductorElasticsearchApi.ENTITY_SET_ID_FIELD;
+
+/**
+ * Builds entity documents as maps and serializes them with the object mapper. This is the original way documents were
+ * written and the reference {@link EntityDocumentSerializer} is measured against.
+ */
+public final class MappedEntityDocumentFormatter implements EntityDocumentFormatter {
+    private static final Logger logger = LoggerFactory.getLogger( MappedEntityDocumentFormatter.class );
+
+    private final ObjectMapper mapper;
+
+    public MappedEntityDocumentFormatter( ObjectMapper mapper ) {
+        this.mapper = mapper;
+    }
+
+    @Override
+    public byte[] formatEntity( UUID entitySetId, UUID entityKeyId, Map<UUID, Set<Object>> entity ) {
+        Map<Object, Object> values = new HashMap<>( entity.size() + 1 );
+        entity.forEach( values::put );
+        values.put( ENTITY_SET_ID_KEY_ID.getId(), entitySetId );
+
+        try {
+            return mapper.writeValueAsBytes( ImmutableMap.of( ENTITY,
+                    values,
+                    ENTITY_SET_ID_FIELD,
+                    entitySetId,
+                    ENTITY_KEY_ID_FIELD,
+                    entityKeyId ) );
+        } catch ( JsonProcessingException e ) {
+            logger.debug( "error creating entity data", e );
+            return null;
+        }
+    }
+
+    @Override
+    public byte[] formatLinkedEntity( UUID linkingId, Map<UUID, Map<UUID, Map<UUID, Set<Object>>>> entityValues ) {
+        List<Map<Object, Object>> documents = entityValues.entrySet().stream().flatMap( esEntry -> {
+            final var entitySetId = esEntry.getKey();
+            return esEntry.getValue().entrySet().stream().map( ekEntry -> {
+                Map<Object, Object> values = new HashMap<>( ekEntry.getValue().size() + 2 );
+                ekEntry.getValue().forEach( values::put );
+                values.put( ID_ID.getId(), ekEntry.getKey() );
+                values.put( ENTITY_SET_ID_KEY_ID.getId(), entitySetId );
+                return values;
+            } );
+        } ).collect( Collectors.toList() );
+
+        try {
+            return mapper.writeValueAsBytes( ImmutableMap.of( ENTITY, documents, ENTITY_KEY_ID_FIELD, linkingId ) );
+        } catch ( JsonProcessingException e ) {
+            logger.debug( "error creating linked entity data", e );
+            return null;
+        }
+    }
+}
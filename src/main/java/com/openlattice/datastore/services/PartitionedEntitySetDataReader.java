@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.services;
+
+import com.google.common.base.Throwables;
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Reads all entities of a normal entity set by fanning out over its partitions and merges them into one iterator.
+ * <p>
+ * Up to a fixed number of partitions are read at once on a shared executor, each one page of entity key ids at a time
+ * with keyset paging, after which the rows of the page are loaded. Both are expected to come from the read replica.
+ * Rows are handed to the consumer through a bounded queue, so readers block once the consumer falls behind and at most
+ * a few pages per reader are held in memory. Rows of different partitions are interleaved.
+ * Closing the iterator before it is exhausted stops the readers after their current page. If a reader fails, the others
+ * stop too and the iterator throws the failure instead of returning further rows.
+ */
+final class PartitionedEntitySetDataReader implements Iterator<Map<FullQualifiedName, Set<Object>>>, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger( PartitionedEntitySetDataReader.class );
+
+    private static final Map<FullQualifiedName, Set<Object>> END = Collections.unmodifiableMap( new HashMap<>() );
+
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    private final UUID                                                               entitySetId;
+    private final BiFunction<Integer, UUID, List<UUID>>                              entityKeyIdPages;
+    private final Function<Set<UUID>, Iterable<Map<FullQualifiedName, Set<Object>>>> entityLoader;
+    private final int                                                                pageSize;
+    private final Queue<Integer>                                                     pendingPartitions;
+    private final BlockingQueue<Map<FullQualifiedName, Set<Object>>>                 rows;
+    private final AtomicInteger                                                      activeReaders;
+    private final AtomicReference<Throwable>                                         failure = new AtomicReference<>();
+
+    private volatile boolean                             closed = false;
+    private          Map<FullQualifiedName, Set<Object>> next;
+
+    /**
+     * @param entityKeyIdPages Reads the page of at most pageSize entity key ids of a partition that follows the given
+     *                         entity key id, see {@link EntityKeyIdPager}.
+     * @param entityLoader     Loads the rows of the entities with the given entity key ids.
+     */
+    PartitionedEntitySetDataReader(
+            UUID entitySetId,
+            Collection<Integer> partitions,
+            BiFunction<Integer, UUID, List<UUID>> entityKeyIdPages,
+            Function<Set<UUID>, Iterable<Map<FullQualifiedName, Set<Object>>>> entityLoader,
+            ExecutorService executor,
+            int parallelism,
+            int pageSize ) {
+        this.entitySetId = entitySetId;
+        this.entityKeyIdPages = entityKeyIdPages;
+        this.entityLoader = entityLoader;
+        this.pageSize = pageSize;
+        this.pendingPartitions = new ConcurrentLinkedQueue<>( partitions );
+
+        final var readers = Math.max( 1, Math.min( parallelism, partitions.size() ) );
+        this.rows = new ArrayBlockingQueue<>( readers * pageSize );
+        this.activeReaders = new AtomicInteger( readers );
+        for ( int i = 0; i < readers; ++i ) {
+            executor.execute( this::readPartitions );
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if ( next == null ) {
+            try {
+                next = rows.take();
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new IllegalStateException( "Interrupted while reading entity set " + entitySetId, e );
+            }
+        }
+
+        if ( next == END ) {
+            final var e = failure.get();
+            if ( e != null ) {
+                Throwables.throwIfUnchecked( e );
+                throw new IllegalStateException( "Unable to read entity set " + entitySetId, e );
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public Map<FullQualifiedName, Set<Object>> next() {
+        if ( !hasNext() ) {
+            throw new NoSuchElementException();
+        }
+        final var row = next;
+        next = null;
+        return row;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        rows.clear();
+    }
+
+    private void readPartitions() {
+        try {
+            Integer partition;
+            while ( !closed && ( partition = pendingPartitions.poll() ) != null ) {
+                readPartition( partition );
+            }
+        } catch ( Throwable e ) {
+            logger.error( "Unable to read partitions of entity set {}.", entitySetId, e );
+            if ( failure.compareAndSet( null, e ) ) {
+                // Rows still queued are dropped, so that the consumer sees the failure right away.
+                closed = true;
+                do {
+                    rows.clear();
+                } while ( !rows.offer( END ) );
+            }
+        } finally {
+            if ( activeReaders.decrementAndGet() == 0 && failure.get() == null ) {
+                put( END );
+            }
+        }
+    }
+
+    private void readPartition( int partition ) {
+        var lastEntityKeyId = EntityKeyIdPager.FIRST_ENTITY_KEY_ID;
+        while ( !closed ) {
+            final var entityKeyIds = entityKeyIdPages.apply( partition, lastEntityKeyId );
+            if ( entityKeyIds.isEmpty() ) {
+                return;
+            }
+
+            for ( Map<FullQualifiedName, Set<Object>> row : entityLoader.apply( Set.copyOf( entityKeyIds ) ) ) {
+                put( row );
+            }
+
+            if ( entityKeyIds.size() < pageSize ) {
+                return;
+            }
+            lastEntityKeyId = entityKeyIds.get( entityKeyIds.size() - 1 );
+        }
+    }
+
+    private void put( Map<FullQualifiedName, Set<Object>> row ) {
+        try {
+            while ( !closed && !rows.offer( row, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS ) ) {
+                // Keep checking whether the consumer went away while waiting for room.
+            }
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException( "Interrupted while reading entity set " + entitySetId, e );
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.services;
+
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.rest.RestStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decides how many searches of a multi search request elasticsearch may run at once.
+ * <p>
+ * With a fixed limit the configured value is used as is, and a limit of zero leaves the choice to elasticsearch, which
+ * derives it from the number of data nodes and the size of their search thread pools. In adaptive mode the limit is
+ * adjusted after every multi search: it grows by one while searches finish within the target latency, shrinks by one
+ * when they take more than twice as long and is halved whenever the cluster rejects a search.
+ */
+final class SearchConcurrencyLimiter {
+    private static final Logger logger = LoggerFactory.getLogger( SearchConcurrencyLimiter.class );
+
+    private static final int MIN_LIMIT              = 1;
+    private static final int DEFAULT_ADAPTIVE_LIMIT = 64;
+    private static final int INITIAL_LIMIT          = 3;
+
+    private final boolean adaptive;
+    private final int     maxLimit;
+    private final long    targetLatencyMillis;
+
+    private volatile int limit;
+
+    SearchConcurrencyLimiter( int maxConcurrentSearches, boolean adaptive, long targetLatencyMillis ) {
+        this.adaptive = adaptive;
+        this.maxLimit = maxConcurrentSearches > 0 ? maxConcurrentSearches : DEFAULT_ADAPTIVE_LIMIT;
+        this.targetLatencyMillis = targetLatencyMillis;
+        this.limit = adaptive ? Math.min( INITIAL_LIMIT, maxLimit ) : maxConcurrentSearches;
+    }
+
+    MultiSearchRequest newRequest() {
+        final var request = new MultiSearchRequest();
+        final var currentLimit = limit;
+        if ( currentLimit > 0 ) {
+            request.maxConcurrentSearchRequests( currentLimit );
+        }
+        return request;
+    }
+
+    /**
+     * Feeds the outcome of a multi search back into the limit. Does nothing unless running in adaptive mode.
+     */
+    void record( MultiSearchResponse response ) {
+        if ( !adaptive ) {
+            return;
+        }
+
+        var rejected = false;
+        for ( MultiSearchResponse.Item item : response.getResponses() ) {
+            if ( item.isFailure() && isRejection( item.getFailure() ) ) {
+                rejected = true;
+                break;
+            }
+        }
+
+        adjust( response.getTook().millis(), rejected );
+    }
+
+    void recordFailure( Exception e ) {
+        if ( adaptive && isRejection( e ) ) {
+            adjust( 0, true );
+        }
+    }
+
+    private synchronized void adjust( long tookMillis, boolean rejected ) {
+        final var previous = limit;
+        if ( rejected ) {
+            limit = Math.max( MIN_LIMIT, previous / 2 );
+        } else if ( tookMillis <= targetLatencyMillis ) {
+            limit = Math.min( maxLimit, previous + 1 );
+        } else if ( tookMillis > 2 * targetLatencyMillis ) {
+            limit = Math.max( MIN_LIMIT, previous - 1 );
+        }
+
+        if ( limit != previous ) {
+            logger.debug( "Adjusted concurrent searches from {} to {} (took {} ms, rejected: {}).",
+                    previous,
+                    limit,
+                    tookMillis,
+                    rejected );
+        }
+    }
+
+    private static boolean isRejection( Exception e ) {
+        return ExceptionsHelper.unwrapCause( e ) instanceof EsRejectedExecutionException
+                || ExceptionsHelper.status( e ) == RestStatus.TOO_MANY_REQUESTS;
+    }
+}
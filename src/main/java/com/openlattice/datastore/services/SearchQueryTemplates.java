@@ -0,0 +1,480 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.services;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.Subscribe;
+import com.hazelcast.core.HazelcastInstance;
+import com.openlattice.authorization.AceKey;
+import com.openlattice.edm.events.EntitySetDeletedEvent;
+import com.openlattice.edm.events.EntityTypeDeletedEvent;
+import com.openlattice.edm.events.LinkedEntitySetAddedEvent;
+import com.openlattice.edm.events.LinkedEntitySetRemovedEvent;
+import com.openlattice.edm.events.PropertyTypesInEntitySetUpdatedEvent;
+import com.openlattice.hazelcast.HazelcastMap;
+import com.openlattice.search.requests.Constraint;
+import com.openlattice.search.requests.ConstraintGroup;
+import com.openlattice.search.requests.SearchConstraints;
+import com.openlattice.search.requests.SearchDetails;
+import org.apache.lucene.search.join.ScoreMode;
+import org.elasticsearch.common.geo.GeoPoint;
+import org.elasticsearch.common.unit.DistanceUnit;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.RangeQueryBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.openlattice.IdConstants.ENTITY_SET_ID_KEY_ID;
+import static com.openlattice.IdConstants.LAST_WRITE_ID;
+import static com.openlattice.conductor.rpc.ConductorElasticsearchApi.ENTITY;
+import static com.openlattice.conductor.rpc.ConductorElasticsearchApi.ENTITY_SET_ID_FIELD;
+
+/**
+ * Caches the parts of an entity set search query that do not depend on the search terms.
+ * <p>
+ * A template is compiled once per entity set, authorized property type set, linked entity sets and constraint shape,
+ * i.e. the constraint groups with their search types, property types and flags but without terms, dates or
+ * coordinates. It holds the resolved field maps of every constraint along with the entity set filters, which are
+ * shared between requests and never modified after compilation. Binding a request only creates the leaf queries for
+ * its terms.
+ * <p>
+ * Permissions are part of the key, so a change in what a caller may read simply compiles a new template. Templates are
+ * still dropped once they can no longer be hit: a permission or entity set change on any member drops the templates of
+ * that entity set and a property type change clears the cache. Data model events of this member clear it as well.
+ */
+final class SearchQueryTemplates {
+    private final Cache<TemplateKey, QueryTemplate> templates;
+
+    SearchQueryTemplates( long maximumSize ) {
+        this.templates = CacheBuilder.newBuilder().maximumSize( maximumSize ).build();
+    }
+
+    /**
+     * @return The search query for one entity set or null if none of the constraints apply to the authorized property
+     * types.
+     */
+    QueryBuilder getEntitySetSearchQuery(
+            UUID entitySetId,
+            SearchConstraints searchConstraints,
+            Set<UUID> authorizedPropertyTypes,
+            Set<UUID> normalEntitySets,
+            boolean linking ) {
+        final var key = new TemplateKey( entitySetId,
+                ImmutableSet.copyOf( authorizedPropertyTypes ),
+                ImmutableSet.copyOf( normalEntitySets ),
+                linking,
+                getShape( searchConstraints ) );
+        try {
+            return templates.get( key, () -> compile( key, searchConstraints ) ).bind( searchConstraints );
+        } catch ( ExecutionException e ) {
+            throw new IllegalStateException( "Unable to compile search query for entity set " + entitySetId, e );
+        }
+    }
+
+    void invalidateAll() {
+        templates.invalidateAll();
+    }
+
+    /**
+     * Drops the templates of an entity set and of the linking entity sets that include it.
+     */
+    void invalidateEntitySet( UUID entitySetId ) {
+        templates.asMap().keySet().removeIf( key -> key.entitySetId.equals( entitySetId )
+                || key.normalEntitySets.contains( entitySetId ) );
+    }
+
+    /**
+     * Listens for permission, entity set and property type changes made on any member of the cluster.
+     */
+    void register( HazelcastInstance hazelcastInstance ) {
+        HazelcastMap.PERMISSIONS.getMap( hazelcastInstance ).addEntryListener(
+                new MapChangeListener<AceKey>( aceKey -> invalidateEntitySet( aceKey.getAclKey().get( 0 ) ) ),
+                false );
+        HazelcastMap.ENTITY_SETS.getMap( hazelcastInstance )
+                .addEntryListener( new MapChangeListener<UUID>( this::invalidateEntitySet ), false );
+        HazelcastMap.PROPERTY_TYPES.getMap( hazelcastInstance )
+                .addEntryListener( new MapChangeListener<UUID>( propertyTypeId -> invalidateAll() ), false );
+    }
+
+    @Subscribe
+    public void onEntitySetDeleted( EntitySetDeletedEvent event ) {
+        invalidateAll();
+    }
+
+    @Subscribe
+    public void onEntityTypeDeleted( EntityTypeDeletedEvent event ) {
+        invalidateAll();
+    }
+
+    @Subscribe
+    public void onLinkedEntitySetAdded( LinkedEntitySetAddedEvent event ) {
+        invalidateAll();
+    }
+
+    @Subscribe
+    public void onLinkedEntitySetRemoved( LinkedEntitySetRemovedEvent event ) {
+        invalidateAll();
+    }
+
+    @Subscribe
+    public void onPropertyTypesInEntitySetUpdated( PropertyTypesInEntitySetUpdatedEvent event ) {
+        invalidateAll();
+    }
+
+    /**
+     * Describes the constraints without their terms. Two searches with equal shapes compile to the same template.
+     */
+    private static List<Object> getShape( SearchConstraints searchConstraints ) {
+        final List<Object> shape = new ArrayList<>();
+        shape.add( searchConstraints.getEntitySetIds().length );
+        for ( ConstraintGroup constraintGroup : searchConstraints.getConstraintGroups() ) {
+            shape.add( constraintGroup.getMinimumMatches() );
+            for ( Constraint constraint : constraintGroup.getConstraints() ) {
+                shape.add( constraint.getSearchType().name() );
+                switch ( constraint.getSearchType() ) {
+                    case advanced:
+                        for ( SearchDetails search : constraint.getSearches().get() ) {
+                            shape.add( search.getPropertyType() );
+                            shape.add( search.getExactMatch() );
+                        }
+                        break;
+                    case geoDistance:
+                    case geoPolygon:
+                        shape.add( constraint.getPropertyTypeId().get() );
+                        break;
+                    case simple:
+                        shape.add( constraint.getFuzzy().get() );
+                        break;
+                    case writeDateTimeFilter:
+                        break;
+                }
+            }
+            shape.add( null );
+        }
+        return shape;
+    }
+
+    private static QueryTemplate compile( TemplateKey key, SearchConstraints searchConstraints ) {
+        if ( key.authorizedPropertyTypes.isEmpty() ) {
+            return QueryTemplate.EMPTY;
+        }
+
+        final Map<UUID, Map<String, Float>> fieldsMap = key.authorizedPropertyTypes.stream()
+                .collect( ImmutableMap.toImmutableMap( id -> id, id -> Map.of( getFieldName( id ), 1F ) ) );
+        final Map<String, Float> allFields = fieldsMap.values().stream()
+                .flatMap( fields -> fields.entrySet().stream() )
+                .collect( ImmutableMap.toImmutableMap( Map.Entry::getKey, Map.Entry::getValue ) );
+
+        final var groups = searchConstraints.getConstraintGroups().stream()
+                .map( group -> new GroupTemplate( group.getMinimumMatches(), group.getConstraints().stream()
+                        .map( constraint -> compile( constraint, fieldsMap, allFields ) )
+                        .collect( ImmutableList.toImmutableList() ) ) )
+                .collect( ImmutableList.toImmutableList() );
+
+        final BoolQueryBuilder entitySetQuery = QueryBuilders.boolQuery().minimumShouldMatch( 1 );
+        key.normalEntitySets.forEach( entitySetId -> entitySetQuery.should(
+                QueryBuilders.termQuery( getFieldName( ENTITY_SET_ID_KEY_ID.getId() ), entitySetId.toString() ) ) );
+
+        final QueryBuilder documentFilter = key.linking
+                // this field will not exist for linked entity documents
+                ? QueryBuilders.existsQuery( ENTITY_SET_ID_FIELD )
+                : QueryBuilders.termQuery( ENTITY_SET_ID_FIELD, key.entitySetId.toString() );
+
+        return new QueryTemplate( key.entitySetId.toString(),
+                groups,
+                QueryBuilders.nestedQuery( ENTITY, entitySetQuery, ScoreMode.Max ),
+                documentFilter,
+                key.linking );
+    }
+
+    private static ConstraintTemplate compile(
+            Constraint constraint,
+            Map<UUID, Map<String, Float>> fieldsMap,
+            Map<String, Float> allFields ) {
+        switch ( constraint.getSearchType() ) {
+            case advanced:
+                return new ConstraintTemplate( ConstraintType.ADVANCED,
+                        constraint.getSearches().get().stream()
+                                .map( search -> fieldsMap.get( search.getPropertyType() ) )
+                                .collect( Collectors.toList() ),
+                        ImmutableList.of() );
+            case geoDistance:
+                return new ConstraintTemplate( ConstraintType.GEO_DISTANCE,
+                        ImmutableList.of(),
+                        getFieldNames( constraint.getPropertyTypeId().get(), fieldsMap ) );
+            case geoPolygon:
+                return new ConstraintTemplate( ConstraintType.GEO_POLYGON,
+                        ImmutableList.of(),
+                        getFieldNames( constraint.getPropertyTypeId().get(), fieldsMap ) );
+            case simple:
+                return new ConstraintTemplate( ConstraintType.SIMPLE,
+                        ImmutableList.of( allFields ),
+                        ImmutableList.of() );
+            case writeDateTimeFilter:
+            default:
+                return new ConstraintTemplate( ConstraintType.WRITE_DATE_TIME,
+                        ImmutableList.of(),
+                        ImmutableList.of( getFieldName( LAST_WRITE_ID.getId() ) ) );
+        }
+    }
+
+    private static List<String> getFieldNames( UUID propertyTypeId, Map<UUID, Map<String, Float>> fieldsMap ) {
+        return ImmutableList.copyOf( fieldsMap.getOrDefault( propertyTypeId, Map.of() ).keySet() );
+    }
+
+    private static String getFieldName( UUID propertyTypeId ) {
+        return ENTITY + "." + propertyTypeId;
+    }
+
+    private static String getFormattedFuzzyString( String searchTerm ) {
+        return Stream.of( searchTerm.split( " " ) )
+                .map( term -> term.endsWith( "~" ) || term.endsWith( "\"" ) ? term : term + "~" )
+                .collect( Collectors.joining( " " ) );
+    }
+
+    private enum ConstraintType {
+        ADVANCED,
+        GEO_DISTANCE,
+        GEO_POLYGON,
+        SIMPLE,
+        WRITE_DATE_TIME
+    }
+
+    /**
+     * The resolved fields of one constraint. For advanced searches there is one entry per search, null if the property
+     * type of that search is not authorized.
+     */
+    private static final class ConstraintTemplate {
+        private final ConstraintType            type;
+        private final List<Map<String, Float>> fields;
+        private final List<String>             fieldNames;
+
+        private ConstraintTemplate( ConstraintType type, List<Map<String, Float>> fields, List<String> fieldNames ) {
+            this.type = type;
+            this.fields = fields;
+            this.fieldNames = fieldNames;
+        }
+
+        private QueryBuilder bind( Constraint constraint, int numEntitySets ) {
+            switch ( type ) {
+                case ADVANCED:
+                    return bindAdvanced( constraint );
+                case GEO_DISTANCE:
+                    return bindGeoDistance( constraint );
+                case GEO_POLYGON:
+                    return bindGeoPolygon( constraint );
+                case SIMPLE:
+                    final var searchTerm = constraint.getSearchTerm().get();
+                    return QueryBuilders
+                            .queryStringQuery( constraint.getFuzzy().get()
+                                    ? getFormattedFuzzyString( searchTerm )
+                                    : searchTerm )
+                            .fields( fields.get( 0 ) )
+                            .lenient( true );
+                case WRITE_DATE_TIME:
+                default:
+                    return bindWriteDateTime( constraint, numEntitySets );
+            }
+        }
+
+        private BoolQueryBuilder bindAdvanced( Constraint constraint ) {
+            final BoolQueryBuilder query = QueryBuilders.boolQuery().minimumShouldMatch( 1 );
+            final var searches = constraint.getSearches().get();
+            for ( int i = 0; i < searches.size(); ++i ) {
+                final var searchFields = fields.get( i );
+                if ( searchFields == null ) {
+                    continue;
+                }
+
+                final var search = searches.get( i );
+                final var queryString = QueryBuilders.queryStringQuery( search.getSearchTerm() )
+                        .fields( searchFields )
+                        .lenient( true );
+                if ( search.getExactMatch() ) {
+                    query.must( queryString );
+                    query.minimumShouldMatch( 0 );
+                } else {
+                    query.should( queryString );
+                }
+            }
+            return query;
+        }
+
+        private BoolQueryBuilder bindGeoDistance( Constraint constraint ) {
+            final BoolQueryBuilder query = QueryBuilders.boolQuery().minimumShouldMatch( 1 );
+            final double latitude = constraint.getLatitude().get();
+            final double longitude = constraint.getLongitude().get();
+            final double radius = constraint.getRadius().get();
+            final var unit = DistanceUnit.fromString( constraint.getDistanceUnit().get().name() );
+
+            fieldNames.forEach( fieldName -> query.should( QueryBuilders
+                    .geoDistanceQuery( fieldName )
+                    .point( latitude, longitude )
+                    .distance( radius, unit ) ) );
+            return query;
+        }
+
+        private BoolQueryBuilder bindGeoPolygon( Constraint constraint ) {
+            final BoolQueryBuilder query = QueryBuilders.boolQuery().minimumShouldMatch( 1 );
+            if ( fieldNames.isEmpty() ) {
+                return query;
+            }
+
+            for ( List<List<Double>> zone : constraint.getZones().get() ) {
+                final List<GeoPoint> polygon = zone.stream()
+                        .map( pair -> new GeoPoint( pair.get( 1 ), pair.get( 0 ) ) )
+                        .collect( Collectors.toList() );
+                fieldNames.forEach( fieldName -> query.should( QueryBuilders.geoPolygonQuery( fieldName, polygon ) ) );
+            }
+            return query;
+        }
+
+        private BoolQueryBuilder bindWriteDateTime( Constraint constraint, int numEntitySets ) {
+            final BoolQueryBuilder query = QueryBuilders.boolQuery().minimumShouldMatch( 1 );
+            for ( int i = 0; i < numEntitySets; i++ ) {
+                final RangeQueryBuilder rangeQuery = QueryBuilders.rangeQuery( fieldNames.get( 0 ) );
+                constraint.getStartDate().ifPresent( startDate -> rangeQuery.gt( startDate.toString() ) );
+                constraint.getEndDate().ifPresent( endDate -> rangeQuery.lte( endDate.toString() ) );
+                query.should( rangeQuery );
+            }
+            return query;
+        }
+    }
+
+    private static final class GroupTemplate {
+        private final int                      minimumMatches;
+        private final List<ConstraintTemplate> constraints;
+
+        private GroupTemplate( int minimumMatches, List<ConstraintTemplate> constraints ) {
+            this.minimumMatches = minimumMatches;
+            this.constraints = constraints;
+        }
+    }
+
+    private static final class QueryTemplate {
+        private static final QueryTemplate EMPTY = new QueryTemplate( null, null, null, null, false );
+
+        private final String              queryName;
+        private final List<GroupTemplate> groups;
+        private final QueryBuilder        entitySetQuery;
+        private final QueryBuilder        documentFilter;
+        private final boolean             linking;
+
+        private QueryTemplate(
+                String queryName,
+                List<GroupTemplate> groups,
+                QueryBuilder entitySetQuery,
+                QueryBuilder documentFilter,
+                boolean linking ) {
+            this.queryName = queryName;
+            this.groups = groups;
+            this.entitySetQuery = entitySetQuery;
+            this.documentFilter = documentFilter;
+            this.linking = linking;
+        }
+
+        private QueryBuilder bind( SearchConstraints searchConstraints ) {
+            if ( groups == null ) {
+                return null;
+            }
+
+            final BoolQueryBuilder searchQuery = QueryBuilders.boolQuery();
+            final var constraintGroups = searchConstraints.getConstraintGroups();
+            for ( int i = 0; i < groups.size(); ++i ) {
+                final var group = groups.get( i );
+                final var constraints = constraintGroups.get( i ).getConstraints();
+                final BoolQueryBuilder subQuery = QueryBuilders.boolQuery()
+                        .minimumShouldMatch( group.minimumMatches );
+
+                for ( int j = 0; j < group.constraints.size(); ++j ) {
+                    final var constraintQuery = group.constraints.get( j )
+                            .bind( constraints.get( j ), searchConstraints.getEntitySetIds().length );
+                    if ( !( constraintQuery instanceof BoolQueryBuilder )
+                            || ( (BoolQueryBuilder) constraintQuery ).hasClauses() ) {
+                        subQuery.should( constraintQuery );
+                    }
+                }
+
+                if ( !subQuery.hasClauses() ) {
+                    return null;
+                }
+
+                searchQuery.must( QueryBuilders.nestedQuery( ENTITY, subQuery, ScoreMode.Total ) );
+            }
+            searchQuery.must( entitySetQuery );
+
+            final BoolQueryBuilder query = QueryBuilders.boolQuery().queryName( queryName ).must( searchQuery );
+            return linking ? query.mustNot( documentFilter ) : query.must( documentFilter );
+        }
+    }
+
+    private static final class TemplateKey {
+        private final UUID         entitySetId;
+        private final Set<UUID>    authorizedPropertyTypes;
+        private final Set<UUID>    normalEntitySets;
+        private final boolean      linking;
+        private final List<Object> shape;
+
+        private TemplateKey(
+                UUID entitySetId,
+                Set<UUID> authorizedPropertyTypes,
+                Set<UUID> normalEntitySets,
+                boolean linking,
+                List<Object> shape ) {
+            this.entitySetId = entitySetId;
+            this.authorizedPropertyTypes = authorizedPropertyTypes;
+            this.normalEntitySets = normalEntitySets;
+            this.linking = linking;
+            this.shape = shape;
+        }
+
+        @Override
+        public boolean equals( Object o ) {
+            if ( this == o ) { return true; }
+            if ( !( o instanceof TemplateKey ) ) { return false; }
+            TemplateKey that = (TemplateKey) o;
+            return linking == that.linking &&
+                    entitySetId.equals( that.entitySetId ) &&
+                    authorizedPropertyTypes.equals( that.authorizedPropertyTypes ) &&
+                    normalEntitySets.equals( that.normalEntitySets ) &&
+                    shape.equals( that.shape );
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash( entitySetId, authorizedPropertyTypes, normalEntitySets, linking, shape );
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.services;
+
+import com.dataloom.mappers.ObjectMappers;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.hazelcast.core.HazelcastInstance;
+import com.openlattice.authorization.AceKey;
+import com.openlattice.edm.type.PropertyType;
+import com.openlattice.hazelcast.HazelcastMap;
+import com.openlattice.search.requests.DataSearchResult;
+import com.openlattice.search.requests.SearchConstraints;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Short lived cache of entity data search results, for screens that poll the same search every few seconds.
+ * <p>
+ * Results are keyed by the normalized search constraints and the property types the caller may read on each searched
+ * entity set, so callers with different permissions never share results. Every result is also indexed by the searched
+ * entity sets and their entity types. It is dropped as soon as documents of one of those entity types are written or
+ * deleted through this node, and, once registered with {@link #register(HazelcastInstance)}, as soon as permissions on
+ * one of the entity sets or the entity sets themselves change anywhere in the cluster. Property type changes drop every
+ * result.
+ * <p>
+ * Entity data written by other nodes or directly to the database is not tracked. Such writes only show up in cached
+ * results once they expire, so the time to live bounds how stale a result can be.
+ */
+public final class SearchResultCache {
+    private static final Logger       logger = LoggerFactory.getLogger( SearchResultCache.class );
+    private static final ObjectMapper mapper = ObjectMappers.newJsonMapper()
+            .configure( SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true );
+
+    private final boolean                             enabled;
+    private final Function<Set<UUID>, Set<UUID>>      entityTypeResolver;
+    private final Cache<ResultKey, CachedResult>      results;
+    private final ConcurrentMap<UUID, Set<ResultKey>> keysByEntityType = new ConcurrentHashMap<>();
+    private final ConcurrentMap<UUID, Set<ResultKey>> keysByEntitySet  = new ConcurrentHashMap<>();
+    private final AtomicLong                          generation       = new AtomicLong();
+
+    /**
+     * @param entityTypeResolver Maps entity set ids to the ids of their entity types.
+     */
+    public SearchResultCache(
+            boolean enabled,
+            long ttlMillis,
+            long maximumSize,
+            Function<Set<UUID>, Set<UUID>> entityTypeResolver ) {
+        this.enabled = enabled;
+        this.entityTypeResolver = entityTypeResolver;
+        this.results = CacheBuilder.newBuilder()
+                .expireAfterWrite( ttlMillis, TimeUnit.MILLISECONDS )
+                .maximumSize( maximumSize )
+                .removalListener( this::onRemoval )
+                .build();
+    }
+
+    /**
+     * Returns the cached result of an identical search by a caller with the same authorized property types, or runs the
+     * search and caches its result.
+     */
+    public DataSearchResult get(
+            SearchConstraints searchConstraints,
+            Map<UUID, Map<UUID, PropertyType>> authorizedPropertyTypesByEntitySet,
+            Supplier<DataSearchResult> search ) {
+        if ( !enabled ) {
+            return search.get();
+        }
+
+        final ResultKey key;
+        try {
+            key = new ResultKey( mapper.writeValueAsString( searchConstraints ),
+                    authorizedPropertyTypesByEntitySet.entrySet().stream().collect( ImmutableMap.toImmutableMap(
+                            Map.Entry::getKey,
+                            entry -> ImmutableSet.copyOf( entry.getValue().keySet() ) ) ) );
+        } catch ( JsonProcessingException e ) {
+            logger.warn( "Unable to normalize search constraints, skipping the result cache.", e );
+            return search.get();
+        }
+
+        final var cached = results.getIfPresent( key );
+        if ( cached != null ) {
+            return cached.result;
+        }
+
+        final var startGeneration = generation.get();
+        final var entitySetIds = ImmutableSet.copyOf( searchConstraints.getEntitySetIds() );
+        final var entityTypeIds = ImmutableSet.copyOf( entityTypeResolver.apply( entitySetIds ) );
+        final var result = search.get();
+
+        entityTypeIds.forEach( entityTypeId -> keysByEntityType
+                .computeIfAbsent( entityTypeId, id -> ConcurrentHashMap.newKeySet() )
+                .add( key ) );
+        entitySetIds.forEach( entitySetId -> keysByEntitySet
+                .computeIfAbsent( entitySetId, id -> ConcurrentHashMap.newKeySet() )
+                .add( key ) );
+        results.put( key, new CachedResult( result, entityTypeIds, entitySetIds ) );
+
+        // A write or permission change that landed while the search was running may not be reflected in its result.
+        if ( generation.get() != startGeneration ) {
+            results.invalidate( key );
+        }
+        return result;
+    }
+
+    /**
+     * Drops every cached result that includes an entity set of the given entity type.
+     */
+    public void invalidateEntityType( UUID entityTypeId ) {
+        invalidate( keysByEntityType, entityTypeId );
+    }
+
+    /**
+     * Drops every cached result that includes the given entity set.
+     */
+    public void invalidateEntitySet( UUID entitySetId ) {
+        invalidate( keysByEntitySet, entitySetId );
+    }
+
+    /**
+     * Drops every cached result.
+     */
+    public void invalidateAll() {
+        if ( !enabled ) {
+            return;
+        }
+
+        generation.incrementAndGet();
+        results.invalidateAll();
+    }
+
+    /**
+     * Has the cache follow permission and data model changes made anywhere in the cluster.
+     */
+    public void register( HazelcastInstance hazelcastInstance ) {
+        if ( !enabled ) {
+            return;
+        }
+
+        HazelcastMap.PERMISSIONS.getMap( hazelcastInstance ).addEntryListener(
+                new MapChangeListener<AceKey>( aceKey -> invalidateEntitySet( aceKey.getAclKey().get( 0 ) ) ),
+                false );
+        HazelcastMap.ENTITY_SETS.getMap( hazelcastInstance )
+                .addEntryListener( new MapChangeListener<UUID>( this::invalidateEntitySet ), false );
+        HazelcastMap.PROPERTY_TYPES.getMap( hazelcastInstance )
+                .addEntryListener( new MapChangeListener<UUID>( propertyTypeId -> invalidateAll() ), false );
+    }
+
+    private void invalidate( ConcurrentMap<UUID, Set<ResultKey>> index, UUID id ) {
+        if ( !enabled ) {
+            return;
+        }
+
+        generation.incrementAndGet();
+        final var keys = index.remove( id );
+        if ( keys != null ) {
+            results.invalidateAll( keys );
+        }
+    }
+
+    private void onRemoval( RemovalNotification<ResultKey, CachedResult> notification ) {
+        final var key = notification.getKey();
+        final var value = notification.getValue();
+        // A replaced result is still tracked under the same key.
+        if ( key == null || value == null || notification.getCause() == RemovalCause.REPLACED ) {
+            return;
+        }
+
+        value.entityTypeIds.forEach( entityTypeId -> removeKey( keysByEntityType, entityTypeId, key ) );
+        value.entitySetIds.forEach( entitySetId -> removeKey( keysByEntitySet, entitySetId, key ) );
+    }
+
+    private static void removeKey( ConcurrentMap<UUID, Set<ResultKey>> index, UUID id, ResultKey key ) {
+        index.computeIfPresent( id, ( ignored, keys ) -> {
+            keys.remove( key );
+            return keys.isEmpty() ? null : keys;
+        } );
+    }
+
+    private static final class CachedResult {
+        private final DataSearchResult result;
+        private final Set<UUID>        entityTypeIds;
+        private final Set<UUID>        entitySetIds;
+
+        private CachedResult( DataSearchResult result, Set<UUID> entityTypeIds, Set<UUID> entitySetIds ) {
+            this.result = result;
+            this.entityTypeIds = entityTypeIds;
+            this.entitySetIds = entitySetIds;
+        }
+    }
+
+    private static final class ResultKey {
+        private final String               constraints;
+        private final Map<UUID, Set<UUID>> authorizedPropertyTypes;
+
+        private ResultKey( String constraints, Map<UUID, Set<UUID>> authorizedPropertyTypes ) {
+            this.constraints = constraints;
+            this.authorizedPropertyTypes = authorizedPropertyTypes;
+        }
+
+        @Override
+        public boolean equals( Object o ) {
+            if ( this == o ) { return true; }
+            if ( !( o instanceof ResultKey ) ) { return false; }
+            ResultKey that = (ResultKey) o;
+            return constraints.equals( that.constraints ) &&
+                    authorizedPropertyTypes.equals( that.authorizedPropertyTypes );
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash( constraints, authorizedPropertyTypes );
+        }
+    }
+}
@@ -0,0 +1,512 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+
+package com.openlattice.datastore.services;
+
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest.AliasActions;
+import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.action.admin.indices.get.GetIndexRequest;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.action.update.UpdateResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.VersionType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Serves every index through an alias so that it can be rebuilt without downtime.
+ * <p>
+ * Readers and writers only ever use the alias name. A rebuild creates a new physical index named after the alias with
+ * a version suffix, loads it while the alias keeps pointing at the live index, and then moves the alias over in a
+ * single atomic request before dropping the previous version. Indices created before aliases were introduced carry the
+ * alias name themselves; they are removed in the same request that adds the alias, so there is no gap either way.
+ * <p>
+ * Searches and writes keep using the live index for the whole rebuild. A version that is newer than the live index
+ * but doesn't carry the alias yet is pending, and every write to the alias is repeated on its pending versions with
+ * the version of the live document as an external version, see {@link #mirror(DocWriteRequest, DocWriteResponse)}.
+ * The copy into the new version uses the same external versions, so whichever of the copy and the repeated write
+ * arrives last, the newer document wins. Deletes are remembered by both indices until the rebuild ends, so that a copy
+ * can't bring back a document deleted after it was read and a document created again after a delete keeps counting
+ * up from the version of its tombstone.
+ * <p>
+ * Every node discovers pending versions from the cluster, at most {@link #LAYOUT_TTL_MILLIS} after they have been
+ * created, so a rebuild waits for all nodes to have seen its version before it starts copying.
+ * <p>
+ * Whether the documents of an entity data index are routed by entity set is fixed when a version is created and kept
+ * in the {@code _meta} of its mapping. Writes are sent to the live version itself rather than to the alias and are
+ * routed the way that version was built, so a node that hasn't seen an alias switch yet can't place a document in the
+ * new version with the routing of the previous one. Searches go through the alias and are routed the way the live
+ * version was built, so for a moment after a switch from a routed to an unrouted version they may miss documents.
+ */
+final class VersionedIndices implements WriteMirror {
+    private static final Logger logger = LoggerFactory.getLogger( VersionedIndices.class );
+
+    private static final String  VERSION_SEPARATOR = "_v";
+    private static final Pattern VERSIONED_NAME    = Pattern.compile( "^(.+)" + VERSION_SEPARATOR + "(\\d+)$" );
+
+    private static final String REFRESH_INTERVAL = "index.refresh_interval";
+    private static final String NUM_REPLICAS     = "index.number_of_replicas";
+    private static final String GC_DELETES       = "index.gc_deletes";
+
+    private static final String META               = "_meta";
+    private static final String ROUTING            = "routing";
+    private static final String ENTITY_SET_ROUTING = "entitySet";
+
+    /**
+     * How long tombstones are kept while a rebuild runs. Copies that take longer may bring back documents deleted
+     * since they started.
+     */
+    private static final String REBUILD_GC_DELETES = "1d";
+
+    /**
+     * How long a node keeps using the index layout it has loaded before it asks the cluster again.
+     */
+    static final long LAYOUT_TTL_MILLIS = 1_000L;
+
+    private final Supplier<Client> clients;
+
+    private final Map<String, Boolean> routedByEntitySet = new ConcurrentHashMap<>();
+
+    private volatile Layout layout = Layout.EMPTY;
+
+    VersionedIndices( Supplier<Client> clients ) {
+        this.clients = clients;
+    }
+
+    /**
+     * @return A new, unused physical index name for the given alias.
+     */
+    static String newVersion( String alias ) {
+        return alias + VERSION_SEPARATOR + System.currentTimeMillis();
+    }
+
+    /**
+     * @return The alias served by a physical index. Unversioned indices are their own alias.
+     */
+    static String getAlias( String indexName ) {
+        final var matcher = VERSIONED_NAME.matcher( indexName );
+        return matcher.matches() ? matcher.group( 1 ) : indexName;
+    }
+
+    /**
+     * @return The physical indices currently behind the alias, or the index itself if it predates aliases.
+     */
+    Set<String> getVersions( String alias ) {
+        return Set.of( clients.get().admin().indices()
+                .prepareGetIndex()
+                .setIndices( alias )
+                .setIndicesOptions( IndicesOptions.lenientExpandOpen() )
+                .setFeatures()
+                .get()
+                .getIndices() );
+    }
+
+    /**
+     * @return The versions of the alias that are being rebuilt, as last seen by this node.
+     */
+    Set<String> getPendingVersions( String alias ) {
+        return getLayout().pending.getOrDefault( alias, Set.of() );
+    }
+
+    /**
+     * @return The physical indices behind the alias as last seen by this node. An alias this node hasn't seen yet, for
+     * example because it was just created, is looked up right away.
+     */
+    Set<String> getLiveIndices( String alias ) {
+        final var live = getLayout().live.get( alias );
+        if ( live != null ) {
+            return live;
+        }
+        return loadLayout( true ).live.getOrDefault( alias, Set.of() );
+    }
+
+    /**
+     * @return The index that writes to the alias should be sent to, which is the live version if there is exactly one.
+     */
+    String getWriteIndex( String alias ) {
+        final var live = getLiveIndices( alias );
+        return live.size() == 1 ? live.iterator().next() : alias;
+    }
+
+    /**
+     * @return Whether the documents of an index, or of every live version behind an alias, are routed by entity set.
+     */
+    boolean isRoutedByEntitySet( String index ) {
+        final var live = getLiveIndices( index );
+        return live.isEmpty() ? isVersionRoutedByEntitySet( index ) : live.stream()
+                .allMatch( this::isVersionRoutedByEntitySet );
+    }
+
+    /**
+     * @return Whether the live version or any pending version of the alias is routed by entity set.
+     */
+    boolean hasVersionRoutedByEntitySet( String alias ) {
+        return isRoutedByEntitySet( alias ) || getPendingVersions( alias ).stream()
+                .anyMatch( this::isVersionRoutedByEntitySet );
+    }
+
+    /**
+     * @return The mapping metadata that marks a new version as routed by entity set, or none.
+     */
+    static Map<String, Object> getRoutingMeta( boolean routeByEntitySet ) {
+        return routeByEntitySet ? Map.of( ROUTING, ENTITY_SET_ROUTING ) : Map.of();
+    }
+
+    private boolean isVersionRoutedByEntitySet( String version ) {
+        final var cached = routedByEntitySet.get( version );
+        if ( cached != null ) {
+            return cached;
+        }
+
+        final var mappings = clients.get().admin().indices()
+                .prepareGetMappings( version )
+                .setIndicesOptions( IndicesOptions.lenientExpandOpen() )
+                .get()
+                .getMappings()
+                .get( version );
+        if ( mappings == null ) {
+            return false;
+        }
+
+        var routed = false;
+        for ( var type : mappings ) {
+            final var meta = type.value.sourceAsMap().get( META );
+            routed |= meta instanceof Map && ENTITY_SET_ROUTING.equals( ( (Map<?, ?>) meta ).get( ROUTING ) );
+        }
+        routedByEntitySet.put( version, routed );
+        return routed;
+    }
+
+    private Layout getLayout() {
+        final var current = layout;
+        return System.currentTimeMillis() - current.loadedAt < LAYOUT_TTL_MILLIS ? current : loadLayout( false );
+    }
+
+    private synchronized Layout loadLayout( boolean force ) {
+        if ( !force && System.currentTimeMillis() - layout.loadedAt < LAYOUT_TTL_MILLIS ) {
+            return layout;
+        }
+        final var response = clients.get().admin().indices()
+                .prepareGetIndex()
+                .setIndices( "*" )
+                .setIndicesOptions( IndicesOptions.lenientExpandOpen() )
+                .setFeatures( GetIndexRequest.Feature.ALIASES )
+                .get();
+        final Map<String, Set<String>> aliasesByIndex = new HashMap<>();
+        for ( String index : response.getIndices() ) {
+            final var aliases = response.getAliases().get( index );
+            aliasesByIndex.put( index, aliases == null
+                    ? Set.of()
+                    : aliases.stream().map( alias -> alias.alias() ).collect( Collectors.toSet() ) );
+        }
+        layout = new Layout( System.currentTimeMillis(),
+                findLiveIndices( aliasesByIndex ),
+                findPendingVersions( aliasesByIndex ) );
+        return layout;
+    }
+
+    private void invalidateLayout() {
+        final var current = layout;
+        layout = new Layout( 0, current.live, current.pending );
+    }
+
+    /**
+     * Finds the physical indices behind every alias. Indices that predate aliases are their own alias.
+     *
+     * @param aliasesByIndex The aliases of every physical index in the cluster.
+     * @return The live indices by alias.
+     */
+    static Map<String, Set<String>> findLiveIndices( Map<String, Set<String>> aliasesByIndex ) {
+        final Map<String, Set<String>> live = new HashMap<>();
+        aliasesByIndex.forEach( ( index, aliases ) -> {
+            aliases.forEach( alias -> live.computeIfAbsent( alias, a -> new HashSet<>() ).add( index ) );
+            if ( !VERSIONED_NAME.matcher( index ).matches() ) {
+                live.computeIfAbsent( index, a -> new HashSet<>() ).add( index );
+            }
+        } );
+        return live;
+    }
+
+    /**
+     * Finds the versions that are newer than the live index of their alias and don't carry the alias yet. Versions
+     * older than the live index are left over from a rebuild that has been published and are about to be deleted.
+     *
+     * @param aliasesByIndex The aliases of every physical index in the cluster.
+     * @return The pending versions by alias.
+     */
+    static Map<String, Set<String>> findPendingVersions( Map<String, Set<String>> aliasesByIndex ) {
+        final Map<String, Long> liveVersions = new HashMap<>();
+        aliasesByIndex.forEach( ( index, aliases ) -> {
+            liveVersions.merge( index, -1L, Math::max );
+            aliases.forEach( alias -> liveVersions.merge( alias, getVersionNumber( index ), Math::max ) );
+        } );
+
+        final Map<String, Set<String>> pending = new HashMap<>();
+        aliasesByIndex.forEach( ( index, aliases ) -> {
+            final var matcher = VERSIONED_NAME.matcher( index );
+            if ( aliases.isEmpty() && matcher.matches()
+                    && Long.parseLong( matcher.group( 2 ) ) > liveVersions.getOrDefault( matcher.group( 1 ), -1L ) ) {
+                pending.computeIfAbsent( matcher.group( 1 ), alias -> new HashSet<>() ).add( index );
+            }
+        } );
+        return pending;
+    }
+
+    private static long getVersionNumber( String indexName ) {
+        final var matcher = VERSIONED_NAME.matcher( indexName );
+        return matcher.matches() ? Long.parseLong( matcher.group( 2 ) ) : -1L;
+    }
+
+    /**
+     * Prepares a freshly created version to be loaded and waits until every node repeats writes to the alias on it.
+     * Refreshes and replication of the new version are turned off until it is published, and both the new version and
+     * the live index keep their tombstones for the duration of the rebuild.
+     */
+    void startRebuild( String alias, String version ) {
+        final var indices = clients.get().admin().indices();
+        indices.prepareUpdateSettings( version )
+                .setSettings( Settings.builder()
+                        .put( REFRESH_INTERVAL, "-1" )
+                        .put( NUM_REPLICAS, 0 )
+                        .put( GC_DELETES, REBUILD_GC_DELETES ) )
+                .get();
+        setGcDeletes( getVersions( alias ), REBUILD_GC_DELETES );
+        invalidateLayout();
+        awaitLayoutPropagation();
+        logger.info( "Writes to {} are repeated on {}.", alias, version );
+    }
+
+    /**
+     * Repeats a successful write of an unrouted document on the pending versions of its alias, see
+     * {@link #routedBy(String)}.
+     */
+    @Override
+    public List<DocWriteRequest<?>> mirror( DocWriteRequest<?> request, DocWriteResponse response ) {
+        return routedBy( null ).mirror( request, response );
+    }
+
+    /**
+     * Repeats successful writes to a live version on the pending versions of its alias. The document version of a
+     * write becomes the external version of its copy, so a copy never replaces a newer document and vice versa. Copies
+     * are routed the way their version was built.
+     *
+     * @param entitySetRouting The routing of the written documents in versions that are routed by entity set.
+     */
+    WriteMirror routedBy( String entitySetRouting ) {
+        return ( request, response ) -> {
+            final var versions = getPendingVersions( getAlias( request.index() ) );
+            if ( versions.isEmpty() ) {
+                return List.of();
+            }
+            return versions.stream()
+                    .map( version -> mirror( request,
+                            response,
+                            version,
+                            isVersionRoutedByEntitySet( version ) ? entitySetRouting : null ) )
+                    .filter( Objects::nonNull )
+                    .collect( Collectors.toList() );
+        };
+    }
+
+    /**
+     * @return A copy of the write for the given version, or null if the write didn't change anything.
+     */
+    static DocWriteRequest<?> mirror(
+            DocWriteRequest<?> request,
+            DocWriteResponse response,
+            String version,
+            String routing ) {
+        switch ( response.getResult() ) {
+            case NOOP:
+            case NOT_FOUND:
+                return null;
+            case DELETED:
+                return new DeleteRequest( version, request.type(), request.id() )
+                        .routing( routing )
+                        .versionType( VersionType.EXTERNAL_GTE )
+                        .version( response.getVersion() );
+            default:
+                if ( request instanceof IndexRequest ) {
+                    final var index = (IndexRequest) request;
+                    return new IndexRequest( version, index.type(), index.id() )
+                            .source( index.source(), index.getContentType() )
+                            .routing( routing )
+                            .versionType( VersionType.EXTERNAL_GTE )
+                            .version( response.getVersion() );
+                }
+
+                final var getResult = response instanceof UpdateResponse
+                        ? ( (UpdateResponse) response ).getGetResult()
+                        : null;
+                if ( getResult == null || !getResult.isExists() ) {
+                    logger.error( "Unable to repeat {} of {}/{} on {} without the updated document.",
+                            request.opType(),
+                            request.index(),
+                            request.id(),
+                            version );
+                    return null;
+                }
+                return new IndexRequest( version, request.type(), request.id() )
+                        .source( getResult.sourceRef(), XContentType.JSON )
+                        .routing( routing )
+                        .versionType( VersionType.EXTERNAL_GTE )
+                        .version( response.getVersion() );
+        }
+    }
+
+    /**
+     * Restores the settings changed by {@link #startRebuild(String, String)}, points the alias at the new version and
+     * deletes the versions it replaces once no node repeats writes on the new version anymore.
+     */
+    void publish( String alias, String version, int numReplicas ) {
+        final var indices = clients.get().admin().indices();
+        indices.prepareUpdateSettings( version )
+                .setSettings( Settings.builder()
+                        .putNull( REFRESH_INTERVAL )
+                        .put( NUM_REPLICAS, numReplicas )
+                        .putNull( GC_DELETES ) )
+                .get();
+        indices.prepareRefresh( version ).get();
+
+        final var previous = getVersions( alias );
+        indices.aliases( swapAlias( alias, version, previous ) ).actionGet();
+        logger.info( "Alias {} now points to {}, replacing {}.", alias, version, previous );
+
+        invalidateLayout();
+        awaitLayoutPropagation();
+        previous.stream()
+                .filter( index -> !index.equals( alias ) )
+                .forEach( this::deleteVersion );
+    }
+
+    /**
+     * Builds the single request that points the alias at a new version and takes it away from the versions it
+     * replaces. Indices that predate aliases are named like the alias and are removed, since the alias can't be added
+     * while they exist.
+     */
+    static IndicesAliasesRequest swapAlias( String alias, String version, Collection<String> previous ) {
+        final var request = new IndicesAliasesRequest()
+                .addAliasAction( AliasActions.add().index( version ).alias( alias ) );
+        for ( String index : previous ) {
+            if ( index.equals( alias ) ) {
+                request.addAliasAction( AliasActions.removeIndex().index( index ) );
+            } else {
+                request.addAliasAction( AliasActions.remove().index( index ).alias( alias ) );
+            }
+        }
+        return request;
+    }
+
+    /**
+     * Rolls back a rebuild that won't be published. The version is deleted a second time once every node has stopped
+     * repeating writes on it, in case a late write created it again.
+     */
+    void abandon( String alias, String version ) {
+        deleteVersion( version );
+        try {
+            setGcDeletes( getVersions( alias ), null );
+        } catch ( RuntimeException e ) {
+            logger.error( "Unable to restore the tombstone retention of {}.", alias, e );
+        }
+        invalidateLayout();
+        awaitLayoutPropagation();
+        try {
+            clients.get().admin().indices()
+                    .delete( new DeleteIndexRequest( version ).indicesOptions( IndicesOptions.lenientExpandOpen() ) )
+                    .actionGet();
+        } catch ( RuntimeException e ) {
+            logger.error( "Unable to delete index {}.", version, e );
+        }
+    }
+
+    private void setGcDeletes( Set<String> indices, String gcDeletes ) {
+        if ( indices.isEmpty() ) {
+            return;
+        }
+        final var settings = gcDeletes == null
+                ? Settings.builder().putNull( GC_DELETES )
+                : Settings.builder().put( GC_DELETES, gcDeletes );
+        clients.get().admin().indices().prepareUpdateSettings( indices.toArray( new String[ 0 ] ) )
+                .setSettings( settings )
+                .get();
+    }
+
+    /**
+     * Waits until every node has reloaded its index layout, with a margin for writes that were in flight.
+     */
+    private static void awaitLayoutPropagation() {
+        try {
+            Thread.sleep( 2 * LAYOUT_TTL_MILLIS );
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException( "Interrupted while waiting for the index layout to propagate.", e );
+        }
+    }
+
+    /**
+     * Deletes every physical index behind the alias.
+     */
+    void delete( String alias ) {
+        getVersions( alias ).forEach( this::deleteVersion );
+    }
+
+    void deleteVersion( String version ) {
+        routedByEntitySet.remove( version );
+        try {
+            clients.get().admin().indices().delete( new DeleteIndexRequest( version ) ).actionGet();
+        } catch ( RuntimeException e ) {
+            logger.error( "Unable to delete index {}.", version, e );
+        }
+    }
+
+    private static final class Layout {
+        private static final Layout EMPTY = new Layout( 0, Map.of(), Map.of() );
+
+        private final long                     loadedAt;
+        private final Map<String, Set<String>> live;
+        private final Map<String, Set<String>> pending;
+
+        private Layout( long loadedAt, Map<String, Set<String>> live, Map<String, Set<String>> pending ) {
+            this.loadedAt = loadedAt;
+            this.live = live;
+            this.pending = pending;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.services;
+
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.DocWriteResponse;
+
+import java.util.List;
+
+/**
+ * Derives the writes that have to follow a successful write, such as copies into an index that is being rebuilt.
+ */
+@FunctionalInterface
+interface WriteMirror {
+    WriteMirror NONE = ( request, response ) -> List.of();
+
+    /**
+     * @param request A write that succeeded.
+     * @param response The response to the write.
+     * @return The writes that repeat it elsewhere, possibly none.
+     */
+    List<DocWriteRequest<?>> mirror( DocWriteRequest<?> request, DocWriteResponse response );
+}
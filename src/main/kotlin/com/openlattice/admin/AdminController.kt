@@ -15,7 +15,9 @@ import com.openlattice.data.DataGraphManager
 import com.openlattice.data.storage.MetadataOption
 import com.openlattice.data.storage.PostgresEntityDataQueryService
 import com.openlattice.data.storage.selectEntitySetWithCurrentVersionOfPropertyTypes
+import com.openlattice.datastore.services.DatastoreElasticsearchImpl
 import com.openlattice.datastore.services.EdmManager
+import com.openlattice.datastore.services.ElasticsearchTaskTracker
 import com.openlattice.datastore.services.EntitySetManager
 import com.openlattice.edm.PostgresEdmManager
 import com.openlattice.hazelcast.HazelcastMap
@@ -44,6 +46,9 @@ class AdminController : AdminApi, AuthorizingComponent {
 
         private val logger = LoggerFactory.getLogger(AdminController::class.java)!!
 
+        const val SEARCH_TASKS = "/search/tasks"
+        const val SEARCH_REINDEX = "/search/reindex"
+
     }
 
     @Inject
@@ -73,6 +78,9 @@ class AdminController : AdminApi, AuthorizingComponent {
     @Inject
     private lateinit var jobService: HazelcastJobService
 
+    @Inject
+    private lateinit var elasticsearchApi: DatastoreElasticsearchImpl
+
     @GetMapping(value = [SQL + ID_PATH], produces = [MediaType.APPLICATION_JSON_VALUE])
     override fun getEntitySetSql(
             @PathVariable(ID) entitySetId: UUID,
@@ -251,6 +259,31 @@ class AdminController : AdminApi, AuthorizingComponent {
 
     }
 
+    @Timed
+    @GetMapping(value = [SEARCH_TASKS], produces = [MediaType.APPLICATION_JSON_VALUE])
+    fun getSearchTasks(): Map<UUID, ElasticsearchTaskTracker.TaskStatus> {
+        ensureAdminAccess()
+        return elasticsearchApi.taskTracker.tasks
+    }
+
+    @Timed
+    @GetMapping(value = [SEARCH_TASKS + ID_PATH], produces = [MediaType.APPLICATION_JSON_VALUE])
+    fun getSearchTask(@PathVariable(ID) taskId: UUID): Map<UUID, ElasticsearchTaskTracker.TaskStatus> {
+        ensureAdminAccess()
+        return elasticsearchApi.taskTracker.getTask(taskId).map { mapOf(taskId to it) }.orElse(mapOf())
+    }
+
+    @Timed
+    @PostMapping(value = [SEARCH_REINDEX + ID_PATH], produces = [MediaType.APPLICATION_JSON_VALUE])
+    fun reindexEntityTypeData(@PathVariable(ID) entityTypeId: UUID): UUID {
+        ensureAdminAccess()
+        val entityType = edm.getEntityType(entityTypeId)
+        val propertyTypes = edm.getPropertyTypesAsMap(entityType.properties).values.toList()
+        return elasticsearchApi.reindexEntityTypeData(entityType, propertyTypes).orElseThrow {
+            IllegalStateException("Unable to start re-index of entity type $entityTypeId")
+        }
+    }
+
     override fun getAuthorizationManager(): AuthorizationManager {
         return authorizationManager
     }
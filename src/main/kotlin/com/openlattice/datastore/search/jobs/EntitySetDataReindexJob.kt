@@ -0,0 +1,126 @@
+package com.openlattice.datastore.search.jobs
+
+import com.fasterxml.jackson.annotation.JsonIgnore
+import com.geekbeast.rhizome.jobs.AbstractDistributedJob
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import com.hazelcast.core.HazelcastInstance
+import com.hazelcast.core.HazelcastInstanceAware
+import com.openlattice.data.storage.MetadataOption
+import com.openlattice.edm.type.PropertyType
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind
+import org.slf4j.LoggerFactory
+import java.util.*
+import java.util.concurrent.Executors
+
+/**
+ * Re-indexes the data of every normal entity set from postgres into elasticsearch.
+ *
+ * The work is split into one cursor per entity set partition. Every batch advances up to
+ * [EntitySetDataReindexJobState.workers] cursors in parallel by one page of entity key ids, read with keyset paging so
+ * that a page costs the same at the end of a partition as at the start. The state is checkpointed by the job service
+ * after each batch, which makes the job resumable and lets its progress be followed through the admin jobs endpoints.
+ *
+ * The services it needs are looked up on the member that runs it, see [EntitySetDataReindexJobDependencies].
+ */
+class EntitySetDataReindexJob(
+        state: EntitySetDataReindexJobState
+) : AbstractDistributedJob<Long, EntitySetDataReindexJobState>(state), HazelcastInstanceAware {
+    companion object {
+        private val logger = LoggerFactory.getLogger(EntitySetDataReindexJob::class.java)
+    }
+
+    @Transient
+    @JsonIgnore
+    private var dependencies: EntitySetDataReindexJobDependencies? = null
+
+    override val resumable = true
+
+    override fun setHazelcastInstance(hazelcastInstance: HazelcastInstance) {
+        dependencies = EntitySetDataReindexJobDependencies.of(hazelcastInstance)
+    }
+
+    override fun processNextBatch() {
+        val cursors = state.pending.take(state.workers)
+        if (cursors.isEmpty()) {
+            hasWorkRemaining = false
+            return
+        }
+
+        val executor = Executors.newFixedThreadPool(
+                cursors.size,
+                ThreadFactoryBuilder().setDaemon(true).setNameFormat("entity-data-reindex-%d").build()
+        )
+
+        val pages = try {
+            cursors
+                    .map { cursor -> executor.submit<List<UUID>> { indexNextPage(cursor) } }
+                    .map { it.get() }
+        } finally {
+            executor.shutdownNow()
+        }
+
+        cursors.zip(pages).forEach { (cursor, entityKeyIds) ->
+            val position = state.pending.indexOf(cursor)
+            if (entityKeyIds.size < state.batchSize) {
+                state.pending.removeAt(position)
+            } else {
+                state.pending[position] = cursor.copy(lastEntityKeyId = entityKeyIds.last())
+            }
+            state.indexedEntities += entityKeyIds.size
+        }
+
+        val completed = state.totalPartitions - state.pending.size
+        progress = (100 * completed / state.totalPartitions.coerceAtLeast(1)).toByte()
+        hasWorkRemaining = state.pending.isNotEmpty()
+        if (!hasWorkRemaining) {
+            logger.info("Finished re-indexing {} entities.", state.indexedEntities)
+        }
+    }
+
+    override fun result(): Long {
+        return state.indexedEntities
+    }
+
+    /**
+     * Indexes the next page of the partition and returns the entity key ids in it, in ascending order.
+     */
+    private fun indexNextPage(cursor: EntitySetPartitionCursor): List<UUID> {
+        val dependencies = getDependencies()
+        val entityKeyIds = dependencies.entityKeyIdPager.getPage(
+                cursor.entitySetId,
+                cursor.partition,
+                cursor.lastEntityKeyId,
+                state.batchSize
+        )
+
+        if (entityKeyIds.isEmpty()) {
+            return entityKeyIds
+        }
+
+        val propertyTypes = getIndexedPropertyTypes(cursor.entityTypeId)
+        val entities = dependencies.dataQueryService.getEntitiesWithPropertyTypeIds(
+                mapOf(cursor.entitySetId to Optional.of(entityKeyIds.toSet())),
+                mapOf(cursor.entitySetId to propertyTypes),
+                mapOf(),
+                EnumSet.of(MetadataOption.LAST_WRITE)
+        )
+
+        if (!dependencies.elasticsearchApi.createBulkEntityData(cursor.entityTypeId, cursor.entitySetId, entities)) {
+            throw IllegalStateException(
+                    "Unable to index partition ${cursor.partition} of entity set ${cursor.entitySetId}."
+            )
+        }
+
+        return entityKeyIds
+    }
+
+    private fun getIndexedPropertyTypes(entityTypeId: UUID): Map<UUID, PropertyType> {
+        val edm = getDependencies().edm
+        return edm.getPropertyTypesAsMap(edm.getEntityType(entityTypeId).properties)
+                .filterValues { it.datatype != EdmPrimitiveTypeKind.Binary }
+    }
+
+    private fun getDependencies() = checkNotNull(dependencies) {
+        "Entity data re-index job was not initialized with a hazelcast instance."
+    }
+}
@@ -0,0 +1,37 @@
+package com.openlattice.datastore.search.jobs
+
+import com.hazelcast.core.HazelcastInstance
+import com.openlattice.data.storage.PostgresEntityDataQueryService
+import com.openlattice.datastore.services.DatastoreElasticsearchImpl
+import com.openlattice.datastore.services.EdmManager
+import com.openlattice.datastore.services.EntityKeyIdPager
+
+/**
+ * Services an [EntitySetDataReindexJob] needs on whichever node it ends up running. They are not part of the job
+ * state, so each node registers its own instances in the user context of its hazelcast member on startup and the job
+ * looks them up when hazelcast hands it the member it was deserialized on.
+ *
+ * @param entityKeyIdPager Pages through the entity key ids of a partition, preferably on a read replica.
+ */
+data class EntitySetDataReindexJobDependencies(
+        val entityKeyIdPager: EntityKeyIdPager,
+        val dataQueryService: PostgresEntityDataQueryService,
+        val edm: EdmManager,
+        val elasticsearchApi: DatastoreElasticsearchImpl
+) {
+    companion object {
+        private const val USER_CONTEXT_KEY = "entitySetDataReindexJobDependencies"
+
+        @JvmStatic
+        fun of(hazelcastInstance: HazelcastInstance): EntitySetDataReindexJobDependencies {
+            val dependencies = hazelcastInstance.userContext[USER_CONTEXT_KEY] as EntitySetDataReindexJobDependencies?
+            return checkNotNull(dependencies) {
+                "Entity data re-index dependencies are not registered on hazelcast member ${hazelcastInstance.name}."
+            }
+        }
+    }
+
+    fun register(hazelcastInstance: HazelcastInstance) {
+        hazelcastInstance.userContext[USER_CONTEXT_KEY] = this
+    }
+}
@@ -0,0 +1,33 @@
+package com.openlattice.datastore.search.jobs
+
+import com.geekbeast.rhizome.jobs.JobState
+import java.util.*
+
+/**
+ * Checkpoint of a full entity data re-index. It is persisted with the job after every batch, so a job picked up again
+ * after a restart continues from the last page written to elasticsearch instead of starting over.
+ *
+ * @param workers The number of partitions indexed in parallel.
+ * @param batchSize The number of entities read and indexed per partition page.
+ * @param totalPartitions The number of entity set partitions the job started out with.
+ * @param pending The entity set partitions that still have entities left to index.
+ * @param indexedEntities The number of entities sent to elasticsearch so far.
+ */
+data class EntitySetDataReindexJobState(
+        val workers: Int,
+        val batchSize: Int,
+        val totalPartitions: Int,
+        val pending: MutableList<EntitySetPartitionCursor>,
+        var indexedEntities: Long = 0
+) : JobState
+
+/**
+ * Position of the re-index within one partition of an entity set. Entity key ids are visited in ascending order, so
+ * [lastEntityKeyId] is the last id already indexed.
+ */
+data class EntitySetPartitionCursor(
+        val entitySetId: UUID,
+        val entityTypeId: UUID,
+        val partition: Int,
+        val lastEntityKeyId: UUID = UUID(0, 0)
+)
@@ -0,0 +1,50 @@
+package com.openlattice.datastore.services
+
+import com.openlattice.postgres.PostgresColumn.ENTITY_SET_ID
+import com.openlattice.postgres.PostgresColumn.ID
+import com.openlattice.postgres.PostgresColumn.PARTITION
+import com.openlattice.postgres.PostgresColumn.VERSION
+import com.openlattice.postgres.PostgresTable.IDS
+import com.openlattice.postgres.ResultSetAdapters
+import com.openlattice.postgres.streams.BasePostgresIterable
+import com.openlattice.postgres.streams.PreparedStatementHolderSupplier
+import com.zaxxer.hikari.HikariDataSource
+import java.util.*
+
+/**
+ * Pages through the live entity key ids of one partition of an entity set in ascending order.
+ *
+ * Pages are read with keyset paging, i.e. each page starts right after the last id of the previous one, so a page costs
+ * the same at the end of a partition as at the start and no state has to be kept between pages.
+ *
+ * @param reader The data source entity key ids are paged from, preferably a read replica.
+ */
+class EntityKeyIdPager(private val reader: HikariDataSource) {
+    companion object {
+        @JvmField
+        val FIRST_ENTITY_KEY_ID = UUID(0, 0)
+
+        private val SELECT_ENTITY_KEY_IDS_PAGE = """
+            SELECT ${ID.name} FROM ${IDS.name}
+            WHERE ${ENTITY_SET_ID.name} = ? AND ${PARTITION.name} = ? AND ${ID.name} > ? AND ${VERSION.name} > 0
+            ORDER BY ${ID.name}
+            LIMIT ?
+        """.trimIndent()
+    }
+
+    /**
+     * @param lastEntityKeyId The last id of the previous page or [FIRST_ENTITY_KEY_ID] for the first page.
+     * @return Up to [pageSize] entity key ids following [lastEntityKeyId], in ascending order. The partition is
+     * exhausted once fewer ids than requested are returned.
+     */
+    fun getPage(entitySetId: UUID, partition: Int, lastEntityKeyId: UUID, pageSize: Int): List<UUID> {
+        return BasePostgresIterable(
+                PreparedStatementHolderSupplier(reader, SELECT_ENTITY_KEY_IDS_PAGE) {
+                    it.setObject(1, entitySetId)
+                    it.setInt(2, partition)
+                    it.setObject(3, lastEntityKeyId)
+                    it.setInt(4, pageSize)
+                }
+        ) { ResultSetAdapters.id(it) }.toList()
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.data;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public class EntitySetDataCursorTest {
+    @Test
+    public void testRoundTrip() {
+        final var positions = Map.of(
+                7, UUID.randomUUID(),
+                0, UUID.randomUUID(),
+                12, new UUID( 0, 0 ) );
+
+        final var token = new EntitySetDataCursor( positions ).encode();
+        Assert.assertTrue( token.matches( "[A-Za-z0-9_-]+" ) );
+
+        final var decoded = EntitySetDataCursor.decode( token );
+        Assert.assertEquals( positions, decoded.getPositions() );
+        Assert.assertEquals( List.of( 0, 7, 12 ), List.copyOf( decoded.getPositions().keySet() ) );
+    }
+
+    @Test
+    public void testEmptyCursorRoundTrip() {
+        final var decoded = EntitySetDataCursor.decode( new EntitySetDataCursor( Map.of() ).encode() );
+        Assert.assertTrue( decoded.getPositions().isEmpty() );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testNullToken() {
+        EntitySetDataCursor.decode( null );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testTokenThatIsNotBase64() {
+        EntitySetDataCursor.decode( "not a cursor!" );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testTokenThatIsNotJson() {
+        EntitySetDataCursor.decode( encode( "not a cursor" ) );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testTruncatedToken() {
+        final var token = new EntitySetDataCursor( Map.of( 1, UUID.randomUUID() ) ).encode();
+        EntitySetDataCursor.decode( token.substring( 0, token.length() / 2 ) );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testTokenWithInvalidPartition() {
+        EntitySetDataCursor.decode( encode( "{\"p\":{\"first\":\"" + UUID.randomUUID() + "\"}}" ) );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testTokenWithInvalidEntityKeyId() {
+        EntitySetDataCursor.decode( encode( "{\"p\":{\"1\":\"not-an-entity-key-id\"}}" ) );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testTokenWithoutPositions() {
+        EntitySetDataCursor.decode( encode( "{}" ) );
+    }
+
+    private static String encode( String json ) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString( json.getBytes( StandardCharsets.UTF_8 ) );
+    }
+}
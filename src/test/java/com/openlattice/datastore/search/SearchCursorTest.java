@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.search;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+public class SearchCursorTest {
+    @Test
+    public void testRoundTrip() {
+        final Map<UUID, Object[]> positions = new LinkedHashMap<>();
+        positions.put( UUID.randomUUID(), new Object[] { "jones", "b3c1a0be-3d3e-4b7d-9a8f-6f3c8b1f2a10" } );
+        positions.put( UUID.randomUUID(), new Object[] { 1_600_000_000_000L, "0a1b2c3d-0000-4000-8000-000000000000" } );
+        positions.put( UUID.randomUUID(), new Object[] { "smith", "ffffffff-ffff-4fff-bfff-ffffffffffff" } );
+
+        final var token = new SearchCursor( 42, positions ).encode();
+        Assert.assertTrue( token.matches( "[A-Za-z0-9_-]+" ) );
+
+        final var decoded = SearchCursor.decode( token );
+        Assert.assertEquals( 42, decoded.getNumHits() );
+        Assert.assertEquals( new ArrayList<>( positions.keySet() ),
+                new ArrayList<>( decoded.getPositions().keySet() ) );
+        positions.forEach( ( entitySetId, sortValues ) -> Assert
+                .assertArrayEquals( sortValues, decoded.getPositions().get( entitySetId ) ) );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testNullToken() {
+        SearchCursor.decode( null );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testTokenThatIsNotBase64() {
+        SearchCursor.decode( "not a cursor!" );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testTokenThatIsNotJson() {
+        SearchCursor.decode( encode( "not a cursor" ) );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testTruncatedToken() {
+        final var token = new SearchCursor( 1, Map.of( UUID.randomUUID(), new Object[] { "a" } ) ).encode();
+        SearchCursor.decode( token.substring( 0, token.length() / 2 ) );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testTokenWithInvalidEntitySetId() {
+        SearchCursor.decode( encode( "{\"n\":1,\"p\":{\"not-an-entity-set-id\":[\"a\"]}}" ) );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testTokenWithoutPositions() {
+        SearchCursor.decode( encode( "{\"n\":1}" ) );
+    }
+
+    private static String encode( String json ) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString( json.getBytes( StandardCharsets.UTF_8 ) );
+    }
+}
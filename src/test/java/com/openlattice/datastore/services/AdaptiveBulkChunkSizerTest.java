@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.services;
+
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AdaptiveBulkChunkSizerTest {
+    private static final int  MAX_DOCUMENTS  = 1000;
+    private static final long TARGET_LATENCY = 100;
+
+    @Test
+    public void testStartsAtAQuarterOfTheMaximum() {
+        Assert.assertEquals( 250, limitOf( newSizer() ) );
+    }
+
+    @Test
+    public void testGrowsOnFastFullChunksUpToTheMaximum() {
+        final var sizer = newSizer();
+
+        sizer.recordSuccess( 250, TARGET_LATENCY );
+        Assert.assertEquals( 312, limitOf( sizer ) );
+
+        for ( int i = 0; i < 20; ++i ) {
+            sizer.recordSuccess( limitOf( sizer ), 1 );
+        }
+        Assert.assertEquals( MAX_DOCUMENTS, limitOf( sizer ) );
+    }
+
+    @Test
+    public void testIgnoresFastPartialChunks() {
+        final var sizer = newSizer();
+
+        sizer.recordSuccess( 100, 1 );
+        Assert.assertEquals( 250, limitOf( sizer ) );
+    }
+
+    @Test
+    public void testShrinksOnlyOnChunksSlowerThanTwiceTheTarget() {
+        final var sizer = newSizer();
+
+        sizer.recordSuccess( 250, 2 * TARGET_LATENCY );
+        Assert.assertEquals( 250, limitOf( sizer ) );
+
+        sizer.recordSuccess( 100, 2 * TARGET_LATENCY + 1 );
+        Assert.assertEquals( 188, limitOf( sizer ) );
+    }
+
+    @Test
+    public void testIsHalvedOnRejectionDownToTheFloor() {
+        final var sizer = newSizer();
+
+        sizer.recordRejection();
+        Assert.assertEquals( 125, limitOf( sizer ) );
+
+        for ( int i = 0; i < 20; ++i ) {
+            sizer.recordRejection();
+        }
+        Assert.assertEquals( 10, limitOf( sizer ) );
+    }
+
+    @Test
+    public void testMaximumBelowTheFloorIsRaisedToTheFloor() {
+        Assert.assertEquals( 10, limitOf( new AdaptiveBulkChunkSizer( 5, Long.MAX_VALUE, TARGET_LATENCY ) ) );
+    }
+
+    @Test
+    public void testPayloadSizeCapsChunksFirst() {
+        Assert.assertEquals( 1, limitOf( new AdaptiveBulkChunkSizer( MAX_DOCUMENTS, 1, TARGET_LATENCY ) ) );
+    }
+
+    private static AdaptiveBulkChunkSizer newSizer() {
+        return new AdaptiveBulkChunkSizer( MAX_DOCUMENTS, Long.MAX_VALUE, TARGET_LATENCY );
+    }
+
+    /**
+     * @return The number of documents after which the sizer considers a chunk full.
+     */
+    private static int limitOf( BulkChunkSizer sizer ) {
+        final var chunk = new BulkRequest();
+        while ( !sizer.isFull( chunk ) && chunk.numberOfActions() <= 2 * MAX_DOCUMENTS ) {
+            chunk.add( new DeleteRequest( "entity_data", Integer.toString( chunk.numberOfActions() ) ) );
+        }
+        return chunk.numberOfActions();
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.services;
+
+import com.openlattice.edm.type.PropertyType;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class ArrowEntitySetDataWriterTest {
+    private static final FullQualifiedName COUNT = new FullQualifiedName( "test.count" );
+    private static final FullQualifiedName NAME  = new FullQualifiedName( "test.name" );
+    private static final FullQualifiedName DATE  = new FullQualifiedName( "test.date" );
+    private static final FullQualifiedName AT    = new FullQualifiedName( "test.at" );
+
+    private final BufferAllocator allocator = new RootAllocator( Long.MAX_VALUE );
+
+    @After
+    public void closeAllocator() {
+        allocator.close();
+    }
+
+    @Test
+    public void testColumnTypesFollowDatatypes() throws IOException {
+        final var out = new ByteArrayOutputStream();
+        final Iterator<Map<FullQualifiedName, Set<Object>>> entities = Collections.emptyIterator();
+
+        new ArrowEntitySetDataWriter( allocator, 10 ).write( propertyTypes(), entities, out );
+
+        try ( ArrowStreamReader reader = read( out ) ) {
+            final var fields = reader.getVectorSchemaRoot().getSchema().getFields();
+            Assert.assertEquals( 4, fields.size() );
+            Assert.assertEquals( COUNT.getFullQualifiedNameAsString(), fields.get( 0 ).getName() );
+            Assert.assertEquals( new ArrowType.Int( 64, true ), itemType( fields.get( 0 ) ) );
+            Assert.assertEquals( new ArrowType.Utf8(), itemType( fields.get( 1 ) ) );
+            Assert.assertEquals( new ArrowType.Date( DateUnit.DAY ), itemType( fields.get( 2 ) ) );
+            Assert.assertEquals( new ArrowType.Timestamp( TimeUnit.MICROSECOND, "UTC" ), itemType( fields.get( 3 ) ) );
+            fields.forEach( field -> Assert.assertTrue( field.isNullable() ) );
+            Assert.assertFalse( reader.loadNextBatch() );
+        }
+    }
+
+    @Test
+    public void testMissingPropertiesAreNull() throws IOException {
+        final var entities = List.<Map<FullQualifiedName, Set<Object>>>of(
+                Map.of( COUNT, Set.of( 1L ), NAME, Set.of( "a" ) ),
+                Map.of( NAME, Set.of( "b" ), DATE, Set.of( "2020-01-02" ) ),
+                Map.of( COUNT, Set.of( "3" ), AT, Set.of( "1970-01-01T00:00:01Z" ) ) );
+        final var out = new ByteArrayOutputStream();
+
+        final var written = new ArrowEntitySetDataWriter( allocator, 2 )
+                .write( propertyTypes(), entities.iterator(), out );
+
+        Assert.assertEquals( 3, written );
+        try ( ArrowStreamReader reader = read( out ) ) {
+            final var root = reader.getVectorSchemaRoot();
+
+            Assert.assertTrue( reader.loadNextBatch() );
+            Assert.assertEquals( 2, root.getRowCount() );
+            Assert.assertEquals( List.of( 1L ), column( root.getVector( 0 ), 0 ) );
+            Assert.assertNull( column( root.getVector( 0 ), 1 ) );
+            Assert.assertEquals( "a", column( root.getVector( 1 ), 0 ).get( 0 ).toString() );
+            Assert.assertEquals( "b", column( root.getVector( 1 ), 1 ).get( 0 ).toString() );
+            Assert.assertNull( column( root.getVector( 2 ), 0 ) );
+            Assert.assertEquals( List.of( (int) LocalDate.of( 2020, 1, 2 ).toEpochDay() ),
+                    column( root.getVector( 2 ), 1 ) );
+            Assert.assertNull( column( root.getVector( 3 ), 0 ) );
+            Assert.assertNull( column( root.getVector( 3 ), 1 ) );
+
+            Assert.assertTrue( reader.loadNextBatch() );
+            Assert.assertEquals( 1, root.getRowCount() );
+            Assert.assertEquals( List.of( 3L ), column( root.getVector( 0 ), 0 ) );
+            Assert.assertNull( column( root.getVector( 1 ), 0 ) );
+            Assert.assertNull( column( root.getVector( 2 ), 0 ) );
+            Assert.assertEquals( List.of( 1_000_000L ), column( root.getVector( 3 ), 0 ) );
+
+            Assert.assertFalse( reader.loadNextBatch() );
+        }
+    }
+
+    private ArrowStreamReader read( ByteArrayOutputStream out ) {
+        return new ArrowStreamReader( new ByteArrayInputStream( out.toByteArray() ), allocator );
+    }
+
+    private static List<PropertyType> propertyTypes() {
+        return List.of( propertyType( COUNT, EdmPrimitiveTypeKind.Int64 ),
+                propertyType( NAME, EdmPrimitiveTypeKind.String ),
+                propertyType( DATE, EdmPrimitiveTypeKind.Date ),
+                propertyType( AT, EdmPrimitiveTypeKind.DateTimeOffset ) );
+    }
+
+    private static PropertyType propertyType( FullQualifiedName type, EdmPrimitiveTypeKind datatype ) {
+        final var propertyType = Mockito.mock( PropertyType.class );
+        Mockito.when( propertyType.getType() ).thenReturn( type );
+        Mockito.when( propertyType.getDatatype() ).thenReturn( datatype );
+        return propertyType;
+    }
+
+    private static ArrowType itemType( Field field ) {
+        return field.getChildren().get( 0 ).getType();
+    }
+
+    private static List<?> column( FieldVector vector, int row ) {
+        return ( (ListVector) vector ).getObject( row );
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.services;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.index.VersionType;
+import org.elasticsearch.index.engine.VersionConflictEngineException;
+import org.elasticsearch.index.mapper.MapperParsingException;
+import org.elasticsearch.index.shard.ShardId;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class BulkIndexerTest {
+    private static final String INDEX   = "entity_data";
+    private static final String VERSION = "entity_data_v1";
+
+    private final List<BulkRequest> sent = new CopyOnWriteArrayList<>();
+
+    @Test
+    public void testRequestsAreSplitIntoChunks() {
+        final var indexer = newIndexer( 2, 3, ( request, listener ) -> listener.onResponse( response(
+                IntStream.range( 0, request.numberOfActions() )
+                        .mapToObj( i -> success( i, request.requests().get( i ).id() ) )
+                        .toArray( BulkItemResponse[]::new ) ) ) );
+
+        final var result = indexer.execute( "test", requests( 5 ) );
+
+        Assert.assertEquals( 3, sent.size() );
+        Assert.assertEquals( List.of( 2, 2, 1 ),
+                sent.stream().map( BulkRequest::numberOfActions ).collect( Collectors.toList() ) );
+        Assert.assertEquals( 3, result.getChunks() );
+        Assert.assertEquals( 5, result.getDocuments() );
+        Assert.assertTrue( result.isSuccessful() );
+    }
+
+    @Test
+    public void testOnlyRejectedItemsAreRetried() {
+        final var indexer = newIndexer( 100, 3, ( request, listener ) -> {
+            if ( sent.size() == 1 ) {
+                listener.onResponse( response(
+                        success( 0, "0" ),
+                        failure( 1, "1", new EsRejectedExecutionException( "rejected" ) ),
+                        failure( 2, "2", new MapperParsingException( "failed to parse" ) ) ) );
+            } else {
+                listener.onResponse( response( success( 0, "1" ) ) );
+            }
+        } );
+
+        final var result = indexer.execute( "test", requests( 3 ) );
+
+        Assert.assertEquals( 2, sent.size() );
+        Assert.assertEquals( 1, sent.get( 1 ).numberOfActions() );
+        Assert.assertEquals( "1", sent.get( 1 ).requests().get( 0 ).id() );
+        Assert.assertEquals( 3, result.getDocuments() );
+        Assert.assertEquals( 1, result.getRetriedDocuments() );
+        Assert.assertEquals( 1, result.getFailedDocuments() );
+        Assert.assertFalse( result.isSuccessful() );
+    }
+
+    @Test
+    public void testRejectedItemsAreDroppedAfterMaxRetries() {
+        final var indexer = newIndexer( 100, 2, ( request, listener ) -> listener.onResponse( response(
+                failure( 0, request.requests().get( 0 ).id(), new EsRejectedExecutionException( "rejected" ) ) ) ) );
+
+        final var result = indexer.execute( "test", requests( 1 ) );
+
+        Assert.assertEquals( 3, sent.size() );
+        Assert.assertEquals( 2, result.getRetriedDocuments() );
+        Assert.assertEquals( 1, result.getFailedDocuments() );
+        Assert.assertFalse( result.isSuccessful() );
+    }
+
+    @Test
+    public void testRejectedChunkIsRetriedAsAWhole() {
+        final var indexer = newIndexer( 100, 3, ( request, listener ) -> {
+            if ( sent.size() == 1 ) {
+                listener.onFailure( new EsRejectedExecutionException( "rejected" ) );
+            } else {
+                listener.onResponse( response( success( 0, "0" ), success( 1, "1" ) ) );
+            }
+        } );
+
+        final var result = indexer.execute( "test", requests( 2 ) );
+
+        Assert.assertEquals( 2, sent.size() );
+        Assert.assertEquals( 2, sent.get( 1 ).numberOfActions() );
+        Assert.assertEquals( 2, result.getRetriedDocuments() );
+        Assert.assertTrue( result.isSuccessful() );
+    }
+
+    @Test
+    public void testFailedChunkIsNotRetried() {
+        final var indexer = newIndexer( 100, 3,
+                ( request, listener ) -> listener.onFailure( new ElasticsearchException( "boom" ) ) );
+
+        final var result = indexer.execute( "test", requests( 2 ) );
+
+        Assert.assertEquals( 1, sent.size() );
+        Assert.assertEquals( 0, result.getRetriedDocuments() );
+        Assert.assertEquals( 2, result.getFailedDocuments() );
+        Assert.assertEquals( 1, result.getFailedChunks() );
+        Assert.assertFalse( result.isSuccessful() );
+    }
+
+    @Test
+    public void testSuccessfulWritesAreMirrored() {
+        final var indexer = newIndexer( 100, 3, ( request, listener ) -> {
+            if ( sent.size() == 1 ) {
+                listener.onResponse( response(
+                        success( 0, "0" ),
+                        failure( 1, "1", new MapperParsingException( "failed to parse" ) ) ) );
+            } else {
+                listener.onResponse( response(
+                        failure( 0, "0", new VersionConflictEngineException( new ShardId( VERSION, "_na_", 0 ),
+                                "0",
+                                "newer version exists" ) ) ) );
+            }
+        } );
+
+        final var result = indexer.execute( "test", requests( 2 ), ( request, response ) -> List.of(
+                new IndexRequest( VERSION ).id( request.id() )
+                        .source( Map.of( "value", 0 ) )
+                        .versionType( VersionType.EXTERNAL_GTE )
+                        .version( response.getVersion() ) ) );
+
+        Assert.assertEquals( 2, sent.size() );
+        Assert.assertEquals( 1, sent.get( 1 ).numberOfActions() );
+        Assert.assertEquals( VERSION, sent.get( 1 ).requests().get( 0 ).index() );
+        Assert.assertEquals( "0", sent.get( 1 ).requests().get( 0 ).id() );
+        Assert.assertEquals( 1, result.getFailedDocuments() );
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private BulkIndexer newIndexer(
+            int maxDocuments,
+            int maxRetries,
+            BiConsumer<BulkRequest, ActionListener<BulkResponse>> cluster ) {
+        final Client client = Mockito.mock( Client.class );
+        Mockito.doAnswer( invocation -> {
+            final var request = (BulkRequest) invocation.getArguments()[ 0 ];
+            sent.add( request );
+            cluster.accept( request, (ActionListener<BulkResponse>) invocation.getArguments()[ 1 ] );
+            return null;
+        } ).when( client ).bulk( Mockito.any( BulkRequest.class ), Mockito.any( ActionListener.class ) );
+
+        return new BulkIndexer( () -> client,
+                new FixedBulkChunkSizer( maxDocuments, Long.MAX_VALUE ),
+                1,
+                maxRetries,
+                1,
+                1 );
+    }
+
+    private static Iterator<DocWriteRequest<?>> requests( int count ) {
+        return IntStream.range( 0, count )
+                .<DocWriteRequest<?>>mapToObj( i -> new IndexRequest( INDEX ).id( Integer.toString( i ) )
+                        .source( Map.of( "value", i ) ) )
+                .collect( Collectors.toList() )
+                .iterator();
+    }
+
+    private static BulkResponse response( BulkItemResponse... items ) {
+        return new BulkResponse( items, 1 );
+    }
+
+    private static BulkItemResponse success( int itemId, String id ) {
+        return new BulkItemResponse( itemId,
+                DocWriteRequest.OpType.INDEX,
+                new IndexResponse( new ShardId( INDEX, "_na_", 0 ), "_doc", id, 1, 1, 1, true ) );
+    }
+
+    private static BulkItemResponse failure( int itemId, String id, Exception cause ) {
+        return new BulkItemResponse( itemId,
+                DocWriteRequest.OpType.INDEX,
+                new BulkItemResponse.Failure( INDEX, "_doc", id, cause ) );
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.services;
+
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+public class PartitionedEntitySetDataReaderTest {
+    private static final UUID              ENTITY_SET_ID = UUID.randomUUID();
+    private static final FullQualifiedName ID            = new FullQualifiedName( "test", "id" );
+    private static final int               PAGE_SIZE     = 2;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool( 2 );
+
+    @Test( timeout = 10_000 )
+    public void testRowsOfEveryPartitionAreRead() throws InterruptedException {
+        final Set<Object> ids = new HashSet<>();
+        try ( var reader = newReader( List.of( 1, 2, 3 ), pages( 5 ), PartitionedEntitySetDataReaderTest::rows ) ) {
+            reader.forEachRemaining( row -> ids.addAll( row.get( ID ) ) );
+        }
+
+        Assert.assertEquals( 15, ids.size() );
+        assertReadersStopped();
+    }
+
+    @Test( timeout = 10_000 )
+    public void testCloseStopsReaders() throws InterruptedException {
+        try ( var reader = newReader( List.of( 1, 2, 3 ),
+                pages( Long.MAX_VALUE ),
+                PartitionedEntitySetDataReaderTest::rows ) ) {
+            for ( int i = 0; i < 3; ++i ) {
+                Assert.assertTrue( reader.hasNext() );
+                reader.next();
+            }
+        }
+
+        assertReadersStopped();
+    }
+
+    @Test( timeout = 10_000 )
+    public void testFailureIsThrownToTheConsumer() throws InterruptedException {
+        final var failure = new IllegalStateException( "Unable to read rows." );
+        final var reader = newReader( List.of( 1, 2, 3 ), pages( Long.MAX_VALUE ), entityKeyIds -> {
+            if ( entityKeyIds.stream().anyMatch( id -> id.getMostSignificantBits() == 2 ) ) {
+                throw failure;
+            }
+            return rows( entityKeyIds );
+        } );
+
+        try {
+            reader.forEachRemaining( row -> { } );
+            Assert.fail( "The failure of a reader should be thrown." );
+        } catch ( IllegalStateException e ) {
+            Assert.assertSame( failure, e );
+        }
+        assertReadersStopped();
+    }
+
+    @Test( timeout = 10_000 )
+    public void testErrorIsThrownToTheConsumer() throws InterruptedException {
+        final var error = new LinkageError( "Unable to load rows." );
+        final var reader = newReader( List.of( 1, 2 ), pages( 5 ), entityKeyIds -> {
+            throw error;
+        } );
+
+        try {
+            reader.hasNext();
+            Assert.fail( "An error of a reader should be thrown." );
+        } catch ( LinkageError e ) {
+            Assert.assertSame( error, e );
+        }
+        assertReadersStopped();
+    }
+
+    private PartitionedEntitySetDataReader newReader(
+            List<Integer> partitions,
+            BiFunction<Integer, UUID, List<UUID>> pages,
+            Function<Set<UUID>, Iterable<Map<FullQualifiedName, Set<Object>>>> entityLoader ) {
+        return new PartitionedEntitySetDataReader( ENTITY_SET_ID,
+                partitions,
+                pages,
+                entityLoader,
+                executor,
+                2,
+                PAGE_SIZE );
+    }
+
+    private void assertReadersStopped() throws InterruptedException {
+        executor.shutdown();
+        Assert.assertTrue( executor.awaitTermination( 5, TimeUnit.SECONDS ) );
+    }
+
+    /**
+     * Pages through partitions of the given size whose entity key ids carry the partition in their high bits.
+     */
+    private static BiFunction<Integer, UUID, List<UUID>> pages( long entitiesPerPartition ) {
+        return ( partition, lastEntityKeyId ) -> {
+            final long first = lastEntityKeyId.getLeastSignificantBits() + 1;
+            return LongStream.range( first, first + Math.min( PAGE_SIZE, entitiesPerPartition - first + 1 ) )
+                    .mapToObj( i -> new UUID( partition, i ) )
+                    .collect( Collectors.toList() );
+        };
+    }
+
+    private static Iterable<Map<FullQualifiedName, Set<Object>>> rows( Set<UUID> entityKeyIds ) {
+        return entityKeyIds.stream()
+                .map( id -> Map.of( ID, Set.<Object>of( id ) ) )
+                .collect( Collectors.toList() );
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.services;
+
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SearchConcurrencyLimiterTest {
+    private static final long TARGET_LATENCY = 100;
+
+    @Test
+    public void testAdaptiveLimitGrowsUpToTheCeiling() {
+        final var limiter = new SearchConcurrencyLimiter( 5, true, TARGET_LATENCY );
+        Assert.assertEquals( 3, limitOf( limiter ) );
+
+        limiter.record( response( TARGET_LATENCY ) );
+        Assert.assertEquals( 4, limitOf( limiter ) );
+
+        for ( int i = 0; i < 10; ++i ) {
+            limiter.record( response( 1 ) );
+        }
+        Assert.assertEquals( 5, limitOf( limiter ) );
+    }
+
+    @Test
+    public void testAdaptiveLimitIsHalvedOnRejectionDownToTheFloor() {
+        final var limiter = new SearchConcurrencyLimiter( 16, true, TARGET_LATENCY );
+        for ( int i = 0; i < 5; ++i ) {
+            limiter.record( response( 1 ) );
+        }
+        Assert.assertEquals( 8, limitOf( limiter ) );
+
+        limiter.record( response( 1,
+                new MultiSearchResponse.Item( null, null ),
+                new MultiSearchResponse.Item( null, new EsRejectedExecutionException( "full" ) ) ) );
+        Assert.assertEquals( 4, limitOf( limiter ) );
+
+        limiter.recordFailure( new EsRejectedExecutionException( "full" ) );
+        Assert.assertEquals( 2, limitOf( limiter ) );
+
+        for ( int i = 0; i < 5; ++i ) {
+            limiter.recordFailure( new EsRejectedExecutionException( "full" ) );
+        }
+        Assert.assertEquals( 1, limitOf( limiter ) );
+    }
+
+    @Test
+    public void testAdaptiveLimitShrinksOnSlowSearches() {
+        final var limiter = new SearchConcurrencyLimiter( 16, true, TARGET_LATENCY );
+
+        limiter.record( response( 2 * TARGET_LATENCY ) );
+        Assert.assertEquals( 3, limitOf( limiter ) );
+
+        for ( int i = 0; i < 5; ++i ) {
+            limiter.record( response( 2 * TARGET_LATENCY + 1 ) );
+        }
+        Assert.assertEquals( 1, limitOf( limiter ) );
+    }
+
+    @Test
+    public void testAdaptiveLimitIgnoresOtherFailures() {
+        final var limiter = new SearchConcurrencyLimiter( 16, true, TARGET_LATENCY );
+
+        limiter.recordFailure( new IllegalStateException( "boom" ) );
+        Assert.assertEquals( 3, limitOf( limiter ) );
+    }
+
+    @Test
+    public void testFixedLimitNeverChanges() {
+        final var limiter = new SearchConcurrencyLimiter( 7, false, TARGET_LATENCY );
+
+        limiter.record( response( 1 ) );
+        limiter.recordFailure( new EsRejectedExecutionException( "full" ) );
+        Assert.assertEquals( 7, limitOf( limiter ) );
+    }
+
+    @Test
+    public void testZeroFixedLimitIsLeftToElasticsearch() {
+        final var limiter = new SearchConcurrencyLimiter( 0, false, TARGET_LATENCY );
+
+        Assert.assertEquals( 0, limitOf( limiter ) );
+    }
+
+    private static int limitOf( SearchConcurrencyLimiter limiter ) {
+        return limiter.newRequest().maxConcurrentSearchRequests();
+    }
+
+    private static MultiSearchResponse response( long tookMillis, MultiSearchResponse.Item... items ) {
+        return new MultiSearchResponse( items, tookMillis );
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2020. OpenLattice, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * You can contact the owner of the copyright at support@openlattice.com
+ *
+ */
+
+package com.openlattice.datastore.services;
+
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest.AliasActions;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.delete.DeleteResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.index.VersionType;
+import org.elasticsearch.index.shard.ShardId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class VersionedIndicesTest {
+    private static final String ALIAS = "entity_data";
+
+    @Test
+    public void testAliasIsMovedToNewVersionInOneRequest() {
+        final var actions = VersionedIndices.swapAlias( ALIAS, ALIAS + "_v2", List.of( ALIAS + "_v1" ) )
+                .getAliasActions();
+
+        Assert.assertEquals( 2, actions.size() );
+        assertAction( actions.get( 0 ), AliasActions.Type.ADD, ALIAS + "_v2" );
+        assertAction( actions.get( 1 ), AliasActions.Type.REMOVE, ALIAS + "_v1" );
+    }
+
+    @Test
+    public void testIndexPredatingAliasesIsRemovedWhenAliasIsAdded() {
+        final var actions = VersionedIndices.swapAlias( ALIAS, ALIAS + "_v2", List.of( ALIAS ) ).getAliasActions();
+
+        Assert.assertEquals( 2, actions.size() );
+        assertAction( actions.get( 0 ), AliasActions.Type.ADD, ALIAS + "_v2" );
+        Assert.assertEquals( AliasActions.Type.REMOVE_INDEX, actions.get( 1 ).actionType() );
+        Assert.assertArrayEquals( new String[] { ALIAS }, actions.get( 1 ).indices() );
+    }
+
+    @Test
+    public void testOnlyVersionsNewerThanTheLiveIndexArePending() {
+        final var pending = VersionedIndices.findPendingVersions( Map.of(
+                ALIAS + "_v1", Set.of(),
+                ALIAS + "_v2", Set.of( ALIAS ),
+                ALIAS + "_v3", Set.of(),
+                "organizations", Set.of(),
+                "organizations_v4", Set.of() ) );
+
+        Assert.assertEquals( Map.of( ALIAS, Set.of( ALIAS + "_v3" ), "organizations", Set.of( "organizations_v4" ) ),
+                pending );
+    }
+
+    @Test
+    public void testLiveIndicesIncludeIndicesPredatingAliases() {
+        final var live = VersionedIndices.findLiveIndices( Map.of(
+                ALIAS + "_v1", Set.of( ALIAS ),
+                ALIAS + "_v2", Set.of(),
+                "organizations", Set.of() ) );
+
+        Assert.assertEquals( Map.of( ALIAS, Set.of( ALIAS + "_v1" ), "organizations", Set.of( "organizations" ) ),
+                live );
+    }
+
+    @Test
+    public void testWritesAreMirroredWithTheLiveVersionAndTheRoutingOfTheNewVersion() {
+        final var request = new IndexRequest( ALIAS + "_v1", "_doc", "1" ).source( Map.of( "value", 1 ) );
+
+        final var mirrored = (IndexRequest) VersionedIndices.mirror( request,
+                new IndexResponse( new ShardId( ALIAS + "_v1", "_na_", 0 ), "_doc", "1", 1, 1, 7, false ),
+                ALIAS + "_v2",
+                "r" );
+
+        Assert.assertEquals( ALIAS + "_v2", mirrored.index() );
+        Assert.assertEquals( "1", mirrored.id() );
+        Assert.assertEquals( "r", mirrored.routing() );
+        Assert.assertEquals( request.source(), mirrored.source() );
+        Assert.assertEquals( VersionType.EXTERNAL_GTE, mirrored.versionType() );
+        Assert.assertEquals( 7, mirrored.version() );
+    }
+
+    @Test
+    public void testOnlyDeletesThatFoundADocumentAreMirrored() {
+        final var request = new DeleteRequest( ALIAS, "_doc", "1" );
+        final var shard = new ShardId( ALIAS + "_v1", "_na_", 0 );
+
+        final var mirrored = (DeleteRequest) VersionedIndices.mirror( request,
+                new DeleteResponse( shard, "_doc", "1", 1, 1, 8, true ),
+                ALIAS + "_v2",
+                null );
+
+        Assert.assertEquals( ALIAS + "_v2", mirrored.index() );
+        Assert.assertEquals( VersionType.EXTERNAL_GTE, mirrored.versionType() );
+        Assert.assertEquals( 8, mirrored.version() );
+        Assert.assertNull( VersionedIndices.mirror( request,
+                new DeleteResponse( shard, "_doc", "1", 1, 1, 8, false ),
+                ALIAS + "_v2",
+                null ) );
+    }
+
+    private static void assertAction( AliasActions action, AliasActions.Type type, String index ) {
+        Assert.assertEquals( type, action.actionType() );
+        Assert.assertArrayEquals( new String[] { index }, action.indices() );
+        Assert.assertArrayEquals( new String[] { ALIAS }, action.aliases() );
+    }
+}